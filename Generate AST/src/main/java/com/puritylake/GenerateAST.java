@@ -3,18 +3,20 @@ package com.puritylake;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 
 public class GenerateAST {
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.err.println("Usage: generate_ast <output_directory>");
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("--flat"))) {
+            System.err.println("Usage: generate_ast <output_directory> [--flat]");
+            System.exit(64);
         }
         String outputDir = args[0];
 
-        defineAst(outputDir, "Expr", Arrays.asList(
+        List<String> exprTypes = Arrays.asList(
                 "Assign         : Token name, Expr var, Expr value",
                 "Binary         : Expr left, Token operator, Expr right",
                 "Call           : Expr callee, Token paren, List<Expr> arguments",
@@ -23,28 +25,38 @@ public class GenerateAST {
                 "Literal        : Object value",
                 "Logical        : Expr left, Token operator, Expr right",
                 "Set            : Expr object, Token name, Expr value",
-                "This           : Token keyword",
+                "This           : Token keyword, !Slot slot, !int upvalue",
                 "Unary          : Token operator, Expr right",
                 "CommaGroup     : Expr left, Expr right",
                 "Ternary        : Expr cond, Expr trueVal, Expr falseVal",
-                "Variable       : Token name, !int idx, !int depth",
-                "AnonFunction   : Stmt func"
-        ), false);
+                "Variable       : Token name, !Slot slot, !int upvalue",
+                "AnonFunction   : Stmt func",
+                "ArrayLiteral   : Token bracket, List<Expr> elements",
+                "MapLiteral     : Token brace, List<Expr> keys, List<Expr> values",
+                "Index          : Expr object, Token bracket, Expr index",
+                "SetIndex       : Expr object, Token bracket, Expr index, Expr value"
+        );
 
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        List<String> stmtTypes = Arrays.asList(
                 "Block      : List<Stmt> statements",
-                "Class      : Token name, List<Stmt.Function> methods",
+                "Class      : Token name, List<Stmt.Function> methods, !Slot slot",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body, !Slot slot, !FrameLayout layout",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer, boolean initialized",
+                "Return     : Token keyword, Expr value, !boolean tail",
+                "Var        : Token name, Expr initializer, !Slot slot",
                 "While      : Expr condition, Stmt body",
                 "For        : Stmt init, Expr cond, Expr post, Stmt body",
-                "Break      : Token name : ControlFlowChange",
-                "Continue   : Token name : ControlFlowChange"
-        ), true);
+                "Break      : Token name",
+                "Continue   : Token name"
+        );
+
+        defineAst(outputDir, "Expr", exprTypes, false);
+        defineAst(outputDir, "Stmt", stmtTypes, false);
+        if (args.length == 2) {
+            defineFlatAst(outputDir, exprTypes, stmtTypes);
+        }
     }
 
     private static void defineAst(
@@ -164,5 +176,445 @@ public class GenerateAST {
         }
         writer.println("    }");
     }
-}
 
+    private record Field(String type, String name, boolean mutable) {
+        // how the field is stored in the arena
+        String storage() {
+            return switch (type) {
+                case "Expr", "Stmt", "Stmt.Function" -> "node";
+                case "List<Expr>", "List<Stmt>", "List<Stmt.Function>" -> "nodes";
+                case "Token" -> "token";
+                case "List<Token>" -> "tokens";
+                case "int" -> "int";
+                case "boolean" -> "boolean";
+                default -> "value";
+            };
+        }
+    }
+
+    private record NodeType(String baseName, String className, List<Field> fields) {
+        String kind() {
+            return className.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase()
+                    + "_" + baseName.toUpperCase();
+        }
+
+        String accessor(Field field) {
+            return Character.toLowerCase(className.charAt(0)) + className.substring(1)
+                    + Character.toUpperCase(field.name.charAt(0)) + field.name.substring(1);
+        }
+    }
+
+    private static List<NodeType> nodeTypes(String baseName, List<String> types) {
+        List<NodeType> nodeTypes = new ArrayList<>();
+        for (String type : types) {
+            String[] split = type.split(":");
+            List<Field> fields = new ArrayList<>();
+            for (String field : split[1].trim().split(", ")) {
+                boolean mutable = field.startsWith("!");
+                String[] parts = (mutable ? field.substring(1) : field).split(" ");
+                fields.add(new Field(parts[0], parts[1], mutable));
+            }
+            nodeTypes.add(new NodeType(baseName, split[0].trim(), fields));
+        }
+        return nodeTypes;
+    }
+
+    private static void defineFlatAst(String outputDir, List<String> exprTypes, List<String> stmtTypes)
+            throws IOException {
+        List<NodeType> types = new ArrayList<>(nodeTypes("Expr", exprTypes));
+        types.addAll(nodeTypes("Stmt", stmtTypes));
+
+        PrintWriter writer = new PrintWriter(outputDir + "/FlatAst.java", StandardCharsets.UTF_8);
+        writer.println("// ###################################################");
+        writer.println();
+        writer.println("// DO NOT EDIT THIS FILE IT IS GENERATED AUTOMATICALLY");
+        writer.println();
+        writer.println("// ###################################################");
+        writer.println();
+        writer.println("package com.puritylake.lox.parsing;");
+        writer.println();
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.Arrays;");
+        writer.println("import java.util.HashMap;");
+        writer.println("import java.util.List;");
+        writer.println("import java.util.Map;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * The same trees as {@link Expr} and {@link Stmt}, packed into one int");
+        writer.println(" * array. A node is the index of its kind, and its fields follow it:");
+        writer.println(" * children are node indices, lists are the index of a length followed by");
+        writer.println(" * the elements, tokens index the token table and other references the");
+        writer.println(" * values table. Absent fields are -1. A token is kept as its type, line");
+        writer.println(" * and symbol and made again when read; only those whose text varies,");
+        writer.println(" * strings and numbers, are kept whole as a value.");
+        writer.println(" * <p>");
+        writer.println(" * The parser adds nodes bottom up, the passes after it walk them with a");
+        writer.println(" * cursor and rewrite fields in place. Only the bytecode compiler and the");
+        writer.println(" * JIT rebuild object trees, through {@link #stmt} and {@link #expr}.");
+        writer.println(" */");
+        writer.println("public final class FlatAst {");
+        for (int i = 0; i < types.size(); ++i) {
+            writer.println("    public static final int " + types.get(i).kind() + " = " + i + ";");
+        }
+        writer.println();
+        writer.println("    private static final TokenType[] TYPES = TokenType.values();");
+        writer.println("    // how far back a token is looked for before it is added again");
+        writer.println("    private static final int RECENT_TOKENS = 16;");
+        writer.println();
+        writer.println("    private int[] data = new int[1024];");
+        writer.println("    private int[] tokens = new int[768];");
+        writer.println("    private Object[] values = new Object[64];");
+        writer.println("    private int dataCount = 0;");
+        writer.println("    private int tokenCount = 0;");
+        writer.println("    private int valueCount = 0;");
+        writer.println("    // values stored since the last trim, so one shared between nodes, like");
+        writer.println("    // a slot or an equal literal, is stored once");
+        writer.println("    private Map<Object, Integer> valueIndices = new HashMap<>();");
+        writer.println();
+        writer.println("    public FlatAst() {}");
+        writer.println();
+        writer.println("    // an arena read back from the tables of another");
+        writer.println("    FlatAst(int[] data, int[] tokens, Object[] values) {");
+        writer.println("        this.data = data;");
+        writer.println("        this.tokens = tokens;");
+        writer.println("        this.values = values;");
+        writer.println("        this.dataCount = data.length;");
+        writer.println("        this.tokenCount = tokens.length / 3;");
+        writer.println("        this.valueCount = values.length;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int[] data() {");
+        writer.println("        return Arrays.copyOf(data, dataCount);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int[] tokens() {");
+        writer.println("        return Arrays.copyOf(tokens, tokenCount * 3);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    Object[] values() {");
+        writer.println("        return Arrays.copyOf(values, valueCount);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // whether a token of this type is kept whole, as a value");
+        writer.println("    static boolean whole(TokenType type) {");
+        writer.println("        return type.text == null && type != TokenType.IDENTIFIER;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int kind(int node) {");
+        writer.println("        return data[node];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int length(int list) {");
+        writer.println("        return data[list];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int element(int list, int index) {");
+        writer.println("        return data[list + 1 + index];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public Token token(int list, int index) {");
+        writer.println("        return token(data[list + 1 + index]);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private Token token(int index) {");
+        writer.println("        if (index < 0) return null;");
+        writer.println("        TokenType type = TYPES[tokens[index * 3]];");
+        writer.println("        int line = tokens[index * 3 + 1];");
+        writer.println("        int extra = tokens[index * 3 + 2];");
+        writer.println("        if (whole(type)) return (Token) values[extra];");
+        writer.println("        String lexeme = type == TokenType.IDENTIFIER ? Symbols.name(extra) : type.text;");
+        writer.println("        return new Token(type, lexeme, null, line, extra);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private Object value(int index) {");
+        writer.println("        return index < 0 ? null : values[index];");
+        writer.println("    }");
+
+        for (NodeType type : types) {
+            for (int i = 0; i < type.fields.size(); ++i) {
+                defineFlatAccessor(writer, type, type.fields.get(i), i);
+            }
+        }
+
+        defineFlatCursors(writer, types);
+        defineFlatBuilding(writer, types);
+        defineFlatUnpacking(writer, types);
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineFlatAccessor(PrintWriter writer, NodeType type, Field field, int index) {
+        String at = "data[node + " + (index + 1) + "]";
+        String returnType;
+        String value;
+        switch (field.storage()) {
+            case "node", "nodes", "tokens", "int" -> {
+                returnType = "int";
+                value = at;
+            }
+            case "boolean" -> {
+                returnType = "boolean";
+                value = at + " != 0";
+            }
+            case "token" -> {
+                returnType = "Token";
+                value = "token(" + at + ")";
+            }
+            default -> {
+                returnType = field.type;
+                value = field.type.equals("Object") ? "value(" + at + ")" : "(" + field.type + ") value(" + at + ")";
+            }
+        }
+        writer.println();
+        writer.println("    public " + returnType + " " + type.accessor(field) + "(int node) {");
+        writer.println("        return " + value + ";");
+        writer.println("    }");
+    }
+
+    private static void defineFlatCursors(PrintWriter writer, List<NodeType> types) {
+        for (String baseName : List.of("Expr", "Stmt")) {
+            String kind = baseName.equals("Expr") ? "an expression" : "a statement";
+            writer.println();
+            writer.println("    /**");
+            writer.println("     * Walks " + (baseName.equals("Expr") ? "expressions" : "statements")
+                    + " by node index, reading fields through the accessors");
+            writer.println("     * rather than following references.");
+            writer.println("     */");
+            writer.println("    public interface " + baseName + "Cursor<R> {");
+            for (NodeType type : types) {
+                if (type.baseName.equals(baseName)) {
+                    writer.println("        R visit" + type.className + type.baseName + "(int node) throws Exception;");
+                }
+            }
+            writer.println("    }");
+            writer.println();
+            writer.println("    public <R> R accept" + baseName + "(int node, " + baseName + "Cursor<R> cursor) throws Exception {");
+            writer.println("        return switch (data[node]) {");
+            for (NodeType type : types) {
+                if (type.baseName.equals(baseName)) {
+                    writer.println("            case " + type.kind() + " -> cursor.visit" + type.className + type.baseName + "(node);");
+                }
+            }
+            writer.println("            default -> throw new IllegalStateException(\"Not " + kind + ": \" + data[node] + \".\");");
+            writer.println("        };");
+            writer.println("    }");
+        }
+    }
+
+    private static void defineFlatBuilding(PrintWriter writer, List<NodeType> types) {
+        writer.println();
+        writer.println("    private int begin(int kind, int fields) {");
+        writer.println("        int node = reserve(fields + 1);");
+        writer.println("        data[node] = kind;");
+        writer.println("        return node;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // drops the room left for growth, once everything has been added");
+        writer.println("    public void trim() {");
+        writer.println("        data = Arrays.copyOf(data, dataCount);");
+        writer.println("        tokens = Arrays.copyOf(tokens, tokenCount * 3);");
+        writer.println("        values = Arrays.copyOf(values, valueCount);");
+        writer.println("        valueIndices = new HashMap<>();");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private int reserve(int count) {");
+        writer.println("        if (dataCount + count > data.length) {");
+        writer.println("            data = Arrays.copyOf(data, Math.max(dataCount + count, data.length * 2 + 16));");
+        writer.println("        }");
+        writer.println("        int at = dataCount;");
+        writer.println("        dataCount += count;");
+        writer.println("        return at;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private void set(int node, int field, int value) {");
+        writer.println("        data[node + 1 + field] = value;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private int addToken(Token token) {");
+        writer.println("        if (token == null) return -1;");
+        writer.println("        int type = token.type().ordinal();");
+        writer.println("        int line = token.line();");
+        writer.println("        int extra = whole(token.type()) ? addValue(token) : token.symbol();");
+        writer.println("        // a token added just before, like a name read twice on one line, is");
+        writer.println("        // shared");
+        writer.println("        for (int i = tokenCount - 1; i >= 0 && i >= tokenCount - RECENT_TOKENS; --i) {");
+        writer.println("            if (tokens[i * 3] == type && tokens[i * 3 + 1] == line && tokens[i * 3 + 2] == extra) {");
+        writer.println("                return i;");
+        writer.println("            }");
+        writer.println("        }");
+        writer.println("        if (tokenCount * 3 == tokens.length) {");
+        writer.println("            tokens = Arrays.copyOf(tokens, tokens.length * 2 + 48);");
+        writer.println("        }");
+        writer.println("        tokens[tokenCount * 3] = type;");
+        writer.println("        tokens[tokenCount * 3 + 1] = line;");
+        writer.println("        tokens[tokenCount * 3 + 2] = extra;");
+        writer.println("        return tokenCount++;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private int addValue(Object value) {");
+        writer.println("        if (value == null) return -1;");
+        writer.println("        Integer index = valueIndices.get(value);");
+        writer.println("        if (index != null) return index;");
+        writer.println("        if (valueCount == values.length) {");
+        writer.println("            values = Arrays.copyOf(values, valueCount * 2 + 16);");
+        writer.println("        }");
+        writer.println("        values[valueCount] = value;");
+        writer.println("        valueIndices.put(value, valueCount);");
+        writer.println("        return valueCount++;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // a list of the first count nodes");
+        writer.println("    public int addList(int[] nodes, int count) {");
+        writer.println("        int list = reserve(count + 1);");
+        writer.println("        data[list] = count;");
+        writer.println("        System.arraycopy(nodes, 0, data, list + 1, count);");
+        writer.println("        return list;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public int addTokens(List<Token> list) {");
+        writer.println("        int at = reserve(list.size() + 1);");
+        writer.println("        data[at] = list.size();");
+        writer.println("        for (int i = 0; i < list.size(); ++i) {");
+        writer.println("            data[at + 1 + i] = addToken(list.get(i));");
+        writer.println("        }");
+        writer.println("        return at;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public void setElement(int list, int index, int node) {");
+        writer.println("        data[list + 1 + index] = node;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // shortens a list in place; the elements past its new end are dropped");
+        writer.println("    public void truncate(int list, int length) {");
+        writer.println("        data[list] = length;");
+        writer.println("    }");
+
+        // a node's children are added before it, so its fields are known
+        // when it is
+        for (NodeType type : types) {
+            List<String> parameters = new ArrayList<>();
+            for (Field field : type.fields) {
+                parameters.add(parameterType(field) + " " + field.name);
+            }
+            writer.println();
+            writer.println("    public int add" + type.className + type.baseName + "(" + String.join(", ", parameters) + ") {");
+            writer.println("        int node = begin(" + type.kind() + ", " + type.fields.size() + ");");
+            for (int i = 0; i < type.fields.size(); ++i) {
+                Field field = type.fields.get(i);
+                writer.println("        set(node, " + i + ", " + stored(field) + ");");
+            }
+            writer.println("        return node;");
+            writer.println("    }");
+        }
+
+        // tokens never change once parsed, every other field can be
+        // rewritten in place
+        for (NodeType type : types) {
+            for (int i = 0; i < type.fields.size(); ++i) {
+                Field field = type.fields.get(i);
+                if (field.storage().equals("token")) continue;
+                String accessor = type.accessor(field);
+                writer.println();
+                writer.println("    public void set" + Character.toUpperCase(accessor.charAt(0)) + accessor.substring(1)
+                        + "(int node, " + parameterType(field) + " " + field.name + ") {");
+                writer.println("        set(node, " + i + ", " + stored(field) + ");");
+                writer.println("    }");
+            }
+        }
+    }
+
+    private static String parameterType(Field field) {
+        return switch (field.storage()) {
+            case "node", "nodes", "tokens", "int" -> "int";
+            case "boolean" -> "boolean";
+            case "token" -> "Token";
+            default -> field.type;
+        };
+    }
+
+    // the int a field's value is stored as
+    private static String stored(Field field) {
+        return switch (field.storage()) {
+            case "node", "nodes", "tokens", "int" -> field.name;
+            case "boolean" -> field.name + " ? 1 : 0";
+            case "token" -> "addToken(" + field.name + ")";
+            default -> "addValue(" + field.name + ")";
+        };
+    }
+
+    private static void defineFlatUnpacking(PrintWriter writer, List<NodeType> types) {
+        writer.println();
+        writer.println("    // rebuilds the tree under node, sharing this arena's tokens and values");
+        writer.println("    public Stmt stmt(int node) {");
+        writer.println("        if (node < 0) return null;");
+        writer.println("        return switch (data[node]) {");
+        for (NodeType type : types) {
+            if (type.baseName.equals("Stmt")) defineFlatUnpack(writer, type);
+        }
+        writer.println("            default -> throw new IllegalStateException(\"Not a statement: \" + data[node] + \".\");");
+        writer.println("        };");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public Expr expr(int node) {");
+        writer.println("        if (node < 0) return null;");
+        writer.println("        return switch (data[node]) {");
+        for (NodeType type : types) {
+            if (type.baseName.equals("Expr")) defineFlatUnpack(writer, type);
+        }
+        writer.println("            default -> throw new IllegalStateException(\"Not an expression: \" + data[node] + \".\");");
+        writer.println("        };");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private List<Expr> exprs(int list) {");
+        writer.println("        List<Expr> exprs = new ArrayList<>(length(list));");
+        writer.println("        for (int i = 0; i < length(list); ++i) {");
+        writer.println("            exprs.add(expr(element(list, i)));");
+        writer.println("        }");
+        writer.println("        return exprs;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    public List<Stmt> stmts(int list) {");
+        writer.println("        List<Stmt> stmts = new ArrayList<>(length(list));");
+        writer.println("        for (int i = 0; i < length(list); ++i) {");
+        writer.println("            stmts.add(stmt(element(list, i)));");
+        writer.println("        }");
+        writer.println("        return stmts;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private List<Stmt.Function> functions(int list) {");
+        writer.println("        List<Stmt.Function> functions = new ArrayList<>(length(list));");
+        writer.println("        for (int i = 0; i < length(list); ++i) {");
+        writer.println("            functions.add((Stmt.Function) stmt(element(list, i)));");
+        writer.println("        }");
+        writer.println("        return functions;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private List<Token> tokens(int list) {");
+        writer.println("        List<Token> tokens = new ArrayList<>(length(list));");
+        writer.println("        for (int i = 0; i < length(list); ++i) {");
+        writer.println("            tokens.add(token(list, i));");
+        writer.println("        }");
+        writer.println("        return tokens;");
+        writer.println("    }");
+    }
+
+    private static void defineFlatUnpack(PrintWriter writer, NodeType type) {
+        List<String> arguments = new ArrayList<>();
+        for (Field field : type.fields) {
+            String value = type.accessor(field) + "(node)";
+            arguments.add(switch (field.type) {
+                case "Expr" -> "expr(" + value + ")";
+                case "Stmt" -> "stmt(" + value + ")";
+                case "Stmt.Function" -> "(Stmt.Function) stmt(" + value + ")";
+                case "List<Expr>" -> "exprs(" + value + ")";
+                case "List<Stmt>" -> "stmts(" + value + ")";
+                case "List<Stmt.Function>" -> "functions(" + value + ")";
+                case "List<Token>" -> "tokens(" + value + ")";
+                default -> value;
+            });
+        }
+        writer.println("            case " + type.kind() + " -> new " + type.baseName + "." + type.className + "(");
+        writer.println("                    " + String.join(", ", arguments) + ");");
+    }
+}
@@ -1,38 +1,129 @@
 package com.puritylake.lox;
 
+import com.puritylake.lox.jit.Jit;
+import com.puritylake.lox.nodes.StmtNode;
 import com.puritylake.lox.parsing.*;
+import com.puritylake.lox.types.PropertyCache;
+import com.puritylake.lox.vm.CompiledFunction;
+import com.puritylake.lox.vm.Compiler;
+import com.puritylake.lox.vm.VM;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Lox {
     private static boolean hadError = false;
     private static boolean hadRuntimeError = false;
+    private static boolean useVm = false;
+    private static boolean cacheStats = false;
+    private static boolean scanThread = false;
+    private static ScriptCache cache = null;
     private static final Interpreter interpreter = new Interpreter();
+    private static VM vm = null;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        List<String> scripts = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                useVm = true;
+            } else if (arg.equals("--ic-stats")) {
+                cacheStats = true;
+                PropertyCache.enableStats();
+            } else if (arg.equals("--scan-thread")) {
+                scanThread = true;
+            } else if (arg.equals("--no-jit")) {
+                Jit.setEnabled(false);
+            } else if (arg.equals("--jit-sync")) {
+                Jit.setBackground(false);
+            } else if (arg.equals("--jit-log")) {
+                Jit.setLog(true);
+            } else if (arg.startsWith("--jit-threshold=")) {
+                Jit.setInvocationThreshold(intOption(arg));
+            } else if (arg.startsWith("--jit-backedges=")) {
+                Jit.setBackEdgeThreshold(intOption(arg));
+            } else if (arg.startsWith("--cache-dir=")) {
+                try {
+                    cache = new ScriptCache(Paths.get(arg.substring(arg.indexOf('=') + 1)));
+                } catch (IOException e) {
+                    // the cache only saves time; the script runs without it
+                    System.err.println("Not caching scripts: " + e.getMessage() + ".");
+                }
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else {
+                scripts.add(arg);
+            }
+        }
+
+        if (cacheStats && useVm) {
+            // the VM's property accesses do not go through PropertyCache, so
+            // its counts would only ever read zero
+            System.err.println("Ignoring --ic-stats: it only counts the tree-walking interpreter, not --vm.");
+            cacheStats = false;
+        }
+
+        if (scripts.size() > 1) {
+            usage();
+        } else if (scripts.size() == 1) {
+            runFile(scripts.get(0));
         } else {
             runPrompt();
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    private static int intOption(String arg) {
+        try {
+            return Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+        } catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm] [--ic-stats] [--scan-thread] [--no-jit] [--jit-sync]\n" +
+                "            [--jit-log] [--jit-threshold=N] [--jit-backedges=N] [--cache-dir=DIR]\n" +
+                "            [script]");
+        System.exit(64);
+    }
+
+    private static void runFile(String path) {
+        ScriptCache.Entry entry;
+        try {
+            entry = compile(Paths.get(path));
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not read " + path + ".");
+            System.exit(66);
+            return;
+        }
+        execute(entry);
+        if (cacheStats) reportCacheStats();
         if (hadError) System.exit(65);
         if (hadRuntimeError) System.exit(70);
     }
 
+    // the script's cached program if it has one, otherwise the front end's;
+    // the file stays open while the scanner maps it a window at a time
+    private static ScriptCache.Entry compile(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path)) {
+            String key = cache != null ? cache.key(file) : null;
+            ScriptCache.Entry cached = key != null ? cache.load(key) : null;
+            if (cached != null) {
+                cached.warnings().forEach(System.err::println);
+                return cached;
+            }
+            TokenStream tokens = new Scanner(file);
+            return compile(scanThread ? new ScannerThread(tokens) : tokens, key);
+        }
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
@@ -41,32 +132,91 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
+            execute(compile(new Scanner(line), null));
             hadError = false;
             hadRuntimeError = false;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+    /**
+     * Scans, parses, resolves and optimizes a program, saving the result
+     * under key unless that is null. Returns null if the program has errors.
+     */
+    private static ScriptCache.Entry compile(TokenStream tokens, String key) {
+        FlatAst ast = new FlatAst();
+        Parser parser = new Parser(tokens, ast);
+        int statements = parser.parse();
 
-        Resolver resolver = new Resolver();
+        Resolver resolver = new Resolver(ast);
         try {
             resolver.resolve(statements);
+        } catch (Exception e) {
+            return null;
+        }
+
+        if (hadError) return null;
+        if (hadRuntimeError) return null;
+        try {
+            new Optimizer(ast).optimize(statements);
+        } catch (Exception e) {
+            return null;
+        }
+        ast.trim();
+        ScriptCache.Entry entry = new ScriptCache.Entry(ast, statements, resolver.slots(), resolver.warnings());
+        if (key != null) {
+            try {
+                cache.store(key, entry);
+            } catch (Exception e) {
+                // the cache only saves time; the script runs without it
+            }
+        }
+        return entry;
+    }
+
+    // entry is passed straight in so that nothing else keeps the arena alive
+    private static void execute(ScriptCache.Entry entry) {
+        if (entry == null) return;
+        FlatAst ast = entry.ast();
+        int statements = entry.statements();
+        int slots = entry.slots();
+        entry = null;
+        if (useVm) {
+            runVm(ast.stmts(statements));
+            return;
+        }
+        StmtNode[] program;
+        try {
+            program = interpreter.build(ast, statements);
+        } catch (Exception e) {
+            return;
+        }
+        // only the built program is needed from here on, and the functions
+        // the JIT may compile hold on to the arena themselves
+        ast = null;
+        try {
+            interpreter.interpret(program, slots);
         } catch (Exception e) {
             return;
         }
+    }
 
-        if (hadError) return;
-        if (hadRuntimeError) return;
+    private static void runVm(List<Stmt> statements) {
+        CompiledFunction script;
         try {
-            interpreter.interpret(statements);
+            script = new Compiler().compile(statements);
         } catch (Exception e) {
             return;
         }
+        if (hadError || script == null) return;
+
+        if (vm == null) vm = new VM();
+        vm.interpret(script);
+    }
+
+    private static void reportCacheStats() {
+        System.err.println("[ic] property accesses: " + PropertyCache.hits() + " hits, "
+                + PropertyCache.misses() + " misses, "
+                + PropertyCache.megamorphicSites() + " megamorphic sites");
     }
 
     public static void error(int line, String message) {
@@ -82,7 +232,7 @@ public class Lox {
     }
 
     public static void runtimeError(RuntimeError error) {
-        System.err.println("[line " + error.token.line() + "] " + error.getMessage());
+        System.err.println("[line " + error.line + "] " + error.getMessage());
         hadRuntimeError = true;
     }
 
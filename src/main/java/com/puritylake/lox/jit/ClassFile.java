@@ -0,0 +1,392 @@
+package com.puritylake.lox.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer to emit one class holding static
+ * methods, and the constructor and overrides that make it a subclass of
+ * its superclass. Classes are written as version 49 so the verifier infers
+ * frame types itself and no StackMapTable has to be computed.
+ */
+final class ClassFile {
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int SWAP = 0x5f;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ACMPNE = 0xa6;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    /** Thrown when generated code exceeds what the writer supports. */
+    static class TooLarge extends RuntimeException {
+        TooLarge(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final String name;
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFile(String name, String superName) {
+        this.name = name;
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+    }
+
+    String name() {
+        return name;
+    }
+
+    private int entry(String key, int slots, PoolWriter writer) {
+        Integer existing = poolIndices.get(key);
+        if (existing != null) return existing;
+
+        int index = poolCount;
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolCount += slots;
+        if (poolCount > 0xffff) {
+            throw new TooLarge("constant pool overflow");
+        }
+        poolIndices.put(key, index);
+        return index;
+    }
+
+    private interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        return entry("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int string(String value) {
+        int valueIndex = utf8(value);
+        return entry("S" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(valueIndex);
+        });
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return entry("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int typeIndex = utf8(descriptor);
+        return entry("N" + name + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(typeIndex);
+        });
+    }
+
+    int methodRef(String owner, String methodName, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(methodName, descriptor);
+        return entry("M" + owner + "." + methodName + descriptor, 1, out -> {
+            out.writeByte(10);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    int fieldRef(String owner, String fieldName, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(fieldName, descriptor);
+        return entry("F" + owner + "." + fieldName + descriptor, 1, out -> {
+            out.writeByte(9);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    Code newMethod(String methodName, String descriptor, int argumentSlots) {
+        return new Code(methodName, descriptor, argumentSlots, ACC_PUBLIC | ACC_STATIC);
+    }
+
+    // argumentSlots counts this, which is local 0
+    Code newInstanceMethod(String methodName, String descriptor, int argumentSlots) {
+        return new Code(methodName, descriptor, argumentSlots, ACC_PUBLIC);
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class Label {
+        private int offset = -1;
+        private int stack = -1;
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+
+    /**
+     * Bytecode of a single method. Stack depth is tracked as code is
+     * emitted, jumps record the depth they leave so labels can restore it.
+     */
+    final class Code {
+        private final String methodName;
+        private final String descriptor;
+        private final int access;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private boolean reachable = true;
+
+        private Code(String methodName, String descriptor, int argumentSlots, int access) {
+            this.methodName = methodName;
+            this.descriptor = descriptor;
+            this.access = access;
+            this.maxLocals = argumentSlots;
+        }
+
+        int newLocal(int size) {
+            int slot = maxLocals;
+            maxLocals += size;
+            if (maxLocals > 0xffff) {
+                throw new TooLarge("too many locals");
+            }
+            return slot;
+        }
+
+        private void u1(int b) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack) maxStack = stack;
+        }
+
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjust(stackDelta);
+            reachable = opcode != ARETURN;
+        }
+
+        void local(int opcode, int slot, int stackDelta) {
+            if (slot > 0xff) {
+                u1(0xc4);
+                u1(opcode);
+                u2(slot);
+            } else {
+                u1(opcode);
+                u1(slot);
+            }
+            adjust(stackDelta);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else {
+                u1(SIPUSH);
+                u2(value);
+            }
+            adjust(1);
+        }
+
+        void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                op(DCONST_0, 2);
+            } else if (value == 1.0) {
+                op(DCONST_1, 2);
+            } else {
+                u1(LDC2_W);
+                u2(doubleConstant(value));
+                adjust(2);
+            }
+        }
+
+        void pushString(String value) {
+            u1(LDC_W);
+            u2(string(value));
+            adjust(1);
+        }
+
+        void typeOp(int opcode, String internalName) {
+            u1(opcode);
+            u2(classRef(internalName));
+            adjust(0);
+        }
+
+        void invoke(int opcode, String owner, String name, String desc, int stackDelta) {
+            u1(opcode);
+            u2(methodRef(owner, name, desc));
+            adjust(stackDelta);
+        }
+
+        void field(int opcode, String owner, String name, String desc, int stackDelta) {
+            u1(opcode);
+            u2(fieldRef(owner, name, desc));
+            adjust(stackDelta);
+        }
+
+        void jump(int opcode, Label target, int stackDelta) {
+            int at = length;
+            u1(opcode);
+            adjust(stackDelta);
+            if (target.offset >= 0) {
+                u2(target.offset - at);
+            } else {
+                target.fixups.add(at);
+                u2(0);
+            }
+            if (target.stack < 0) target.stack = stack;
+            if (opcode == GOTO) reachable = false;
+        }
+
+        void mark(Label label) {
+            label.offset = length;
+            for (int at : label.fixups) {
+                int delta = length - at;
+                code[at + 1] = (byte) (delta >> 8);
+                code[at + 2] = (byte) delta;
+            }
+            if (!reachable && label.stack >= 0) {
+                stack = label.stack;
+            } else if (label.stack < 0) {
+                label.stack = stack;
+            }
+            reachable = true;
+        }
+
+        void finish() {
+            if (length > 32767) {
+                throw new TooLarge("method too large");
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeShort(access);
+                out.writeShort(utf8(methodName));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(0);
+                out.writeShort(0);
+                methods.add(bytes.toByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
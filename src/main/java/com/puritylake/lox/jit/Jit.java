@@ -0,0 +1,118 @@
+package com.puritylake.lox.jit;
+
+import com.puritylake.lox.nodes.FunctionDefinition;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.Stmt;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The second execution tier. Functions start on the node interpreter and
+ * are queued for compilation into a hidden class once they are hot; the
+ * compiler runs on its own daemon thread so the script never waits for it.
+ * Functions using anything the compiler does not support stay on the
+ * interpreter.
+ */
+public final class Jit {
+    private static boolean enabled = true;
+    private static boolean background = true;
+    private static boolean log = false;
+    private static int invocationThreshold = 1000;
+    private static int backEdgeThreshold = 10000;
+    private static ExecutorService compilerThread = null;
+
+    private Jit() { }
+
+    public static void setEnabled(boolean enabled) {
+        Jit.enabled = enabled;
+    }
+
+    public static void setBackground(boolean background) {
+        Jit.background = background;
+    }
+
+    public static void setLog(boolean log) {
+        Jit.log = log;
+    }
+
+    public static void setInvocationThreshold(int threshold) {
+        invocationThreshold = threshold;
+    }
+
+    public static void setBackEdgeThreshold(int threshold) {
+        backEdgeThreshold = threshold;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static int invocationThreshold() {
+        return invocationThreshold;
+    }
+
+    public static int backEdgeThreshold() {
+        return backEdgeThreshold;
+    }
+
+    /**
+     * Compiles the function and installs the result, on the compiler thread
+     * unless background compilation was turned off.
+     */
+    public static void submit(FunctionDefinition definition, Interpreter interpreter, String reason) {
+        if (!background) {
+            promote(definition, interpreter, reason);
+            return;
+        }
+        if (compilerThread == null) {
+            compilerThread = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "lox-jit");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compilerThread.execute(() -> promote(definition, interpreter, reason));
+    }
+
+    private static void promote(FunctionDefinition definition, Interpreter interpreter, String reason) {
+        String name = definition.name != null ? definition.name : "anonymous";
+        long start = System.nanoTime();
+        JitCode code;
+        String failure = null;
+        try {
+            code = compile(name, definition, interpreter);
+        } catch (Exception | LinkageError e) {
+            code = null;
+            failure = e.getMessage();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (code != null) {
+            definition.install(code);
+        }
+        if (log) {
+            String millis = String.format("%.2f ms", elapsed / 1e6);
+            if (code != null) {
+                System.err.println("[jit] promoted " + name + " (" + reason + ") in " + millis);
+            } else {
+                System.err.println("[jit] kept " + name + " on the interpreter (" + reason + "): "
+                        + failure + ", gave up after " + millis);
+            }
+        }
+    }
+
+    private static JitCode compile(String name, FunctionDefinition definition,
+                                   Interpreter interpreter) throws Exception {
+        Stmt.Function declaration = definition.declaration();
+        if (declaration == null) {
+            throw new JitAnalysis.Unsupported("declares a function or class");
+        }
+        JitCompiler compiler = new JitCompiler("com/puritylake/lox/jit/Lox$" + name, declaration, interpreter);
+        byte[] bytes = compiler.compile();
+
+        Class<?> compiled = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+        return (JitCode) compiled.getConstructor(Object[].class).newInstance((Object) compiler.constants());
+    }
+}
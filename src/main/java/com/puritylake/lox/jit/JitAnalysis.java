@@ -0,0 +1,382 @@
+package com.puritylake.lox.jit;
+
+import com.puritylake.lox.parsing.Expr;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.Stmt;
+import com.puritylake.lox.parsing.TokenType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the resolver's slots of one function onto JVM locals and infers
+ * whether each local only ever holds numbers, only booleans, or anything.
+ * Constructs the compiler cannot handle are rejected here, before any
+ * code is generated.
+ */
+final class JitAnalysis implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    enum Type { NUMBER, BOOLEAN, OBJECT }
+
+    static final class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    static final class Local {
+        Type type;
+        int slot = -1;
+        final List<Expr> values = new ArrayList<>();
+    }
+
+    private final Map<Slot, Local> slots = new IdentityHashMap<>();
+    private final List<Local> locals = new ArrayList<>();
+    private final Map<Expr, Local> variables = new IdentityHashMap<>();
+    private final Map<Stmt.Var, Local> declarations = new IdentityHashMap<>();
+    private final List<Local> params = new ArrayList<>();
+    private Local receiver = null;
+
+    JitAnalysis(Stmt.Function function) throws Exception {
+        for (Slot slot : function.layout.params) {
+            Local param = new Local();
+            param.type = Type.OBJECT;
+            slots.put(slot, param);
+            params.add(param);
+            locals.add(param);
+        }
+        if (function.layout.receiver != null) {
+            receiver = new Local();
+            receiver.type = Type.OBJECT;
+            slots.put(function.layout.receiver, receiver);
+            locals.add(receiver);
+        }
+        for (Stmt statement : function.body) {
+            statement.accept(this);
+        }
+        solve();
+    }
+
+    List<Local> params() {
+        return params;
+    }
+
+    // the local "this" lives in, for methods
+    Local receiver() {
+        return receiver;
+    }
+
+    List<Local> locals() {
+        return locals;
+    }
+
+    Local local(Expr variable) {
+        return variables.get(variable);
+    }
+
+    Local declaration(Stmt.Var stmt) {
+        return declarations.get(stmt);
+    }
+
+    private void solve() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Local local : locals) {
+                Type type = local.type;
+                for (Expr value : local.values) {
+                    type = join(type, value == null ? Type.OBJECT : type(value));
+                }
+                if (type != local.type) {
+                    local.type = type;
+                    changed = true;
+                }
+            }
+        }
+        for (Local local : locals) {
+            if (local.type == null) local.type = Type.OBJECT;
+        }
+    }
+
+    // null is "not known yet" while solving and joins with anything
+    private static Type join(Type a, Type b) {
+        if (a == null) return b;
+        if (b == null || a == b) return a;
+        return Type.OBJECT;
+    }
+
+    Type type(Expr expr) {
+        if (expr instanceof Expr.Literal literal) {
+            if (literal.value instanceof Double) return Type.NUMBER;
+            if (literal.value instanceof Boolean) return Type.BOOLEAN;
+            return Type.OBJECT;
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return type(grouping.expression);
+        } else if (expr instanceof Expr.Variable) {
+            Local local = variables.get(expr);
+            return local != null ? local.type : Type.OBJECT;
+        } else if (expr instanceof Expr.Assign assign) {
+            Local local = variables.get(assign.var);
+            return local != null ? local.type : Type.OBJECT;
+        } else if (expr instanceof Expr.Binary binary) {
+            switch (binary.operator.type()) {
+                case MINUS, STAR, SLASH:
+                    return Type.NUMBER;
+                case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL_EQUAL, BANG_EQUAL:
+                    return Type.BOOLEAN;
+                default:
+                    Type left = type(binary.left);
+                    Type right = type(binary.right);
+                    if (left == null || right == null) return null;
+                    return left == Type.NUMBER && right == Type.NUMBER ? Type.NUMBER : Type.OBJECT;
+            }
+        } else if (expr instanceof Expr.Unary unary) {
+            return unary.operator.type() == TokenType.MINUS
+                    ? Type.NUMBER : Type.BOOLEAN;
+        } else if (expr instanceof Expr.Logical logical) {
+            return join(type(logical.left), type(logical.right));
+        } else if (expr instanceof Expr.Ternary ternary) {
+            return join(type(ternary.trueVal), type(ternary.falseVal));
+        }
+        return Type.OBJECT;
+    }
+
+    // variables of enclosing functions are left to the upvalues
+    private void resolve(Expr.Variable variable) {
+        if (variable.slot == null) return;
+        Local local = slots.get(variable.slot);
+        if (local == null) {
+            throw new Unsupported("slot read before its declaration");
+        }
+        variables.put(variable, local);
+    }
+
+    private void declare(Stmt.Var stmt) {
+        Local local = new Local();
+        local.values.add(stmt.initializer);
+        slots.put(stmt.slot, local);
+        locals.add(local);
+        declarations.put(stmt, local);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) throws Exception {
+        expr.value.accept(this);
+        Expr.Variable var = (Expr.Variable) expr.var;
+        resolve(var);
+        Local local = variables.get(var);
+        if (local != null) {
+            local.values.add(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) throws Exception {
+        switch (expr.operator.type()) {
+            case MINUS, STAR, SLASH, PLUS, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL,
+                    EQUAL_EQUAL, BANG_EQUAL -> { }
+            default -> throw new Unsupported("operator " + expr.operator.lexeme());
+        }
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) throws Exception {
+        expr.callee.accept(this);
+        for (Expr argument : expr.arguments) {
+            argument.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) throws Exception {
+        expr.object.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) throws Exception {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) throws Exception {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) throws Exception {
+        expr.object.accept(this);
+        expr.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        if (expr.slot != null) {
+            variables.put(expr, slots.get(expr.slot));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) throws Exception {
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitCommaGroupExpr(Expr.CommaGroup expr) throws Exception {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) throws Exception {
+        expr.cond.accept(this);
+        expr.trueVal.accept(this);
+        expr.falseVal.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        resolve(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitAnonFunctionExpr(Expr.AnonFunction expr) {
+        throw new Unsupported("closure");
+    }
+
+    @Override
+    public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr) throws Exception {
+        for (Expr element : expr.elements) {
+            element.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitMapLiteralExpr(Expr.MapLiteral expr) throws Exception {
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            expr.keys.get(i).accept(this);
+            expr.values.get(i).accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) throws Exception {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) throws Exception {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        expr.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) throws Exception {
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported("class declaration");
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) throws Exception {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported("nested function");
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) throws Exception {
+        stmt.condition.accept(this);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) {
+            stmt.elseBranch.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) throws Exception {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) throws Exception {
+        if (stmt.value != null) {
+            stmt.value.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) throws Exception {
+        // declared before the initializer is resolved, as in the resolver
+        declare(stmt);
+        if (stmt.initializer != null) {
+            stmt.initializer.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) throws Exception {
+        stmt.condition.accept(this);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) throws Exception {
+        if (stmt.init != null) stmt.init.accept(this);
+        if (stmt.cond != null) stmt.cond.accept(this);
+        if (stmt.post != null) stmt.post.accept(this);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        return null;
+    }
+}
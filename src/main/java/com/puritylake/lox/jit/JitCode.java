@@ -0,0 +1,23 @@
+package com.puritylake.lox.jit;
+
+import com.puritylake.lox.parsing.Cell;
+import com.puritylake.lox.types.LoxFunction;
+import com.puritylake.lox.types.LoxInstance;
+
+/**
+ * A compiled function body together with the constants its code indexes
+ * into. The compiler emits a subclass per function whose {@link #invoke}
+ * calls straight into the generated code, so calling it is an ordinary
+ * virtual call. One instance is shared by every closure over the same
+ * declaration.
+ */
+public abstract class JitCode {
+    final Object[] constants;
+
+    protected JitCode(Object[] constants) {
+        this.constants = constants;
+    }
+
+    // the arguments are staged in the environment; receiver is null for anything but a method
+    public abstract Object invoke(Cell[] upvalues, LoxFunction self, LoxInstance receiver) throws Exception;
+}
@@ -0,0 +1,889 @@
+package com.puritylake.lox.jit;
+
+import com.puritylake.lox.jit.ClassFile.Code;
+import com.puritylake.lox.jit.ClassFile.Label;
+import com.puritylake.lox.jit.JitAnalysis.Local;
+import com.puritylake.lox.jit.JitAnalysis.Type;
+import com.puritylake.lox.parsing.Expr;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.Stmt;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.parsing.TokenType;
+import com.puritylake.lox.types.PropertyCache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.puritylake.lox.jit.ClassFile.*;
+
+/**
+ * Generates a static {@code run} method for one function body, in a
+ * subclass of {@link JitCode} whose {@code invoke} calls it. Locals
+ * the analysis proved numeric or boolean live unboxed in JVM locals,
+ * everything else is an Object and goes through {@link JitRuntime}.
+ */
+final class JitCompiler implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
+    static final String RUN = "run";
+    static final String RUN_DESCRIPTOR =
+            "([Ljava/lang/Object;[Lcom/puritylake/lox/parsing/Cell;"
+                    + "Lcom/puritylake/lox/types/LoxFunction;Lcom/puritylake/lox/types/LoxInstance;)"
+                    + "Ljava/lang/Object;";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String JIT_CODE = "com/puritylake/lox/jit/JitCode";
+    private static final String CELL = "com/puritylake/lox/parsing/Cell";
+    private static final String GLOBAL = "com/puritylake/lox/parsing/Globals$Global";
+    private static final String TOKEN = "com/puritylake/lox/parsing/Token";
+    private static final String INTERPRETER = "com/puritylake/lox/parsing/Interpreter";
+    private static final String ENVIRONMENT = "com/puritylake/lox/parsing/Environment";
+    private static final String RUNTIME = "com/puritylake/lox/jit/JitRuntime";
+    private static final String VALUES = "com/puritylake/lox/types/Values";
+    private static final String PROPERTY_CACHE = "com/puritylake/lox/types/PropertyCache";
+    private static final String INSTANCE = "com/puritylake/lox/types/LoxInstance";
+    private static final String ARRAY = "com/puritylake/lox/types/LoxArray";
+
+    private static final String O = "Ljava/lang/Object;";
+    private static final String T = "L" + TOKEN + ";";
+    private static final String G = "L" + GLOBAL + ";";
+
+    // fixed JVM locals of run()
+    private static final int CONSTANTS = 0;
+    private static final int UPVALUES = 1;
+    private static final int SELF = 2;
+    private static final int RECEIVER = 3;
+    // the calling convention after the callee: the argument count, the first
+    // three arguments and an array of them all when there are more
+    private static final String ARGUMENTS = "I" + O + O + O + "[" + O;
+
+    private record Loop(Label breakTarget, Label continueTarget) { }
+
+    private final Stmt.Function function;
+    private final Globals globals;
+    private final JitAnalysis analysis;
+    private final ClassFile classFile;
+    private final Code code;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    // just after the parameters are loaded, where self tail calls jump back to
+    private final Label start = new Label();
+    private final int scratchObject;
+    private final int scratchNumber;
+
+    JitCompiler(String className, Stmt.Function function, Interpreter interpreter) throws Exception {
+        this.function = function;
+        this.analysis = new JitAnalysis(function);
+        this.classFile = new ClassFile(className, JIT_CODE);
+        this.code = classFile.newMethod(RUN, RUN_DESCRIPTOR, 4);
+        this.scratchObject = code.newLocal(1);
+        this.scratchNumber = code.newLocal(2);
+        this.globals = interpreter.globals();
+        constant(interpreter);
+        constant(interpreter.environment());
+    }
+
+    byte[] compile() throws Exception {
+        for (Local local : analysis.locals()) {
+            local.slot = code.newLocal(local.type == Type.NUMBER ? 2 : 1);
+            // every slot starts initialised so the verifier never sees a
+            // path that reads a local before its declaration ran
+            switch (local.type) {
+                case NUMBER -> code.op(DCONST_0, 2);
+                case BOOLEAN -> code.op(ICONST_0, 1);
+                case OBJECT -> code.op(ACONST_NULL, 1);
+            }
+            store(local);
+        }
+        List<Local> params = analysis.params();
+        for (int i = 0; i < params.size(); ++i) {
+            // the arguments were staged for a frame this code never pushes
+            loadEnvironment();
+            code.pushInt(i);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "unstage", "(I)" + O, -1);
+            store(params.get(i));
+        }
+        Local receiver = analysis.receiver();
+        if (receiver != null) {
+            code.local(ALOAD, RECEIVER, 1);
+            store(receiver);
+        }
+        code.mark(start);
+
+        for (Stmt statement : function.body) {
+            statement.accept(this);
+        }
+        returnNil();
+        code.finish();
+        defineConstructor();
+        defineInvoke();
+        return classFile.toByteArray();
+    }
+
+    private void defineConstructor() {
+        Code init = classFile.newInstanceMethod("<init>", "([" + O + ")V", 2);
+        init.local(ALOAD, 0, 1);
+        init.local(ALOAD, 1, 1);
+        init.invoke(INVOKESPECIAL, JIT_CODE, "<init>", "([" + O + ")V", -2);
+        init.op(RETURN, 0);
+        init.finish();
+    }
+
+    // invoke(upvalues, self, receiver) is run with the constants in front
+    private void defineInvoke() {
+        Code invoke = classFile.newInstanceMethod("invoke", RUN_DESCRIPTOR.replace("([Ljava/lang/Object;", "("), 4);
+        invoke.local(ALOAD, 0, 1);
+        invoke.field(GETFIELD, JIT_CODE, "constants", "[" + O, 0);
+        invoke.local(ALOAD, 1, 1);
+        invoke.local(ALOAD, 2, 1);
+        invoke.local(ALOAD, 3, 1);
+        invoke.invoke(INVOKESTATIC, classFile.name(), RUN, RUN_DESCRIPTOR, -3);
+        invoke.op(ARETURN, -1);
+        invoke.finish();
+    }
+
+    Object[] constants() {
+        return constants.toArray();
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndices.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndices.put(value, index);
+        }
+        return index;
+    }
+
+    private void loadConstant(Object value, String type) {
+        code.local(ALOAD, CONSTANTS, 1);
+        code.pushInt(constant(value));
+        code.op(AALOAD, -1);
+        code.typeOp(CHECKCAST, type);
+    }
+
+    private void loadInterpreter() {
+        loadConstant(constants.get(0), INTERPRETER);
+    }
+
+    private void loadEnvironment() {
+        loadConstant(constants.get(1), ENVIRONMENT);
+    }
+
+    private void loadToken(Token token) {
+        loadConstant(token, TOKEN);
+    }
+
+    // globals are reached through their cells, which never change
+    private void loadGlobal(Token name) {
+        loadConstant(globals.cell(name.symbol()), GLOBAL);
+    }
+
+    private void returnNil() {
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+    }
+
+    private void load(Local local) {
+        switch (local.type) {
+            case NUMBER -> code.local(DLOAD, local.slot, 2);
+            case BOOLEAN -> code.local(ILOAD, local.slot, 1);
+            case OBJECT -> code.local(ALOAD, local.slot, 1);
+        }
+    }
+
+    private void store(Local local) {
+        switch (local.type) {
+            case NUMBER -> code.local(DSTORE, local.slot, -2);
+            case BOOLEAN -> code.local(ISTORE, local.slot, -1);
+            case OBJECT -> code.local(ASTORE, local.slot, -1);
+        }
+    }
+
+    private void dup(Type type) {
+        if (type == Type.NUMBER) {
+            code.op(DUP2, 2);
+        } else {
+            code.op(DUP, 1);
+        }
+    }
+
+    private void pop(Type type) {
+        if (type == Type.NUMBER) {
+            code.op(POP2, -2);
+        } else {
+            code.op(POP, -1);
+        }
+    }
+
+    private void box(Type type) {
+        if (type == Type.NUMBER) {
+            code.invoke(INVOKESTATIC, VALUES, "box", "(D)Ljava/lang/Double;", -1);
+        } else if (type == Type.BOOLEAN) {
+            code.invoke(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", 0);
+        }
+    }
+
+    private void value(Expr expr, Type want) throws Exception {
+        Type type = expr.accept(this);
+        if (type == want) return;
+        if (want != Type.OBJECT) {
+            throw new IllegalStateException("cannot narrow " + type + " to " + want);
+        }
+        box(type);
+    }
+
+    // leaves an int that is non-zero when the expression is truthy
+    private void condition(Expr expr) throws Exception {
+        switch (expr.accept(this)) {
+            case NUMBER -> {
+                code.op(POP2, -2);
+                code.op(ICONST_1, 1);
+            }
+            case OBJECT -> code.invoke(INVOKESTATIC, VALUES, "isTruthy", "(" + O + ")Z", 0);
+            case BOOLEAN -> { }
+        }
+    }
+
+    private void bool(int jumpIfFalse, int popped) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        code.jump(jumpIfFalse, isFalse, popped);
+        code.op(ICONST_1, 1);
+        code.jump(GOTO, end, 0);
+        code.mark(isFalse);
+        code.op(ICONST_0, 1);
+        code.mark(end);
+    }
+
+    // evaluates both operands and leaves two doubles, failing only once
+    // both have been evaluated like the interpreter does
+    private void numbers(Expr.Binary expr) throws Exception {
+        // booleans are boxed so number() rejects them with the usual error
+        Type left = expr.left.accept(this);
+        if (left == Type.BOOLEAN) box(left);
+        Type right = expr.right.accept(this);
+        if (right == Type.BOOLEAN) box(right);
+
+        if (left == Type.NUMBER) {
+            if (right != Type.NUMBER) {
+                toNumber(expr.operator);
+            }
+            return;
+        }
+        if (right == Type.NUMBER) {
+            code.local(DSTORE, scratchNumber, -2);
+            toNumber(expr.operator);
+            code.local(DLOAD, scratchNumber, 2);
+        } else {
+            code.local(ASTORE, scratchObject, -1);
+            toNumber(expr.operator);
+            code.local(ALOAD, scratchObject, 1);
+            toNumber(expr.operator);
+        }
+    }
+
+    private void toNumber(Token operator) {
+        loadToken(operator);
+        code.invoke(INVOKESTATIC, RUNTIME, "number", "(" + O + T + ")D", 0);
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) throws Exception {
+        Expr.Variable var = (Expr.Variable) expr.var;
+        Local local = analysis.local(var);
+        if (local != null) {
+            value(expr.value, local.type);
+            dup(local.type);
+            store(local);
+            return local.type;
+        }
+
+        value(expr.value, Type.OBJECT);
+        code.op(DUP, 1);
+        if (var.upvalue != -1) {
+            code.local(ASTORE, scratchObject, -1);
+            upvalue(var.upvalue);
+            code.local(ALOAD, scratchObject, 1);
+            code.field(PUTFIELD, CELL, "value", O, -2);
+        } else {
+            loadGlobal(expr.name);
+            loadToken(expr.name);
+            code.invoke(INVOKESTATIC, RUNTIME, "assignGlobal", "(" + O + G + T + ")V", -3);
+        }
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) throws Exception {
+        Token operator = expr.operator;
+        switch (operator.type()) {
+            case MINUS -> {
+                numbers(expr);
+                code.op(DSUB, -2);
+                return Type.NUMBER;
+            }
+            case STAR -> {
+                numbers(expr);
+                code.op(DMUL, -2);
+                return Type.NUMBER;
+            }
+            case SLASH -> {
+                numbers(expr);
+                loadToken(operator);
+                code.invoke(INVOKESTATIC, RUNTIME, "divide", "(DD" + T + ")D", -3);
+                return Type.NUMBER;
+            }
+            case PLUS -> {
+                if (analysis.type(expr) == Type.NUMBER) {
+                    expr.left.accept(this);
+                    expr.right.accept(this);
+                    code.op(DADD, -2);
+                    return Type.NUMBER;
+                }
+                loadToken(operator);
+                value(expr.left, Type.OBJECT);
+                value(expr.right, Type.OBJECT);
+                code.invoke(INVOKESTATIC, VALUES, "add", "(" + T + O + O + ")" + O, -2);
+                return Type.OBJECT;
+            }
+            case GREATER -> {
+                numbers(expr);
+                code.op(DCMPL, -3);
+                bool(IFLE, -1);
+                return Type.BOOLEAN;
+            }
+            case GREATER_EQUAL -> {
+                numbers(expr);
+                code.op(DCMPL, -3);
+                bool(IFLT, -1);
+                return Type.BOOLEAN;
+            }
+            case LESS -> {
+                numbers(expr);
+                code.op(DCMPG, -3);
+                bool(IFGE, -1);
+                return Type.BOOLEAN;
+            }
+            case LESS_EQUAL -> {
+                numbers(expr);
+                code.op(DCMPG, -3);
+                bool(IFGT, -1);
+                return Type.BOOLEAN;
+            }
+            default -> {
+                return equality(expr, operator.type() == TokenType.BANG_EQUAL);
+            }
+        }
+    }
+
+    private Type equality(Expr.Binary expr, boolean negated) throws Exception {
+        Type left = analysis.type(expr.left);
+        Type right = analysis.type(expr.right);
+        if (left == Type.NUMBER && right == Type.NUMBER) {
+            expr.left.accept(this);
+            expr.right.accept(this);
+            code.invoke(INVOKESTATIC, "java/lang/Double", "compare", "(DD)I", -3);
+            bool(negated ? IFEQ : IFNE, -1);
+        } else if (left == Type.BOOLEAN && right == Type.BOOLEAN) {
+            expr.left.accept(this);
+            expr.right.accept(this);
+            bool(negated ? IF_ICMPEQ : IF_ICMPNE, -2);
+        } else {
+            value(expr.left, Type.OBJECT);
+            value(expr.right, Type.OBJECT);
+            code.invoke(INVOKESTATIC, VALUES, "isEqual", "(" + O + O + ")Z", -1);
+            if (negated) {
+                code.op(ICONST_1, 1);
+                code.op(IXOR, -1);
+            }
+        }
+        return Type.BOOLEAN;
+    }
+
+    // leaves the callee on the stack and returns the locals holding the arguments
+    private int[] callee(Expr.Call expr) throws Exception {
+        value(expr.callee, Type.OBJECT);
+        code.op(DUP, 1);
+        loadToken(expr.paren);
+        code.invoke(INVOKESTATIC, RUNTIME, "checkCallable", "(" + O + T + ")V", -2);
+        return arguments(expr);
+    }
+
+    // evaluates the arguments into locals of their own, so no array is
+    // needed to hold them for the few calls that take three or fewer
+    private int[] arguments(Expr.Call expr) throws Exception {
+        int[] locals = new int[expr.arguments.size()];
+        for (int i = 0; i < locals.length; ++i) {
+            value(expr.arguments.get(i), Type.OBJECT);
+            locals[i] = code.newLocal(1);
+            code.local(ASTORE, locals[i], -1);
+        }
+        return locals;
+    }
+
+    // pushes the arguments in the form ARGUMENTS describes
+    private void pushArguments(int[] locals) {
+        code.pushInt(locals.length);
+        for (int i = 0; i < 3; ++i) {
+            if (i < locals.length && locals.length <= 3) {
+                code.local(ALOAD, locals[i], 1);
+            } else {
+                code.op(ACONST_NULL, 1);
+            }
+        }
+        if (locals.length <= 3) {
+            code.op(ACONST_NULL, 1);
+            return;
+        }
+        code.pushInt(locals.length);
+        code.typeOp(ANEWARRAY, OBJECT);
+        for (int i = 0; i < locals.length; ++i) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            code.local(ALOAD, locals[i], 1);
+            code.op(AASTORE, -3);
+        }
+    }
+
+    // leaves an Object[] of the values
+    private void array(List<Expr> exprs) throws Exception {
+        int count = exprs.size();
+        code.pushInt(count);
+        code.typeOp(ANEWARRAY, OBJECT);
+        for (int i = 0; i < count; ++i) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            value(exprs.get(i), Type.OBJECT);
+            code.op(AASTORE, -3);
+        }
+    }
+
+    // object.name(...): the method is looked up and called on the object
+    // without binding it, leaving everything JitRuntime.invoke takes
+    private void invocation(Expr.Get get, Expr.Call expr) throws Exception {
+        value(get.object, Type.OBJECT);
+        code.op(DUP, 1);
+        loadConstant(new PropertyCache(get.name), PROPERTY_CACHE);
+        code.op(SWAP, 0);
+        code.invoke(INVOKEVIRTUAL, PROPERTY_CACHE, "getForCall", "(" + O + ")" + O, -1);
+        code.op(DUP, 1);
+        loadToken(expr.paren);
+        code.invoke(INVOKESTATIC, RUNTIME, "checkCallable", "(" + O + T + ")V", -2);
+        pushArguments(arguments(expr));
+        loadToken(expr.paren);
+        loadInterpreter();
+    }
+
+    // calling itself directly skips the receiver, so methods never do
+    private boolean callsSelf(Expr.Call expr) {
+        return expr.arguments.size() == function.params.size() && function.layout.receiver == null;
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) throws Exception {
+        if (expr.callee instanceof Expr.Get get) {
+            invocation(get, expr);
+            code.invoke(INVOKESTATIC, RUNTIME, "invoke", "(" + O + O + ARGUMENTS + T + "L" + INTERPRETER + ";)" + O, -8);
+            return Type.OBJECT;
+        }
+        int[] arguments = callee(expr);
+
+        Label generic = new Label();
+        Label end = new Label();
+        if (callsSelf(expr)) {
+            // recursion stages its arguments and calls straight into this
+            // class instead of going back through LoxFunction.call
+            code.op(DUP, 1);
+            code.local(ALOAD, SELF, 1);
+            code.jump(IF_ACMPNE, generic, -2);
+            code.op(POP, -1);
+            for (int i = 0; i < arguments.length; ++i) {
+                loadEnvironment();
+                code.pushInt(i);
+                code.local(ALOAD, arguments[i], 1);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "stage", "(I" + O + ")V", -3);
+            }
+            code.local(ALOAD, CONSTANTS, 1);
+            code.local(ALOAD, UPVALUES, 1);
+            code.local(ALOAD, SELF, 1);
+            code.op(ACONST_NULL, 1);
+            code.invoke(INVOKESTATIC, classFile.name(), RUN, RUN_DESCRIPTOR, -3);
+            loadInterpreter();
+            code.invoke(INVOKESTATIC, RUNTIME, "complete", "(" + O + "L" + INTERPRETER + ";)" + O, -1);
+            code.jump(GOTO, end, 0);
+        }
+        code.mark(generic);
+        pushArguments(arguments);
+        loadToken(expr.paren);
+        loadInterpreter();
+        code.invoke(INVOKESTATIC, RUNTIME, "call", "(" + O + ARGUMENTS + T + "L" + INTERPRETER + ";)" + O, -7);
+        code.mark(end);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitGetExpr(Expr.Get expr) throws Exception {
+        loadConstant(new PropertyCache(expr.name), PROPERTY_CACHE);
+        value(expr.object, Type.OBJECT);
+        code.invoke(INVOKEVIRTUAL, PROPERTY_CACHE, "get", "(" + O + ")" + O, -1);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) throws Exception {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double number) {
+            code.pushDouble(number);
+            return Type.NUMBER;
+        } else if (expr.value instanceof Boolean bool) {
+            code.op(bool ? ICONST_1 : ICONST_0, 1);
+            return Type.BOOLEAN;
+        } else if (expr.value instanceof String string) {
+            code.pushString(string);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) throws Exception {
+        Type type = analysis.type(expr);
+        boolean isOr = expr.operator.type() == TokenType.OR;
+        value(expr.left, type);
+        if (type == Type.NUMBER) {
+            // a number is always truthy
+            if (!isOr) {
+                code.op(POP2, -2);
+                value(expr.right, type);
+            }
+            return type;
+        }
+
+        Label end = new Label();
+        code.op(DUP, 1);
+        if (type == Type.OBJECT) {
+            code.invoke(INVOKESTATIC, VALUES, "isTruthy", "(" + O + ")Z", 0);
+        }
+        code.jump(isOr ? IFNE : IFEQ, end, -1);
+        code.op(POP, -1);
+        value(expr.right, type);
+        code.mark(end);
+        return type;
+    }
+
+    @Override
+    public Type visitSetExpr(Expr.Set expr) throws Exception {
+        loadConstant(new PropertyCache(expr.name), PROPERTY_CACHE);
+        value(expr.object, Type.OBJECT);
+        code.op(DUP, 1);
+        loadToken(expr.name);
+        code.invoke(INVOKESTATIC, RUNTIME, "checkInstance", "(" + O + T + ")V", -2);
+        code.typeOp(CHECKCAST, INSTANCE);
+        value(expr.value, Type.OBJECT);
+        code.invoke(INVOKEVIRTUAL, PROPERTY_CACHE, "set", "(L" + INSTANCE + ";" + O + ")V", -3);
+        code.op(ACONST_NULL, 1);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitThisExpr(Expr.This expr) {
+        Local local = analysis.local(expr);
+        if (local != null) {
+            load(local);
+            return local.type;
+        }
+        variable(expr.keyword, expr.upvalue);
+        return Type.OBJECT;
+    }
+
+    private void upvalue(int index) {
+        code.local(ALOAD, UPVALUES, 1);
+        code.pushInt(index);
+        code.op(AALOAD, -1);
+    }
+
+    // a variable of an enclosing function or a global
+    private void variable(Token name, int upvalue) {
+        if (upvalue != -1) {
+            upvalue(upvalue);
+            code.field(GETFIELD, CELL, "value", O, 0);
+        } else {
+            loadGlobal(name);
+            loadToken(name);
+            code.invoke(INVOKEVIRTUAL, GLOBAL, "get", "(" + T + ")" + O, -1);
+        }
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) throws Exception {
+        if (expr.operator.type() == TokenType.MINUS) {
+            Type type = expr.right.accept(this);
+            if (type != Type.NUMBER) {
+                box(type);
+                loadToken(expr.operator);
+                code.invoke(INVOKESTATIC, RUNTIME, "operand", "(" + O + T + ")D", 0);
+            }
+            code.op(DNEG, 0);
+            return Type.NUMBER;
+        }
+        condition(expr.right);
+        code.op(ICONST_1, 1);
+        code.op(IXOR, -1);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Type visitCommaGroupExpr(Expr.CommaGroup expr) throws Exception {
+        pop(expr.left.accept(this));
+        pop(expr.right.accept(this));
+        code.op(ACONST_NULL, 1);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitTernaryExpr(Expr.Ternary expr) throws Exception {
+        Type type = analysis.type(expr);
+        Label otherwise = new Label();
+        Label end = new Label();
+        condition(expr.cond);
+        code.jump(IFEQ, otherwise, -1);
+        value(expr.trueVal, type);
+        code.jump(GOTO, end, 0);
+        code.mark(otherwise);
+        value(expr.falseVal, type);
+        code.mark(end);
+        return type;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        Local local = analysis.local(expr);
+        if (local != null) {
+            load(local);
+            return local.type;
+        }
+        variable(expr.name, expr.upvalue);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitAnonFunctionExpr(Expr.AnonFunction expr) {
+        throw new JitAnalysis.Unsupported("closure");
+    }
+
+    @Override
+    public Type visitArrayLiteralExpr(Expr.ArrayLiteral expr) throws Exception {
+        array(expr.elements);
+        code.invoke(INVOKESTATIC, ARRAY, "of", "([" + O + ")L" + ARRAY + ";", 0);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitMapLiteralExpr(Expr.MapLiteral expr) throws Exception {
+        array(expr.keys);
+        array(expr.values);
+        loadToken(expr.brace);
+        code.invoke(INVOKESTATIC, RUNTIME, "map", "([" + O + "[" + O + T + ")" + O, -2);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitIndexExpr(Expr.Index expr) throws Exception {
+        value(expr.object, Type.OBJECT);
+        value(expr.index, Type.OBJECT);
+        loadToken(expr.bracket);
+        code.invoke(INVOKESTATIC, RUNTIME, "index", "(" + O + O + T + ")" + O, -2);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitSetIndexExpr(Expr.SetIndex expr) throws Exception {
+        value(expr.object, Type.OBJECT);
+        code.op(DUP, 1);
+        loadToken(expr.bracket);
+        code.invoke(INVOKESTATIC, RUNTIME, "checkIndexable", "(" + O + T + ")V", -2);
+        value(expr.index, Type.OBJECT);
+        value(expr.value, Type.OBJECT);
+        loadToken(expr.bracket);
+        code.invoke(INVOKESTATIC, RUNTIME, "setIndex", "(" + O + O + O + T + ")V", -4);
+        code.op(ACONST_NULL, 1);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) throws Exception {
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new JitAnalysis.Unsupported("class declaration");
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) throws Exception {
+        pop(stmt.expression.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new JitAnalysis.Unsupported("nested function");
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) throws Exception {
+        Label otherwise = new Label();
+        condition(stmt.condition);
+        code.jump(IFEQ, otherwise, -1);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) {
+            Label end = new Label();
+            code.jump(GOTO, end, 0);
+            code.mark(otherwise);
+            stmt.elseBranch.accept(this);
+            code.mark(end);
+        } else {
+            code.mark(otherwise);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) throws Exception {
+        value(stmt.expression, Type.OBJECT);
+        code.invoke(INVOKESTATIC, RUNTIME, "print", "(" + O + ")V", -1);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) throws Exception {
+        if (stmt.value == null) {
+            returnNil();
+        } else if (stmt.tail) {
+            tailCall((Expr.Call) stmt.value);
+        } else {
+            value(stmt.value, Type.OBJECT);
+            code.op(ARETURN, -1);
+        }
+        return null;
+    }
+
+    private void tailCall(Expr.Call expr) throws Exception {
+        if (expr.callee instanceof Expr.Get get) {
+            invocation(get, expr);
+            code.invoke(INVOKESTATIC, RUNTIME, "tailInvoke", "(" + O + O + ARGUMENTS + T + "L" + INTERPRETER + ";)" + O, -8);
+            code.op(ARETURN, -1);
+            return;
+        }
+        int[] arguments = callee(expr);
+        if (callsSelf(expr)) {
+            // calling itself becomes a jump back to the top of the body
+            Label generic = new Label();
+            code.op(DUP, 1);
+            code.local(ALOAD, SELF, 1);
+            code.jump(IF_ACMPNE, generic, -2);
+            code.op(POP, -1);
+            List<Local> params = analysis.params();
+            for (int i = 0; i < params.size(); ++i) {
+                code.local(ALOAD, arguments[i], 1);
+                store(params.get(i));
+            }
+            code.jump(GOTO, start, 0);
+            code.mark(generic);
+        }
+        pushArguments(arguments);
+        loadToken(expr.paren);
+        loadInterpreter();
+        code.invoke(INVOKESTATIC, RUNTIME, "tailCall", "(" + O + ARGUMENTS + T + "L" + INTERPRETER + ";)" + O, -7);
+        code.op(ARETURN, -1);
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) throws Exception {
+        Local local = analysis.declaration(stmt);
+        if (stmt.initializer != null) {
+            value(stmt.initializer, local.type);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        store(local);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) throws Exception {
+        Label top = new Label();
+        Label end = new Label();
+        code.mark(top);
+        condition(stmt.condition);
+        code.jump(IFEQ, end, -1);
+        loops.push(new Loop(end, top));
+        stmt.body.accept(this);
+        loops.pop();
+        code.jump(GOTO, top, 0);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) throws Exception {
+        Label top = new Label();
+        Label next = new Label();
+        Label end = new Label();
+        if (stmt.init != null) {
+            stmt.init.accept(this);
+        }
+        code.mark(top);
+        if (stmt.cond != null) {
+            condition(stmt.cond);
+            code.jump(IFEQ, end, -1);
+        }
+        loops.push(new Loop(end, next));
+        stmt.body.accept(this);
+        loops.pop();
+        code.mark(next);
+        if (stmt.post != null) {
+            pop(stmt.post.accept(this));
+        }
+        code.jump(GOTO, top, 0);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        jumpOut(true);
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        jumpOut(false);
+        return null;
+    }
+
+    private void jumpOut(boolean isBreak) {
+        Loop loop = loops.peek();
+        if (loop == null) {
+            // break or continue outside a loop leaves the function with nil
+            returnNil();
+            return;
+        }
+        code.jump(GOTO, isBreak ? loop.breakTarget() : loop.continueTarget(), 0);
+    }
+}
@@ -0,0 +1,182 @@
+package com.puritylake.lox.jit;
+
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxCallable;
+import com.puritylake.lox.types.LoxFunction;
+import com.puritylake.lox.types.LoxArray;
+import com.puritylake.lox.types.LoxInstance;
+import com.puritylake.lox.types.LoxMap;
+import com.puritylake.lox.types.NativeError;
+import com.puritylake.lox.types.TailCall;
+import com.puritylake.lox.types.Values;
+
+
+import static com.puritylake.lox.types.Values.stringify;
+
+/**
+ * Slow paths called from compiled code. Anything that is not a plain
+ * double operation goes through here so compiled functions report the
+ * same errors as the node interpreter.
+ */
+public final class JitRuntime {
+    private JitRuntime() { }
+
+    public static double number(Object value, Token operator) {
+        if (value instanceof Double d) {
+            return d;
+        }
+        throw new RuntimeError(operator, "Operands must be numbers");
+    }
+
+    public static double operand(Object value, Token operator) {
+        if (value instanceof Double d) {
+            return d;
+        }
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    public static double divide(double left, double right, Token operator) {
+        if (right == 0) {
+            throw new RuntimeError(operator, "Cannot divide by zero.");
+        }
+        return left / right;
+    }
+
+    public static void print(Object value) {
+        System.out.println(stringify(value));
+    }
+
+    public static void checkCallable(Object callee, Token paren) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+    }
+
+    /*
+     * Calls from compiled code pass their argument count and, like the node
+     * interpreter, the first three arguments on their own; only calls with
+     * more than three put them all in values instead.
+     */
+
+    public static Object call(Object callee, int count, Object a, Object b, Object c, Object[] values,
+                              Token paren, Interpreter interpreter) throws Exception {
+        LoxCallable function = (LoxCallable) callee;
+        checkArity(function, count, paren);
+        try {
+            return switch (count) {
+                case 0 -> function.call0(interpreter);
+                case 1 -> function.call1(interpreter, a);
+                case 2 -> function.call2(interpreter, a, b);
+                case 3 -> function.call3(interpreter, a, b, c);
+                default -> function.call(interpreter, values);
+            };
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        }
+    }
+
+    // object.name(...), with the property already read for the call
+    public static Object invoke(Object object, Object callee, int count, Object a, Object b, Object c,
+                                Object[] values, Token paren, Interpreter interpreter) throws Exception {
+        if (!(callee instanceof LoxFunction method)) {
+            return call(callee, count, a, b, c, values, paren, interpreter);
+        }
+        checkArity(method, count, paren);
+        LoxInstance instance = (LoxInstance) object;
+        return switch (count) {
+            case 0 -> method.call0(interpreter, instance);
+            case 1 -> method.call1(interpreter, instance, a);
+            case 2 -> method.call2(interpreter, instance, a, b);
+            case 3 -> method.call3(interpreter, instance, a, b, c);
+            default -> method.call(interpreter, instance, values);
+        };
+    }
+
+    public static Object tailInvoke(Object object, Object callee, int count, Object a, Object b, Object c,
+                                    Object[] values, Token paren, Interpreter interpreter) throws Exception {
+        if (!(callee instanceof LoxFunction method)) {
+            return call(callee, count, a, b, c, values, paren, interpreter);
+        }
+        checkArity(method, count, paren);
+        return tailCall(interpreter, method, (LoxInstance) object, a, b, c, values);
+    }
+
+    // the value of a return: Lox functions go back to the caller's trampoline
+    public static Object tailCall(Object callee, int count, Object a, Object b, Object c, Object[] values,
+                                  Token paren, Interpreter interpreter) throws Exception {
+        if (!(callee instanceof LoxFunction function)) {
+            return call(callee, count, a, b, c, values, paren, interpreter);
+        }
+        checkArity(function, count, paren);
+        return tailCall(interpreter, function, null, a, b, c, values);
+    }
+
+    private static Object tailCall(Interpreter interpreter, LoxFunction function, LoxInstance instance,
+                                   Object a, Object b, Object c, Object[] values) {
+        return values == null
+                ? interpreter.environment().tailCall(function, instance, a, b, c)
+                : interpreter.environment().tailCall(function, instance, values);
+    }
+
+    private static void checkArity(LoxCallable function, int count, Token paren) {
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() +
+                    " arguments but got " + count + ".");
+        }
+    }
+
+    // a direct call into compiled code may come back with a tail call still to run
+    public static Object complete(Object result, Interpreter interpreter) throws Exception {
+        if (result instanceof TailCall tailCall) {
+            return tailCall.run(interpreter);
+        }
+        return result;
+    }
+
+    public static void checkInstance(Object object, Token name) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instances have fields.");
+        }
+    }
+
+    public static void assignGlobal(Object value, Globals.Global global, Token name) {
+        global.assign(name, value);
+    }
+
+    public static Object map(Object[] keys, Object[] values, Token brace) {
+        LoxMap map = new LoxMap();
+        try {
+            for (int i = 0; i < keys.length; ++i) {
+                map.put(keys[i], values[i]);
+            }
+        } catch (NativeError error) {
+            throw new RuntimeError(brace, error.getMessage());
+        }
+        return map;
+    }
+
+    public static Object index(Object target, Object key, Token bracket) {
+        try {
+            return Values.index(target, key);
+        } catch (NativeError error) {
+            throw new RuntimeError(bracket, error.getMessage());
+        }
+    }
+
+    public static void checkIndexable(Object target, Token bracket) {
+        if (!(target instanceof LoxArray) && !(target instanceof LoxMap)) {
+            throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+        }
+    }
+
+    public static void setIndex(Object target, Object key, Object value, Token bracket) {
+        try {
+            Values.setIndex(target, key, value);
+        } catch (NativeError error) {
+            throw new RuntimeError(bracket, error.getMessage());
+        }
+    }
+}
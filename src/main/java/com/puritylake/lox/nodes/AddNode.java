@@ -0,0 +1,105 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxString;
+
+import static com.puritylake.lox.types.Values.add;
+import static com.puritylake.lox.types.Values.box;
+
+/**
+ * {@code +} starts uninitialised and rewrites itself into the double or
+ * string version on first use, dropping to the generic version once it
+ * sees operands the specialisation does not cover.
+ */
+abstract class AddNode extends BinaryNode {
+    AddNode(ExprNode left, Token operator, ExprNode right) {
+        super(left, operator, right);
+    }
+
+    static final class Uninitialized extends AddNode {
+        Uninitialized(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        public Object execute(Environment env) throws Exception {
+            Object l = left.execute(env);
+            Object r = right.execute(env);
+
+            if (l instanceof Double && r instanceof Double) {
+                replace(new Doubles(left, operator, right));
+            } else if (l instanceof CharSequence && r instanceof CharSequence) {
+                replace(new Strings(left, operator, right));
+            } else {
+                replace(new Generic(left, operator, right));
+            }
+            return add(operator, l, r);
+        }
+    }
+
+    static final class Doubles extends AddNode {
+        Doubles(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        public Object execute(Environment env) throws Exception {
+            try {
+                return box(executeDouble(env));
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        public double executeDouble(Environment env) throws Exception {
+            double a;
+            try {
+                a = left.executeDouble(env);
+            } catch (UnexpectedResultException e) {
+                throw generalize(e.result, right.execute(env));
+            }
+            double b;
+            try {
+                b = right.executeDouble(env);
+            } catch (UnexpectedResultException e) {
+                throw generalize(box(a), e.result);
+            }
+            return a + b;
+        }
+
+        private UnexpectedResultException generalize(Object l, Object r) {
+            replace(new Generic(left, operator, right));
+            return new UnexpectedResultException(add(operator, l, r));
+        }
+    }
+
+    static final class Strings extends AddNode {
+        Strings(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        public Object execute(Environment env) throws Exception {
+            Object l = left.execute(env);
+            Object r = right.execute(env);
+            if (l instanceof CharSequence a && r instanceof CharSequence b) {
+                return LoxString.concat(a, b);
+            }
+            replace(new Generic(left, operator, right));
+            return add(operator, l, r);
+        }
+    }
+
+    static final class Generic extends AddNode {
+        Generic(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        public Object execute(Environment env) throws Exception {
+            return add(operator, left.execute(env), right.execute(env));
+        }
+    }
+}
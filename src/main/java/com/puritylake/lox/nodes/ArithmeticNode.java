@@ -0,0 +1,80 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+
+import static com.puritylake.lox.types.Values.box;
+
+/**
+ * Numeric-only operators. Each operator gets its own class so the
+ * operator is fixed when the node is built rather than switched on for
+ * every evaluation. Operands are evaluated as primitive doubles and the
+ * result is only boxed when a generic caller asks for it.
+ */
+abstract class ArithmeticNode extends BinaryNode {
+    ArithmeticNode(ExprNode left, Token operator, ExprNode right) {
+        super(left, operator, right);
+    }
+
+    protected abstract double apply(double a, double b);
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        return box(executeDouble(env));
+    }
+
+    @Override
+    public double executeDouble(Environment env) throws Exception {
+        double a;
+        try {
+            a = left.executeDouble(env);
+        } catch (UnexpectedResultException e) {
+            right.execute(env);
+            throw numbersExpected();
+        }
+        double b;
+        try {
+            b = right.executeDouble(env);
+        } catch (UnexpectedResultException e) {
+            throw numbersExpected();
+        }
+        return apply(a, b);
+    }
+
+    static final class Subtract extends ArithmeticNode {
+        Subtract(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected double apply(double a, double b) {
+            return a - b;
+        }
+    }
+
+    static final class Multiply extends ArithmeticNode {
+        Multiply(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected double apply(double a, double b) {
+            return a * b;
+        }
+    }
+
+    static final class Divide extends ArithmeticNode {
+        Divide(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected double apply(double a, double b) {
+            if (b == 0) {
+                throw new RuntimeError(operator, "Cannot divide by zero.");
+            }
+            return a / b;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.types.LoxArray;
+
+final class ArrayLiteralNode extends ExprNode {
+    private final ExprNode[] elements;
+
+    ArrayLiteralNode(ExprNode[] elements) {
+        this.elements = elements;
+        for (ExprNode element : elements) {
+            adopt(element);
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        for (int i = 0; i < elements.length; ++i) {
+            if (elements[i] == oldChild) elements[i] = (ExprNode) newChild;
+        }
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        LoxArray array = new LoxArray(elements.length);
+        for (ExprNode element : elements) {
+            array.add(element.execute(env));
+        }
+        return array;
+    }
+}
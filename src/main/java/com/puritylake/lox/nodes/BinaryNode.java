@@ -0,0 +1,26 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+
+abstract class BinaryNode extends ExprNode {
+    protected ExprNode left;
+    protected ExprNode right;
+    protected final Token operator;
+
+    BinaryNode(ExprNode left, Token operator, ExprNode right) {
+        this.left = adopt(left);
+        this.operator = operator;
+        this.right = adopt(right);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) left = (ExprNode) newChild;
+        if (right == oldChild) right = (ExprNode) newChild;
+    }
+
+    protected RuntimeError numbersExpected() {
+        return new RuntimeError(operator, "Operands must be numbers");
+    }
+}
@@ -0,0 +1,26 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class BlockNode extends StmtNode {
+    private final StmtNode[] statements;
+
+    BlockNode(StmtNode[] statements) {
+        this.statements = statements;
+        for (StmtNode statement : statements) {
+            adopt(statement);
+        }
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        // the block's locals already have slots in the enclosing frame
+        for (StmtNode statement : statements) {
+            Completion completion = statement.execute(env);
+            if (completion != Completion.NORMAL) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+}
@@ -0,0 +1,97 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxCallable;
+import com.puritylake.lox.types.LoxFunction;
+import com.puritylake.lox.types.NativeError;
+
+final class CallNode extends ExprNode {
+    private ExprNode callee;
+    private final ExprNode[] arguments;
+    private final Token paren;
+    private final Interpreter interpreter;
+    // the value of a return: Lox functions are left to the caller's trampoline
+    private final boolean tail;
+
+    CallNode(ExprNode callee, Token paren, ExprNode[] arguments, Interpreter interpreter, boolean tail) {
+        this.callee = adopt(callee);
+        this.paren = paren;
+        this.arguments = arguments;
+        this.interpreter = interpreter;
+        this.tail = tail;
+        for (ExprNode argument : arguments) {
+            adopt(argument);
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (callee == oldChild) callee = (ExprNode) newChild;
+        for (int i = 0; i < arguments.length; ++i) {
+            if (arguments[i] == oldChild) arguments[i] = (ExprNode) newChild;
+        }
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object value = callee.execute(env);
+
+        if (!(value instanceof LoxCallable function)) {
+            throw new RuntimeError(paren,
+                    "Can only call functions and classes.");
+        }
+
+        // up to three arguments are passed one by one, without an array
+        int count = arguments.length;
+        Object a = count > 0 ? arguments[0].execute(env) : null;
+        Object b = count > 1 ? arguments[1].execute(env) : null;
+        Object c = count > 2 ? arguments[2].execute(env) : null;
+        Object[] values = count > 3 ? evaluate(arguments, env, a, b, c) : null;
+
+        checkArity(function, count, paren);
+        if (tail && function instanceof LoxFunction loxFunction) {
+            return values == null
+                    ? env.tailCall(loxFunction, null, a, b, c)
+                    : env.tailCall(loxFunction, null, values);
+        }
+        try {
+            return call(function, interpreter, count, a, b, c, values);
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        }
+    }
+
+    // all the arguments of a call with more than three, the first three already evaluated
+    static Object[] evaluate(ExprNode[] arguments, Environment env, Object a, Object b, Object c)
+            throws Exception {
+        Object[] values = new Object[arguments.length];
+        values[0] = a;
+        values[1] = b;
+        values[2] = c;
+        for (int i = 3; i < values.length; ++i) {
+            values[i] = arguments[i].execute(env);
+        }
+        return values;
+    }
+
+    static void checkArity(LoxCallable function, int count, Token paren) {
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() +
+                    " arguments but got " + count + ".");
+        }
+    }
+
+    static Object call(LoxCallable function, Interpreter interpreter, int count,
+                       Object a, Object b, Object c, Object[] values) throws Exception {
+        return switch (count) {
+            case 0 -> function.call0(interpreter);
+            case 1 -> function.call1(interpreter, a);
+            case 2 -> function.call2(interpreter, a, b);
+            case 3 -> function.call3(interpreter, a, b, c);
+            default -> function.call(interpreter, values);
+        };
+    }
+}
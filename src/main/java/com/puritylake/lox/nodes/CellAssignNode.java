@@ -0,0 +1,50 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Cell;
+import com.puritylake.lox.parsing.Environment;
+
+abstract class CellAssignNode extends ExprNode {
+    protected final int index;
+    private ExprNode value;
+
+    CellAssignNode(int index, ExprNode value) {
+        this.index = index;
+        this.value = adopt(value);
+    }
+
+    abstract Cell cell(Environment env);
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object result = value.execute(env);
+        cell(env).value = result;
+        return result;
+    }
+
+    static final class Local extends CellAssignNode {
+        Local(int slot, ExprNode value) {
+            super(slot, value);
+        }
+
+        @Override
+        Cell cell(Environment env) {
+            return env.cell(index);
+        }
+    }
+
+    static final class Upvalue extends CellAssignNode {
+        Upvalue(int index, ExprNode value) {
+            super(index, value);
+        }
+
+        @Override
+        Cell cell(Environment env) {
+            return env.upvalue(index);
+        }
+    }
+}
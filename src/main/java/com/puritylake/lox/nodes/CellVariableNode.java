@@ -0,0 +1,45 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Cell;
+import com.puritylake.lox.parsing.Environment;
+
+/**
+ * A captured variable, read through its cell either in the running frame
+ * or among the running closure's upvalues.
+ */
+abstract class CellVariableNode extends ExprNode {
+    protected final int index;
+
+    CellVariableNode(int index) {
+        this.index = index;
+    }
+
+    abstract Cell cell(Environment env);
+
+    @Override
+    public Object execute(Environment env) {
+        return cell(env).value;
+    }
+
+    static final class Local extends CellVariableNode {
+        Local(int slot) {
+            super(slot);
+        }
+
+        @Override
+        Cell cell(Environment env) {
+            return env.cell(index);
+        }
+    }
+
+    static final class Upvalue extends CellVariableNode {
+        Upvalue(int index) {
+            super(index);
+        }
+
+        @Override
+        Cell cell(Environment env) {
+            return env.upvalue(index);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.SymbolMap;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxClass;
+import com.puritylake.lox.types.LoxFunction;
+
+final class ClassNode extends DeclarationNode {
+    private final String name;
+    private final FunctionDefinition[] methods;
+
+    ClassNode(Token name, Slot slot, FunctionDefinition[] methods, Globals globals) {
+        super(name, slot, globals);
+        this.name = name.lexeme();
+        this.methods = methods;
+    }
+
+    @Override
+    Object value(Environment env) {
+        // each method closes over the frame the class is declared in; the
+        // receiver is passed to it on every call
+        SymbolMap<LoxFunction> functions = new SymbolMap<>();
+        for (FunctionDefinition method : methods) {
+            functions.put(method.symbol, new LoxFunction(method, env.capture(method.upvalues)));
+        }
+        return new LoxClass(name, functions);
+    }
+}
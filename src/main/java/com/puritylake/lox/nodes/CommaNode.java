@@ -0,0 +1,26 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class CommaNode extends ExprNode {
+    private ExprNode left;
+    private ExprNode right;
+
+    CommaNode(ExprNode left, ExprNode right) {
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) left = (ExprNode) newChild;
+        if (right == oldChild) right = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        left.execute(env);
+        right.execute(env);
+        return null;
+    }
+}
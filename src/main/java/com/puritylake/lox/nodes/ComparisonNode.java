@@ -0,0 +1,79 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Token;
+
+abstract class ComparisonNode extends BinaryNode {
+    ComparisonNode(ExprNode left, Token operator, ExprNode right) {
+        super(left, operator, right);
+    }
+
+    protected abstract boolean compare(double a, double b);
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        return executeBoolean(env);
+    }
+
+    @Override
+    public boolean executeBoolean(Environment env) throws Exception {
+        double a;
+        try {
+            a = left.executeDouble(env);
+        } catch (UnexpectedResultException e) {
+            right.execute(env);
+            throw numbersExpected();
+        }
+        double b;
+        try {
+            b = right.executeDouble(env);
+        } catch (UnexpectedResultException e) {
+            throw numbersExpected();
+        }
+        return compare(a, b);
+    }
+
+    static final class Greater extends ComparisonNode {
+        Greater(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected boolean compare(double a, double b) {
+            return a > b;
+        }
+    }
+
+    static final class GreaterEqual extends ComparisonNode {
+        GreaterEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected boolean compare(double a, double b) {
+            return a >= b;
+        }
+    }
+
+    static final class Less extends ComparisonNode {
+        Less(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected boolean compare(double a, double b) {
+            return a < b;
+        }
+    }
+
+    static final class LessEqual extends ComparisonNode {
+        LessEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        protected boolean compare(double a, double b) {
+            return a <= b;
+        }
+    }
+}
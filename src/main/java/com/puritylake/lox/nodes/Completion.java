@@ -0,0 +1,10 @@
+package com.puritylake.lox.nodes;
+
+/**
+ * How a statement finished. Anything but NORMAL skips the rest of the
+ * enclosing statements until a loop or call handles it; a returned value
+ * travels separately in the {@link com.puritylake.lox.parsing.Environment}.
+ */
+public enum Completion {
+    NORMAL, BREAK, CONTINUE, RETURN
+}
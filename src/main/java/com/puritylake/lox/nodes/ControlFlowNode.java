@@ -0,0 +1,16 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class ControlFlowNode extends StmtNode {
+    private final boolean isBreak;
+
+    ControlFlowNode(boolean isBreak) {
+        this.isBreak = isBreak;
+    }
+
+    @Override
+    public Completion execute(Environment env) {
+        return isBreak ? Completion.BREAK : Completion.CONTINUE;
+    }
+}
@@ -0,0 +1,104 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.jit.Jit;
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.TokenType;
+
+import static com.puritylake.lox.types.Values.box;
+
+/**
+ * A {@code for} loop over a numeric counter: a local only written by the
+ * loop's increment, which adds a constant step, and compared against a
+ * bound that cannot change while the loop runs. The counter is kept in a
+ * primitive double and only stored back to its slot, boxed, when the body
+ * reads it. Loops whose counter or bound turn out not to be numbers run
+ * the ordinary way so they fail the same way.
+ */
+final class CountedForNode extends StmtNode {
+    private final StmtNode init;
+    private final int slot;
+    private final TokenType comparison;
+    private ExprNode bound;
+    private final double step;
+    private final StmtNode body;
+    private final boolean escapes;
+    // the loop's own condition and increment, for the generic path
+    private ExprNode cond;
+    private ExprNode post;
+    private final FunctionDefinition owner;
+    private int backEdges = 0;
+
+    CountedForNode(StmtNode init, int slot, TokenType comparison, ExprNode bound, double step,
+                   StmtNode body, boolean escapes, ExprNode cond, ExprNode post,
+                   FunctionDefinition owner) {
+        this.init = adopt(init);
+        this.slot = slot;
+        this.comparison = comparison;
+        this.bound = adopt(bound);
+        this.step = step;
+        this.body = adopt(body);
+        this.escapes = escapes;
+        this.cond = adopt(cond);
+        this.post = adopt(post);
+        this.owner = owner;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (bound == oldChild) bound = (ExprNode) newChild;
+        if (cond == oldChild) cond = (ExprNode) newChild;
+        if (post == oldChild) post = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        init.execute(env);
+        if (!(env.get(slot) instanceof Double start) || !(bound.execute(env) instanceof Double limit)) {
+            return generic(env);
+        }
+
+        double counter = start;
+        double end = limit;
+        while (holds(counter, end)) {
+            if (owner != null && ++backEdges == Jit.backEdgeThreshold()) {
+                owner.loopIsHot(backEdges);
+            }
+            if (escapes) {
+                env.set(slot, box(counter));
+            }
+            Completion completion = body.execute(env);
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (completion == Completion.RETURN) {
+                return completion;
+            }
+            counter += step;
+        }
+        return Completion.NORMAL;
+    }
+
+    private boolean holds(double counter, double end) {
+        return switch (comparison) {
+            case LESS -> counter < end;
+            case LESS_EQUAL -> counter <= end;
+            case GREATER -> counter > end;
+            default -> counter >= end;
+        };
+    }
+
+    private Completion generic(Environment env) throws Exception {
+        while (cond.executeBoolean(env)) {
+            if (owner != null && ++backEdges == Jit.backEdgeThreshold()) {
+                owner.loopIsHot(backEdges);
+            }
+            Completion completion = body.execute(env);
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (completion == Completion.RETURN) {
+                return completion;
+            }
+            post.execute(env);
+        }
+        return Completion.NORMAL;
+    }
+}
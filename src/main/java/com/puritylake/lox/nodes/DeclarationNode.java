@@ -0,0 +1,41 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Cell;
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.Token;
+
+/**
+ * Stores a declared value where the resolver put the name: the globals, a
+ * frame slot, or a fresh cell in that slot when a closure captures it. The
+ * cell goes in before the value is worked out so a function or class can
+ * close over its own name.
+ */
+abstract class DeclarationNode extends StmtNode {
+    private final int slot;
+    private final boolean captured;
+    private final Globals.Global global;
+
+    DeclarationNode(Token name, Slot slot, Globals globals) {
+        this.slot = slot != null ? slot.index : -1;
+        this.captured = slot != null && slot.captured;
+        this.global = slot == null ? globals.cell(name.symbol()) : null;
+    }
+
+    abstract Object value(Environment env) throws Exception;
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        if (slot == -1) {
+            global.define(value(env));
+        } else if (!captured) {
+            env.set(slot, value(env));
+        } else {
+            Cell cell = new Cell(null);
+            env.set(slot, cell);
+            cell.value = value(env);
+        }
+        return Completion.NORMAL;
+    }
+}
@@ -0,0 +1,84 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Token;
+
+import static com.puritylake.lox.types.Values.box;
+import static com.puritylake.lox.types.Values.isEqual;
+
+/**
+ * {@code ==} and {@code !=}. Comparing two doubles skips the boxed
+ * {@code equals} call; any other pair moves the node to the generic form.
+ */
+abstract class EqualityNode extends BinaryNode {
+    protected final boolean negated;
+
+    EqualityNode(ExprNode left, Token operator, ExprNode right, boolean negated) {
+        super(left, operator, right);
+        this.negated = negated;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        return executeBoolean(env);
+    }
+
+    static final class Uninitialized extends EqualityNode {
+        Uninitialized(ExprNode left, Token operator, ExprNode right, boolean negated) {
+            super(left, operator, right, negated);
+        }
+
+        @Override
+        public boolean executeBoolean(Environment env) throws Exception {
+            Object l = left.execute(env);
+            Object r = right.execute(env);
+
+            if (l instanceof Double && r instanceof Double) {
+                replace(new Doubles(left, operator, right, negated));
+            } else {
+                replace(new Generic(left, operator, right, negated));
+            }
+            return isEqual(l, r) != negated;
+        }
+    }
+
+    static final class Doubles extends EqualityNode {
+        Doubles(ExprNode left, Token operator, ExprNode right, boolean negated) {
+            super(left, operator, right, negated);
+        }
+
+        @Override
+        public boolean executeBoolean(Environment env) throws Exception {
+            double a;
+            try {
+                a = left.executeDouble(env);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(env));
+            }
+            double b;
+            try {
+                b = right.executeDouble(env);
+            } catch (UnexpectedResultException e) {
+                return generalize(box(a), e.result);
+            }
+            // Double.compare matches Double.equals for NaN and signed zeros
+            return (Double.compare(a, b) == 0) != negated;
+        }
+
+        private boolean generalize(Object l, Object r) {
+            replace(new Generic(left, operator, right, negated));
+            return isEqual(l, r) != negated;
+        }
+    }
+
+    static final class Generic extends EqualityNode {
+        Generic(ExprNode left, Token operator, ExprNode right, boolean negated) {
+            super(left, operator, right, negated);
+        }
+
+        @Override
+        public boolean executeBoolean(Environment env) throws Exception {
+            return isEqual(left.execute(env), right.execute(env)) != negated;
+        }
+    }
+}
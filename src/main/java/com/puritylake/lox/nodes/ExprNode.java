@@ -0,0 +1,27 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+import static com.puritylake.lox.types.Values.isTruthy;
+
+/**
+ * Besides the generic {@link #execute}, expressions can be evaluated as a
+ * primitive double or for their truthiness. Nodes that compute numbers or
+ * booleans override these so intermediates never get boxed; everything
+ * else falls back to executing and unpacking the result.
+ */
+public abstract class ExprNode extends Node {
+    public abstract Object execute(Environment env) throws Exception;
+
+    public double executeDouble(Environment env) throws Exception {
+        Object value = execute(env);
+        if (value instanceof Double number) {
+            return number;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    public boolean executeBoolean(Environment env) throws Exception {
+        return isTruthy(execute(env));
+    }
+}
@@ -0,0 +1,22 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class ExpressionStatementNode extends StmtNode {
+    private ExprNode expression;
+
+    ExpressionStatementNode(ExprNode expression) {
+        this.expression = adopt(expression);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (expression == oldChild) expression = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        expression.execute(env);
+        return Completion.NORMAL;
+    }
+}
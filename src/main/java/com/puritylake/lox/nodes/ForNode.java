@@ -0,0 +1,50 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.jit.Jit;
+import com.puritylake.lox.parsing.Environment;
+
+final class ForNode extends StmtNode {
+    private final StmtNode init;
+    private ExprNode cond;
+    private ExprNode post;
+    private final StmtNode body;
+    private final FunctionDefinition owner;
+    private int backEdges = 0;
+
+    ForNode(StmtNode init, ExprNode cond, ExprNode post, StmtNode body, FunctionDefinition owner) {
+        this.init = adopt(init);
+        this.cond = adopt(cond);
+        this.post = adopt(post);
+        this.body = adopt(body);
+        this.owner = owner;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (cond == oldChild) cond = (ExprNode) newChild;
+        if (post == oldChild) post = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        if (init != null) {
+            init.execute(env);
+        }
+
+        while (cond == null || cond.executeBoolean(env)) {
+            if (owner != null && ++backEdges == Jit.backEdgeThreshold()) {
+                owner.loopIsHot(backEdges);
+            }
+            Completion completion = body.execute(env);
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (completion == Completion.RETURN) {
+                return completion;
+            }
+            if (post != null) {
+                post.execute(env);
+            }
+        }
+        return Completion.NORMAL;
+    }
+}
@@ -0,0 +1,21 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxFunction;
+
+final class FunctionDeclarationNode extends DeclarationNode {
+    private final FunctionDefinition definition;
+
+    FunctionDeclarationNode(Token name, FunctionDefinition definition, Slot slot, Globals globals) {
+        super(name, slot, globals);
+        this.definition = definition;
+    }
+
+    @Override
+    Object value(Environment env) {
+        return new LoxFunction(definition, env.capture(definition.upvalues));
+    }
+}
@@ -0,0 +1,136 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.jit.Jit;
+import com.puritylake.lox.jit.JitCode;
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.FlatAst;
+import com.puritylake.lox.parsing.FrameLayout;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.Stmt;
+import com.puritylake.lox.parsing.Token;
+
+import java.util.stream.Stream;
+
+/**
+ * The executable form of a function declaration, shared by every
+ * {@link com.puritylake.lox.types.LoxFunction} closing over it.
+ */
+public final class FunctionDefinition extends Node {
+    public final String name;
+    // the name's symbol, or -1 for an anonymous function
+    public final int symbol;
+    public final String[] params;
+    public final int arity;
+    public final int slots;
+    public final FrameLayout.Upvalue[] upvalues;
+    // the slot a method's receiver is passed in, or -1
+    public final int receiver;
+    // parameters, and the receiver, a closure captures, moved into cells on entry
+    public final int[] capturedParams;
+    // the declaration's node in the program's arena, for the JIT to compile
+    // from; null when the JIT is off or the function declares a function or
+    // class
+    private FlatAst ast = null;
+    private int node = -1;
+    private StmtNode[] body;
+
+    private final Interpreter interpreter;
+    private int invocations = 0;
+    private boolean queued = false;
+    // why to queue the function on its next call, once one of its loops ran hot
+    private String hotLoop = null;
+    private volatile JitCode compiled = null;
+
+    FunctionDefinition(Token name, FrameLayout layout, String[] params, Interpreter interpreter) {
+        this.name = name != null ? name.lexeme() : null;
+        this.symbol = name != null ? name.symbol() : -1;
+        this.params = params;
+        this.arity = params.length;
+        this.slots = layout.slots;
+        this.upvalues = layout.upvalues.toArray(new FrameLayout.Upvalue[0]);
+        Slot self = layout.receiver;
+        this.receiver = self != null ? self.index : -1;
+        this.capturedParams = Stream.concat(layout.params.stream(), Stream.ofNullable(self))
+                .filter(slot -> slot.captured).mapToInt(slot -> slot.index).toArray();
+        this.interpreter = interpreter;
+    }
+
+    // a fresh copy of the declaration, sharing the resolver's slots, or null
+    // if it was not kept; nothing writes the arena once the program is built
+    public Stmt.Function declaration() {
+        if (ast == null) return null;
+        return (Stmt.Function) ast.stmt(node);
+    }
+
+    void setDeclaration(FlatAst ast, int node) {
+        this.ast = ast;
+        this.node = node;
+    }
+
+    void setBody(StmtNode[] body) {
+        this.body = body;
+        for (StmtNode statement : body) {
+            adopt(statement);
+        }
+    }
+
+    /**
+     * Counts an invocation and returns the compiled body once the compiler
+     * has installed one, or null while the function should be interpreted.
+     * Methods are not compiled for being called often: their compiled
+     * bodies go through the same inline caches the interpreter does, and do
+     * not make up for the warm-up a new class costs. Their loops can still
+     * get them compiled.
+     */
+    public JitCode compiled() {
+        JitCode code = compiled;
+        if (code == null && !queued) {
+            if (hotLoop != null) {
+                queue(hotLoop);
+            } else if (receiver != -1) {
+                if (invocations < 2) ++invocations;
+            } else if (++invocations >= Jit.invocationThreshold()) {
+                queue(invocations + " calls");
+            }
+            code = compiled;
+        }
+        return code;
+    }
+
+    /**
+     * Called by a loop in this function whose back-edge counter tripped.
+     * The running call cannot switch to compiled code, so a function only
+     * called once would pay for a compile it never uses; unless it has been
+     * called before, it is queued on its next call instead.
+     */
+    void loopIsHot(int backEdges) {
+        if (compiled != null || queued) return;
+        String reason = "loop ran " + backEdges + " times";
+        if (invocations > 1) {
+            queue(reason);
+        } else {
+            hotLoop = reason;
+        }
+    }
+
+    private void queue(String reason) {
+        queued = true;
+        if (!Jit.isEnabled()) return;
+        Jit.submit(this, interpreter, reason);
+    }
+
+    public void install(JitCode code) {
+        compiled = code;
+    }
+
+    public Completion execute(Environment env) throws Exception {
+        for (StmtNode statement : body) {
+            Completion completion = statement.execute(env);
+            if (completion != Completion.NORMAL) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+}
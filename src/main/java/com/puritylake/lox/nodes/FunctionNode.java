@@ -0,0 +1,17 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.types.LoxFunction;
+
+final class FunctionNode extends ExprNode {
+    private final FunctionDefinition definition;
+
+    FunctionNode(FunctionDefinition definition) {
+        this.definition = definition;
+    }
+
+    @Override
+    public Object execute(Environment env) {
+        return new LoxFunction(definition, env.capture(definition.upvalues));
+    }
+}
@@ -0,0 +1,25 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.PropertyCache;
+
+final class GetNode extends ExprNode {
+    private ExprNode object;
+    private final PropertyCache cache;
+
+    GetNode(ExprNode object, Token name) {
+        this.object = adopt(object);
+        this.cache = new PropertyCache(name);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (object == oldChild) object = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        return cache.get(object.execute(env));
+    }
+}
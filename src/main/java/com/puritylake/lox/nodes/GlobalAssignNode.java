@@ -0,0 +1,29 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Token;
+
+final class GlobalAssignNode extends ExprNode {
+    private final Token name;
+    private final Globals.Global global;
+    private ExprNode value;
+
+    GlobalAssignNode(Token name, ExprNode value, Globals globals) {
+        this.name = name;
+        this.global = globals.cell(name.symbol());
+        this.value = adopt(value);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object result = value.execute(env);
+        global.assign(name, result);
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Token;
+
+/**
+ * A name the resolver could not bind to a slot, read from the global's
+ * cell, which is looked up once when the node is built.
+ */
+final class GlobalVariableNode extends ExprNode {
+    private final Token name;
+    private final Globals.Global global;
+
+    GlobalVariableNode(Token name, Globals globals) {
+        this.name = name;
+        this.global = globals.cell(name.symbol());
+    }
+
+    @Override
+    public Object execute(Environment env) {
+        return global.get(name);
+    }
+}
@@ -0,0 +1,30 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class IfNode extends StmtNode {
+    private ExprNode condition;
+    private final StmtNode thenBranch;
+    private final StmtNode elseBranch;
+
+    IfNode(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+        this.condition = adopt(condition);
+        this.thenBranch = adopt(thenBranch);
+        this.elseBranch = adopt(elseBranch);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (condition == oldChild) condition = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        if (condition.executeBoolean(env)) {
+            return thenBranch.execute(env);
+        } else if (elseBranch != null) {
+            return elseBranch.execute(env);
+        }
+        return Completion.NORMAL;
+    }
+}
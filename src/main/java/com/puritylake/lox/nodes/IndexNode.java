@@ -0,0 +1,101 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxArray;
+import com.puritylake.lox.types.LoxMap;
+import com.puritylake.lox.types.NativeError;
+import com.puritylake.lox.types.Values;
+
+/**
+ * {@code object[index]}. The index is evaluated as a primitive double
+ * until it turns out not to be a number, so array positions and number
+ * keys are never boxed, and reading a numeric array as a double leaves
+ * the element unboxed too.
+ */
+final class IndexNode extends ExprNode {
+    private ExprNode object;
+    private ExprNode index;
+    private final Token bracket;
+    private boolean numericIndex = true;
+
+    IndexNode(ExprNode object, Token bracket, ExprNode index) {
+        this.object = adopt(object);
+        this.bracket = bracket;
+        this.index = adopt(index);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (object == oldChild) object = (ExprNode) newChild;
+        if (index == oldChild) index = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object target = object.execute(env);
+        try {
+            if (numericIndex) {
+                double number;
+                try {
+                    number = index.executeDouble(env);
+                } catch (UnexpectedResultException e) {
+                    numericIndex = false;
+                    return Values.index(target, e.result);
+                }
+                if (target instanceof LoxArray array) {
+                    return array.get(LoxArray.index(number));
+                } else if (target instanceof LoxMap map) {
+                    return map.getNumber(number);
+                }
+                return Values.index(target, Values.box(number));
+            }
+            return Values.index(target, index.execute(env));
+        } catch (NativeError error) {
+            throw new RuntimeError(bracket, error.getMessage());
+        }
+    }
+
+    @Override
+    public double executeDouble(Environment env) throws Exception {
+        if (!numericIndex) {
+            return super.executeDouble(env);
+        }
+        Object target = object.execute(env);
+        if (!(target instanceof LoxArray array) || !array.isNumeric()) {
+            return unbox(generic(target, env));
+        }
+        double number;
+        try {
+            number = index.executeDouble(env);
+        } catch (UnexpectedResultException e) {
+            numericIndex = false;
+            return unbox(generic(target, e.result));
+        }
+        try {
+            return array.getDouble(LoxArray.index(number));
+        } catch (NativeError error) {
+            throw new RuntimeError(bracket, error.getMessage());
+        }
+    }
+
+    private Object generic(Object target, Environment env) throws Exception {
+        return generic(target, index.execute(env));
+    }
+
+    private Object generic(Object target, Object key) {
+        try {
+            return Values.index(target, key);
+        } catch (NativeError error) {
+            throw new RuntimeError(bracket, error.getMessage());
+        }
+    }
+
+    private static double unbox(Object value) throws UnexpectedResultException {
+        if (value instanceof Double number) {
+            return number;
+        }
+        throw new UnexpectedResultException(value);
+    }
+}
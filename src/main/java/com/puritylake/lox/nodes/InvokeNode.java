@@ -0,0 +1,85 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxCallable;
+import com.puritylake.lox.types.LoxFunction;
+import com.puritylake.lox.types.LoxInstance;
+import com.puritylake.lox.types.NativeError;
+import com.puritylake.lox.types.PropertyCache;
+
+/**
+ * A call of the form {@code object.name(...)}. A method found on the
+ * object's class is called with the object as its receiver, so no bound
+ * method is made for a value nobody else sees.
+ */
+final class InvokeNode extends ExprNode {
+    private ExprNode object;
+    private final PropertyCache cache;
+    private final ExprNode[] arguments;
+    private final Token paren;
+    private final Interpreter interpreter;
+    private final boolean tail;
+
+    InvokeNode(ExprNode object, Token name, Token paren, ExprNode[] arguments,
+               Interpreter interpreter, boolean tail) {
+        this.object = adopt(object);
+        this.cache = new PropertyCache(name);
+        this.paren = paren;
+        this.arguments = arguments;
+        this.interpreter = interpreter;
+        this.tail = tail;
+        for (ExprNode argument : arguments) {
+            adopt(argument);
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (object == oldChild) object = (ExprNode) newChild;
+        for (int i = 0; i < arguments.length; ++i) {
+            if (arguments[i] == oldChild) arguments[i] = (ExprNode) newChild;
+        }
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object receiver = object.execute(env);
+        Object value = cache.getForCall(receiver);
+
+        if (!(value instanceof LoxCallable function)) {
+            throw new RuntimeError(paren,
+                    "Can only call functions and classes.");
+        }
+
+        int count = arguments.length;
+        Object a = count > 0 ? arguments[0].execute(env) : null;
+        Object b = count > 1 ? arguments[1].execute(env) : null;
+        Object c = count > 2 ? arguments[2].execute(env) : null;
+        Object[] values = count > 3 ? CallNode.evaluate(arguments, env, a, b, c) : null;
+
+        CallNode.checkArity(function, count, paren);
+        if (function instanceof LoxFunction method) {
+            LoxInstance instance = (LoxInstance) receiver;
+            if (tail) {
+                return values == null
+                        ? env.tailCall(method, instance, a, b, c)
+                        : env.tailCall(method, instance, values);
+            }
+            return switch (count) {
+                case 0 -> method.call0(interpreter, instance);
+                case 1 -> method.call1(interpreter, instance, a);
+                case 2 -> method.call2(interpreter, instance, a, b);
+                case 3 -> method.call3(interpreter, instance, a, b, c);
+                default -> method.call(interpreter, instance, values);
+            };
+        }
+        try {
+            return CallNode.call(function, interpreter, count, a, b, c, values);
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class LiteralNode extends ExprNode {
+    private final Object value;
+    private final boolean isNumber;
+    private final double number;
+
+    LiteralNode(Object value) {
+        this.value = value;
+        this.isNumber = value instanceof Double;
+        this.number = isNumber ? (double) value : 0;
+    }
+
+    @Override
+    public Object execute(Environment env) {
+        return value;
+    }
+
+    @Override
+    public double executeDouble(Environment env) throws UnexpectedResultException {
+        if (isNumber) {
+            return number;
+        }
+        throw new UnexpectedResultException(value);
+    }
+}
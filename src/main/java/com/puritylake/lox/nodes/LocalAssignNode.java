@@ -0,0 +1,25 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class LocalAssignNode extends ExprNode {
+    private final int slot;
+    private ExprNode value;
+
+    LocalAssignNode(int slot, ExprNode value) {
+        this.slot = slot;
+        this.value = adopt(value);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object result = value.execute(env);
+        env.set(slot, result);
+        return result;
+    }
+}
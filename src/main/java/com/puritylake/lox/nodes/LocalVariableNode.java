@@ -0,0 +1,16 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class LocalVariableNode extends ExprNode {
+    private final int slot;
+
+    LocalVariableNode(int slot) {
+        this.slot = slot;
+    }
+
+    @Override
+    public Object execute(Environment env) {
+        return env.get(slot);
+    }
+}
@@ -0,0 +1,40 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+import static com.puritylake.lox.types.Values.isTruthy;
+
+final class LogicalNode extends ExprNode {
+    private ExprNode left;
+    private ExprNode right;
+    private final boolean isOr;
+
+    LogicalNode(ExprNode left, ExprNode right, boolean isOr) {
+        this.left = adopt(left);
+        this.right = adopt(right);
+        this.isOr = isOr;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) left = (ExprNode) newChild;
+        if (right == oldChild) right = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object value = left.execute(env);
+        if (isTruthy(value) == isOr) {
+            return value;
+        }
+        return right.execute(env);
+    }
+
+    @Override
+    public boolean executeBoolean(Environment env) throws Exception {
+        if (isOr) {
+            return left.executeBoolean(env) || right.executeBoolean(env);
+        }
+        return left.executeBoolean(env) && right.executeBoolean(env);
+    }
+}
@@ -0,0 +1,46 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxMap;
+import com.puritylake.lox.types.NativeError;
+
+final class MapLiteralNode extends ExprNode {
+    private final Token brace;
+    private final ExprNode[] keys;
+    private final ExprNode[] values;
+
+    MapLiteralNode(Token brace, ExprNode[] keys, ExprNode[] values) {
+        this.brace = brace;
+        this.keys = keys;
+        this.values = values;
+        for (int i = 0; i < keys.length; ++i) {
+            adopt(keys[i]);
+            adopt(values[i]);
+        }
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == oldChild) keys[i] = (ExprNode) newChild;
+            if (values[i] == oldChild) values[i] = (ExprNode) newChild;
+        }
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        LoxMap map = new LoxMap();
+        for (int i = 0; i < keys.length; ++i) {
+            Object key = keys[i].execute(env);
+            Object value = values[i].execute(env);
+            try {
+                map.put(key, value);
+            } catch (NativeError error) {
+                throw new RuntimeError(brace, error.getMessage());
+            }
+        }
+        return map;
+    }
+}
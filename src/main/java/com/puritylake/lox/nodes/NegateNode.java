@@ -0,0 +1,36 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+
+import static com.puritylake.lox.types.Values.box;
+
+final class NegateNode extends ExprNode {
+    private ExprNode operand;
+    private final Token operator;
+
+    NegateNode(Token operator, ExprNode operand) {
+        this.operator = operator;
+        this.operand = adopt(operand);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (operand == oldChild) operand = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        return box(executeDouble(env));
+    }
+
+    @Override
+    public double executeDouble(Environment env) throws Exception {
+        try {
+            return -operand.executeDouble(env);
+        } catch (UnexpectedResultException e) {
+            throw new RuntimeError(operator, "Operand must be a number.");
+        }
+    }
+}
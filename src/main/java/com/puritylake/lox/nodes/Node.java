@@ -0,0 +1,27 @@
+package com.puritylake.lox.nodes;
+
+/**
+ * Base of the executable tree the interpreter runs. A node may replace
+ * itself in its parent with a version specialised for the values it has
+ * actually seen, so every call site in the tree stays monomorphic.
+ */
+public abstract class Node {
+    private Node parent;
+
+    protected final <T extends Node> T adopt(T child) {
+        if (child != null) {
+            ((Node) child).parent = this;
+        }
+        return child;
+    }
+
+    protected void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children.");
+    }
+
+    protected final <T extends Node> T replace(T newNode) {
+        parent.replaceChild(this, newNode);
+        ((Node) newNode).parent = parent;
+        return newNode;
+    }
+}
@@ -0,0 +1,381 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.jit.Jit;
+import com.puritylake.lox.parsing.FlatAst;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Interpreter;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.parsing.TokenType;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Turns the resolved AST into the executable node tree, walking the arena
+ * the front end left it in. Operators are picked here once so execution
+ * never switches on token types.
+ */
+public class NodeBuilder implements FlatAst.ExprCursor<ExprNode>, FlatAst.StmtCursor<StmtNode> {
+    private final Interpreter interpreter;
+    private final Globals globals;
+    private final FlatAst ast;
+    private FunctionDefinition currentFunction = null;
+    // whether the function being built declares a function or class, which
+    // the JIT cannot compile
+    private boolean declaresNested = false;
+    // every local read by the nodes built so far
+    private final Set<Slot> reads = new HashSet<>();
+
+    public NodeBuilder(Interpreter interpreter, Globals globals, FlatAst ast) {
+        this.interpreter = interpreter;
+        this.globals = globals;
+        this.ast = ast;
+    }
+
+    // statements is a list of statement nodes
+    public StmtNode[] build(int statements) throws Exception {
+        StmtNode[] nodes = new StmtNode[ast.length(statements)];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = buildStmt(ast.element(statements, i));
+        }
+        return nodes;
+    }
+
+    private StmtNode buildStmt(int stmt) throws Exception {
+        return stmt == -1 ? null : ast.acceptStmt(stmt, this);
+    }
+
+    private ExprNode buildExpr(int expr) throws Exception {
+        return expr == -1 ? null : ast.acceptExpr(expr, this);
+    }
+
+    private FunctionDefinition function(int stmt) throws Exception {
+        int list = ast.functionParams(stmt);
+        String[] params = new String[ast.length(list)];
+        for (int i = 0; i < params.length; ++i) {
+            params[i] = ast.token(list, i).lexeme();
+        }
+        FunctionDefinition definition = new FunctionDefinition(ast.functionName(stmt),
+                ast.functionLayout(stmt), params, interpreter);
+        FunctionDefinition enclosing = currentFunction;
+        currentFunction = definition;
+        declaresNested = false;
+        definition.setBody(build(ast.functionBody(stmt)));
+        // the JIT compiles from the declaration's node, so only functions it
+        // can compile keep the arena alive
+        if (!declaresNested && Jit.isEnabled()) {
+            definition.setDeclaration(ast, stmt);
+        }
+        currentFunction = enclosing;
+        declaresNested = true;
+        return definition;
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(int expr) throws Exception {
+        ExprNode value = buildExpr(ast.assignValue(expr));
+        int var = ast.assignVar(expr);
+        Slot slot = ast.variableSlot(var);
+        int upvalue = ast.variableUpvalue(var);
+        if (slot != null) {
+            return slot.captured
+                    ? new CellAssignNode.Local(slot.index, value)
+                    : new LocalAssignNode(slot.index, value);
+        } else if (upvalue != -1) {
+            return new CellAssignNode.Upvalue(upvalue, value);
+        }
+        return new GlobalAssignNode(ast.assignName(expr), value, globals);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(int expr) throws Exception {
+        ExprNode left = buildExpr(ast.binaryLeft(expr));
+        ExprNode right = buildExpr(ast.binaryRight(expr));
+        Token op = ast.binaryOperator(expr);
+
+        return switch (op.type()) {
+            case MINUS -> new ArithmeticNode.Subtract(left, op, right);
+            case SLASH -> new ArithmeticNode.Divide(left, op, right);
+            case STAR -> new ArithmeticNode.Multiply(left, op, right);
+            case PLUS -> new AddNode.Uninitialized(left, op, right);
+            case GREATER -> new ComparisonNode.Greater(left, op, right);
+            case GREATER_EQUAL -> new ComparisonNode.GreaterEqual(left, op, right);
+            case LESS -> new ComparisonNode.Less(left, op, right);
+            case LESS_EQUAL -> new ComparisonNode.LessEqual(left, op, right);
+            case BANG_EQUAL -> new EqualityNode.Uninitialized(left, op, right, true);
+            case EQUAL_EQUAL -> new EqualityNode.Uninitialized(left, op, right, false);
+            case COMMA -> new CommaNode(left, right);
+            default -> throw new IllegalStateException("Unknown binary operator " + op.lexeme() + ".");
+        };
+    }
+
+    @Override
+    public ExprNode visitCallExpr(int expr) throws Exception {
+        return call(expr, false);
+    }
+
+    private ExprNode call(int expr, boolean tail) throws Exception {
+        int callee = ast.callCallee(expr);
+        if (ast.kind(callee) == FlatAst.GET_EXPR) {
+            ExprNode object = buildExpr(ast.getObject(callee));
+            return new InvokeNode(object, ast.getName(callee), ast.callParen(expr), arguments(expr),
+                    interpreter, tail);
+        }
+        ExprNode node = buildExpr(callee);
+        return new CallNode(node, ast.callParen(expr), arguments(expr), interpreter, tail);
+    }
+
+    private ExprNode[] arguments(int expr) throws Exception {
+        return buildAll(ast.callArguments(expr));
+    }
+
+    @Override
+    public ExprNode visitArrayLiteralExpr(int expr) throws Exception {
+        return new ArrayLiteralNode(buildAll(ast.arrayLiteralElements(expr)));
+    }
+
+    @Override
+    public ExprNode visitMapLiteralExpr(int expr) throws Exception {
+        return new MapLiteralNode(ast.mapLiteralBrace(expr), buildAll(ast.mapLiteralKeys(expr)),
+                buildAll(ast.mapLiteralValues(expr)));
+    }
+
+    private ExprNode[] buildAll(int exprs) throws Exception {
+        ExprNode[] nodes = new ExprNode[ast.length(exprs)];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = buildExpr(ast.element(exprs, i));
+        }
+        return nodes;
+    }
+
+    @Override
+    public ExprNode visitIndexExpr(int expr) throws Exception {
+        return new IndexNode(buildExpr(ast.indexObject(expr)), ast.indexBracket(expr),
+                buildExpr(ast.indexIndex(expr)));
+    }
+
+    @Override
+    public ExprNode visitSetIndexExpr(int expr) throws Exception {
+        return new SetIndexNode(buildExpr(ast.setIndexObject(expr)), ast.setIndexBracket(expr),
+                buildExpr(ast.setIndexIndex(expr)), buildExpr(ast.setIndexValue(expr)));
+    }
+
+    @Override
+    public ExprNode visitGetExpr(int expr) throws Exception {
+        return new GetNode(buildExpr(ast.getObject(expr)), ast.getName(expr));
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(int expr) throws Exception {
+        return buildExpr(ast.groupingExpression(expr));
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(int expr) {
+        return new LiteralNode(ast.literalValue(expr));
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(int expr) throws Exception {
+        return new LogicalNode(buildExpr(ast.logicalLeft(expr)), buildExpr(ast.logicalRight(expr)),
+                ast.logicalOperator(expr).type() == TokenType.OR);
+    }
+
+    @Override
+    public ExprNode visitSetExpr(int expr) throws Exception {
+        return new SetNode(buildExpr(ast.setObject(expr)), ast.setName(expr), buildExpr(ast.setValue(expr)));
+    }
+
+    @Override
+    public ExprNode visitThisExpr(int expr) {
+        return variable(ast.thisKeyword(expr), ast.thisSlot(expr), ast.thisUpvalue(expr));
+    }
+
+    private ExprNode variable(Token name, Slot slot, int upvalue) {
+        if (slot != null) {
+            reads.add(slot);
+            return slot.captured
+                    ? new CellVariableNode.Local(slot.index)
+                    : new LocalVariableNode(slot.index);
+        } else if (upvalue != -1) {
+            return new CellVariableNode.Upvalue(upvalue);
+        }
+        return new GlobalVariableNode(name, globals);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(int expr) throws Exception {
+        ExprNode operand = buildExpr(ast.unaryRight(expr));
+        Token operator = ast.unaryOperator(expr);
+        if (operator.type() == TokenType.MINUS) {
+            return new NegateNode(operator, operand);
+        }
+        return new NotNode(operand);
+    }
+
+    @Override
+    public ExprNode visitCommaGroupExpr(int expr) throws Exception {
+        return new CommaNode(buildExpr(ast.commaGroupLeft(expr)), buildExpr(ast.commaGroupRight(expr)));
+    }
+
+    @Override
+    public ExprNode visitTernaryExpr(int expr) throws Exception {
+        return new TernaryNode(buildExpr(ast.ternaryCond(expr)), buildExpr(ast.ternaryTrueVal(expr)),
+                buildExpr(ast.ternaryFalseVal(expr)));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(int expr) {
+        return variable(ast.variableName(expr), ast.variableSlot(expr), ast.variableUpvalue(expr));
+    }
+
+    @Override
+    public ExprNode visitAnonFunctionExpr(int expr) throws Exception {
+        return new FunctionNode(function(ast.anonFunctionFunc(expr)));
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(int stmt) throws Exception {
+        return new BlockNode(build(ast.blockStatements(stmt)));
+    }
+
+    @Override
+    public StmtNode visitClassStmt(int stmt) throws Exception {
+        declaresNested = true;
+        int list = ast.classMethods(stmt);
+        FunctionDefinition[] methods = new FunctionDefinition[ast.length(list)];
+        for (int i = 0; i < methods.length; ++i) {
+            methods[i] = function(ast.element(list, i));
+        }
+        return new ClassNode(ast.className(stmt), ast.classSlot(stmt), methods, globals);
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(int stmt) throws Exception {
+        return new ExpressionStatementNode(buildExpr(ast.expressionExpression(stmt)));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(int stmt) throws Exception {
+        return new FunctionDeclarationNode(ast.functionName(stmt), function(stmt), ast.functionSlot(stmt), globals);
+    }
+
+    @Override
+    public StmtNode visitIfStmt(int stmt) throws Exception {
+        return new IfNode(buildExpr(ast.ifCondition(stmt)), buildStmt(ast.ifThenBranch(stmt)),
+                buildStmt(ast.ifElseBranch(stmt)));
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(int stmt) throws Exception {
+        return new PrintNode(buildExpr(ast.printExpression(stmt)));
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(int stmt) throws Exception {
+        if (ast.returnTail(stmt)) {
+            return new ReturnNode(call(ast.returnValue(stmt), true));
+        }
+        return new ReturnNode(buildExpr(ast.returnValue(stmt)));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(int stmt) throws Exception {
+        return new VarNode(ast.varName(stmt), ast.varSlot(stmt), buildExpr(ast.varInitializer(stmt)), globals);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(int stmt) throws Exception {
+        return new WhileNode(buildExpr(ast.whileCondition(stmt)), buildStmt(ast.whileBody(stmt)), currentFunction);
+    }
+
+    @Override
+    public StmtNode visitForStmt(int stmt) throws Exception {
+        StmtNode counted = countedFor(stmt);
+        if (counted != null) return counted;
+        return new ForNode(buildStmt(ast.forInit(stmt)), buildExpr(ast.forCond(stmt)),
+                buildExpr(ast.forPost(stmt)), buildStmt(ast.forBody(stmt)), currentFunction);
+    }
+
+    /**
+     * Builds a {@link CountedForNode} for loops shaped like
+     * {@code for (var i = a; i < n; i = i + k)}, or null for any other.
+     */
+    private StmtNode countedFor(int stmt) throws Exception {
+        int var = ast.forInit(stmt);
+        if (var == -1 || ast.kind(var) != FlatAst.VAR_STMT || ast.varSlot(var) == null) return null;
+        Slot slot = ast.varSlot(var);
+        // the increment has to be the only write
+        if (slot.captured || slot.assignments != 1) return null;
+
+        int cond = unwrap(ast.forCond(stmt));
+        if (cond == -1 || ast.kind(cond) != FlatAst.BINARY_EXPR || !reads(ast.binaryLeft(cond), slot)) return null;
+        TokenType comparison = ast.binaryOperator(cond).type();
+        if (comparison != TokenType.LESS && comparison != TokenType.LESS_EQUAL
+                && comparison != TokenType.GREATER && comparison != TokenType.GREATER_EQUAL) {
+            return null;
+        }
+        int bound = unwrap(ast.binaryRight(cond));
+        Slot boundSlot = ast.kind(bound) == FlatAst.VARIABLE_EXPR ? ast.variableSlot(bound) : null;
+        if (ast.kind(bound) != FlatAst.LITERAL_EXPR
+                && !(boundSlot != null && !boundSlot.captured && boundSlot.assignments == 0)) {
+            return null;
+        }
+
+        int post = unwrap(ast.forPost(stmt));
+        if (post == -1 || ast.kind(post) != FlatAst.ASSIGN_EXPR
+                || !reads(ast.assignVar(post), slot)) {
+            return null;
+        }
+        int increment = unwrap(ast.assignValue(post));
+        if (ast.kind(increment) != FlatAst.BINARY_EXPR) return null;
+        TokenType operator = ast.binaryOperator(increment).type();
+        int constant;
+        if (reads(ast.binaryLeft(increment), slot)) {
+            constant = unwrap(ast.binaryRight(increment));
+        } else if (operator == TokenType.PLUS && reads(ast.binaryRight(increment), slot)) {
+            constant = unwrap(ast.binaryLeft(increment));
+        } else {
+            return null;
+        }
+        if (ast.kind(constant) != FlatAst.LITERAL_EXPR || !(ast.literalValue(constant) instanceof Double amount)) {
+            return null;
+        }
+        double step = switch (operator) {
+            case PLUS -> amount;
+            case MINUS -> -amount;
+            default -> Double.NaN;
+        };
+        if (Double.isNaN(step)) return null;
+
+        StmtNode init = buildStmt(var);
+        ExprNode limit = buildExpr(bound);
+        StmtNode body = buildStmt(ast.forBody(stmt));
+        boolean escapes = reads.contains(slot);
+        return new CountedForNode(init, slot.index, comparison, limit, step, body, escapes,
+                buildExpr(ast.forCond(stmt)), buildExpr(ast.forPost(stmt)), currentFunction);
+    }
+
+    private int unwrap(int expr) {
+        while (expr != -1 && ast.kind(expr) == FlatAst.GROUPING_EXPR) {
+            expr = ast.groupingExpression(expr);
+        }
+        return expr;
+    }
+
+    private boolean reads(int expr, Slot slot) {
+        expr = unwrap(expr);
+        return ast.kind(expr) == FlatAst.VARIABLE_EXPR && ast.variableSlot(expr) == slot;
+    }
+
+    @Override
+    public StmtNode visitBreakStmt(int stmt) {
+        return new ControlFlowNode(true);
+    }
+
+    @Override
+    public StmtNode visitContinueStmt(int stmt) {
+        return new ControlFlowNode(false);
+    }
+}
@@ -0,0 +1,26 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class NotNode extends ExprNode {
+    private ExprNode operand;
+
+    NotNode(ExprNode operand) {
+        this.operand = adopt(operand);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (operand == oldChild) operand = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        return executeBoolean(env);
+    }
+
+    @Override
+    public boolean executeBoolean(Environment env) throws Exception {
+        return !operand.executeBoolean(env);
+    }
+}
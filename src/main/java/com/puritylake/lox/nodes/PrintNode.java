@@ -0,0 +1,24 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+import static com.puritylake.lox.types.Values.stringify;
+
+final class PrintNode extends StmtNode {
+    private ExprNode expression;
+
+    PrintNode(ExprNode expression) {
+        this.expression = adopt(expression);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (expression == oldChild) expression = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        System.out.println(stringify(expression.execute(env)));
+        return Completion.NORMAL;
+    }
+}
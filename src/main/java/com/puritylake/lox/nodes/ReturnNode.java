@@ -0,0 +1,22 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class ReturnNode extends StmtNode {
+    private ExprNode value;
+
+    ReturnNode(ExprNode value) {
+        this.value = adopt(value);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (value == oldChild) value = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        env.setResult(value != null ? value.execute(env) : null);
+        return Completion.RETURN;
+    }
+}
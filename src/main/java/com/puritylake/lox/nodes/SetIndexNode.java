@@ -0,0 +1,46 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxArray;
+import com.puritylake.lox.types.LoxMap;
+import com.puritylake.lox.types.NativeError;
+import com.puritylake.lox.types.Values;
+
+final class SetIndexNode extends ExprNode {
+    private ExprNode object;
+    private ExprNode index;
+    private ExprNode value;
+    private final Token bracket;
+
+    SetIndexNode(ExprNode object, Token bracket, ExprNode index, ExprNode value) {
+        this.object = adopt(object);
+        this.bracket = bracket;
+        this.index = adopt(index);
+        this.value = adopt(value);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (object == oldChild) object = (ExprNode) newChild;
+        if (index == oldChild) index = (ExprNode) newChild;
+        if (value == oldChild) value = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        Object target = object.execute(env);
+        if (!(target instanceof LoxArray) && !(target instanceof LoxMap)) {
+            throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+        }
+        Object key = index.execute(env);
+        Object result = value.execute(env);
+        try {
+            Values.setIndex(target, key, result);
+        } catch (NativeError error) {
+            throw new RuntimeError(bracket, error.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.types.LoxInstance;
+import com.puritylake.lox.types.PropertyCache;
+
+final class SetNode extends ExprNode {
+    private ExprNode object;
+    private ExprNode value;
+    private final Token name;
+    private final PropertyCache cache;
+
+    SetNode(ExprNode object, Token name, ExprNode value) {
+        this.object = adopt(object);
+        this.name = name;
+        this.value = adopt(value);
+        this.cache = new PropertyCache(name);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (object == oldChild) object = (ExprNode) newChild;
+        if (value == oldChild) value = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        if (!(object.execute(env) instanceof LoxInstance instance)) {
+            throw new RuntimeError(name, "Only instances have fields.");
+        }
+
+        cache.set(instance, value.execute(env));
+        return null;
+    }
+}
@@ -0,0 +1,7 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+public abstract class StmtNode extends Node {
+    public abstract Completion execute(Environment env) throws Exception;
+}
@@ -0,0 +1,30 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+
+final class TernaryNode extends ExprNode {
+    private ExprNode cond;
+    private ExprNode trueVal;
+    private ExprNode falseVal;
+
+    TernaryNode(ExprNode cond, ExprNode trueVal, ExprNode falseVal) {
+        this.cond = adopt(cond);
+        this.trueVal = adopt(trueVal);
+        this.falseVal = adopt(falseVal);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (cond == oldChild) cond = (ExprNode) newChild;
+        if (trueVal == oldChild) trueVal = (ExprNode) newChild;
+        if (falseVal == oldChild) falseVal = (ExprNode) newChild;
+    }
+
+    @Override
+    public Object execute(Environment env) throws Exception {
+        if (cond.executeBoolean(env)) {
+            return trueVal.execute(env);
+        }
+        return falseVal.execute(env);
+    }
+}
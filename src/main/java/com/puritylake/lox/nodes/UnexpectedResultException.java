@@ -0,0 +1,15 @@
+package com.puritylake.lox.nodes;
+
+/**
+ * Thrown by a typed execute method when the value it produced is not of
+ * the requested type. The value is carried along so the caller can carry
+ * on generically without evaluating the node again.
+ */
+final class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
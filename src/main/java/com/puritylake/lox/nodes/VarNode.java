@@ -0,0 +1,25 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.Slot;
+import com.puritylake.lox.parsing.Token;
+
+final class VarNode extends DeclarationNode {
+    private ExprNode initializer;
+
+    VarNode(Token name, Slot slot, ExprNode initializer, Globals globals) {
+        super(name, slot, globals);
+        this.initializer = adopt(initializer);
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (initializer == oldChild) initializer = (ExprNode) newChild;
+    }
+
+    @Override
+    Object value(Environment env) throws Exception {
+        return initializer != null ? initializer.execute(env) : null;
+    }
+}
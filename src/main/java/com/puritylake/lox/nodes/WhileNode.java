@@ -0,0 +1,38 @@
+package com.puritylake.lox.nodes;
+
+import com.puritylake.lox.jit.Jit;
+import com.puritylake.lox.parsing.Environment;
+
+final class WhileNode extends StmtNode {
+    private ExprNode condition;
+    private final StmtNode body;
+    private final FunctionDefinition owner;
+    private int backEdges = 0;
+
+    WhileNode(ExprNode condition, StmtNode body, FunctionDefinition owner) {
+        this.condition = adopt(condition);
+        this.body = adopt(body);
+        this.owner = owner;
+    }
+
+    @Override
+    protected void replaceChild(Node oldChild, Node newChild) {
+        if (condition == oldChild) condition = (ExprNode) newChild;
+    }
+
+    @Override
+    public Completion execute(Environment env) throws Exception {
+        while (condition.executeBoolean(env)) {
+            if (owner != null && ++backEdges == Jit.backEdgeThreshold()) {
+                owner.loopIsHot(backEdges);
+            }
+            Completion completion = body.execute(env);
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (completion == Completion.RETURN) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+}
@@ -76,6 +76,26 @@ public class AstPrinter implements Expr.Visitor<String> {
         return null;
     }
 
+    @Override
+    public String visitArrayLiteralExpr(Expr.ArrayLiteral expr) throws Exception {
+        return parenthesize("array", expr.elements.toArray(new Expr[0]));
+    }
+
+    @Override
+    public String visitMapLiteralExpr(Expr.MapLiteral expr) throws Exception {
+        return null;
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr) throws Exception {
+        return parenthesize("index", expr.object, expr.index);
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) throws Exception {
+        return parenthesize("set-index", expr.object, expr.index, expr.value);
+    }
+
     private String parenthesize(String name, Expr... exprs) throws Exception {
         StringBuilder builder = new StringBuilder();
 
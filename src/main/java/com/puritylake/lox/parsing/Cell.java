@@ -0,0 +1,13 @@
+package com.puritylake.lox.parsing;
+
+/**
+ * A captured variable, shared between the frame declaring it and every
+ * closure over it.
+ */
+public final class Cell {
+    public Object value;
+
+    public Cell(Object value) {
+        this.value = value;
+    }
+}
@@ -1,91 +1,114 @@
 package com.puritylake.lox.parsing;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-public class Environment {
-    static class EnvironmentEntry{
-        public Object value;
-        public boolean initialized;
-
-        public EnvironmentEntry(Object value, boolean initialized) {
-            this.value = value;
-            this.initialized = initialized;
-        }
+import com.puritylake.lox.types.LoxFunction;
+import com.puritylake.lox.types.LoxInstance;
+import com.puritylake.lox.types.TailCall;
+
+import java.util.Arrays;
+
+/**
+ * The value stack calls run on. A call pushes a frame of the size the
+ * resolver worked out and pops it on return, so locals no closure refers
+ * to never leave this array. Captured locals keep a {@link Cell} in their
+ * slot instead, and the running closure's cells are its upvalues.
+ */
+public final class Environment {
+    private Object[] stack = new Object[256];
+    private int base = 0;
+    private int top = 0;
+    private Cell[] upvalues = null;
+    // what the last return statement left for its call to pick up
+    private Object result = null;
+    private final TailCall tailCall = new TailCall();
+
+    public Object get(int slot) {
+        return stack[base + slot];
     }
-    private final Environment enclosing;
-    private final Map<String, EnvironmentEntry> namedValues = new HashMap<>();
-    private final List<EnvironmentEntry> indexedValues = new ArrayList<>();
 
-    public Environment() {
-        enclosing = null;
+    public void set(int slot, Object value) {
+        stack[base + slot] = value;
     }
 
-    public Environment(Environment env) {
-        enclosing = env;
+    public Cell cell(int slot) {
+        return (Cell) stack[base + slot];
     }
 
-    public Object get(String name) {
-        return namedValues.get(name).value;
+    public Cell upvalue(int index) {
+        return upvalues[index];
     }
 
-    public Object tryGet(String name) {
-        Environment env = this;
-        while (env != null) {
-            if (env.namedValues.containsKey(name)) {
-                return env.namedValues.get(name).value;
-            }
-            env = env.enclosing;
-        }
-        return null;
+    public Cell[] upvalues() {
+        return upvalues;
     }
 
-    public Object getAt(int distance, int idx) {
-        return ancestor(distance).indexedValues.get(idx).value;
+    public void setResult(Object value) {
+        result = value;
     }
 
-    public void assignAt(int distance, int idx, Object value) {
-        EnvironmentEntry entry = ancestor(distance).indexedValues.get(idx);
-        entry.value = value;
-        entry.initialized = true;
+    public Object takeResult() {
+        Object value = result;
+        result = null;
+        return value;
     }
 
-    private Environment ancestor(int distance) {
-        Environment env = this;
-        for (int i = 0; i < distance; ++i) {
-            if (env.enclosing == null) {
-                return env;
-            }
-            env = env.enclosing;
-        }
+    // instance is the receiver of a method called without being bound, or null
+    public TailCall tailCall(LoxFunction function, LoxInstance instance, Object a, Object b, Object c) {
+        return tailCall.set(function, instance, a, b, c);
+    }
 
-        return env;
+    public TailCall tailCall(LoxFunction function, LoxInstance instance, Object[] arguments) {
+        return tailCall.set(function, instance, arguments);
     }
 
-    public void define(String name, Object value, boolean initialized) {
-        namedValues.put(name, new EnvironmentEntry(value, initialized));
+    /**
+     * Stores a call's argument where the callee's frame will start, just
+     * past the running frame, so {@link #push} makes it the parameter.
+     * Nothing may push a frame between staging and the push.
+     */
+    public void stage(int index, Object value) {
+        if (top + index >= stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + index + 1));
+        }
+        stack[top + index] = value;
     }
 
-    public void defineIdx(Object value, boolean initialized) {
-        indexedValues.add(new EnvironmentEntry(value, initialized));
+    // takes back a staged argument for a call that pushes no frame
+    public Object unstage(int index) {
+        Object value = stack[top + index];
+        stack[top + index] = null;
+        return value;
     }
 
-    public void assign(Token name, Object value) {
-        if (namedValues.containsKey(name.lexeme())) {
-            EnvironmentEntry entry = namedValues.get(name.lexeme());
-            entry.value = value;
-            entry.initialized = true;
-            return;
+    // the cells a closure created in the running frame starts with
+    public Cell[] capture(FrameLayout.Upvalue[] layout) {
+        Cell[] cells = new Cell[layout.length];
+        for (int i = 0; i < cells.length; ++i) {
+            FrameLayout.Upvalue upvalue = layout[i];
+            cells[i] = upvalue.local() ? cell(upvalue.index()) : upvalues[upvalue.index()];
         }
+        return cells;
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    /**
+     * Starts a frame with the given closure cells and returns the caller's
+     * base, which goes back to {@link #pop} along with the caller's cells.
+     */
+    public int push(int slots, Cell[] upvalues) {
+        if (top + slots > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + slots));
         }
+        int callerBase = base;
+        base = top;
+        top += slots;
+        this.upvalues = upvalues;
+        return callerBase;
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme() + "'.");
+    public void pop(int callerBase, Cell[] callerUpvalues) {
+        // drop the references so popped frames don't keep values alive
+        Arrays.fill(stack, base, top, null);
+        top = base;
+        base = callerBase;
+        upvalues = callerUpvalues;
     }
 }
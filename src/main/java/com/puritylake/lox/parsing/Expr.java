@@ -24,6 +24,10 @@ public abstract class Expr {
         R visitTernaryExpr(Ternary expr) throws Exception;
         R visitVariableExpr(Variable expr) throws Exception;
         R visitAnonFunctionExpr(AnonFunction expr) throws Exception;
+        R visitArrayLiteralExpr(ArrayLiteral expr) throws Exception;
+        R visitMapLiteralExpr(MapLiteral expr) throws Exception;
+        R visitIndexExpr(Index expr) throws Exception;
+        R visitSetIndexExpr(SetIndex expr) throws Exception;
     }
     public static class Assign extends Expr {
        public Assign(Token name, Expr var, Expr value) {
@@ -144,8 +148,10 @@ public abstract class Expr {
         public final Expr value;
     }
     public static class This extends Expr {
-       public This(Token keyword) {
+       public This(Token keyword, Slot slot, int upvalue) {
             this.keyword = keyword;
+            this.slot = slot;
+            this.upvalue = upvalue;
         }
 
         @Override
@@ -154,6 +160,8 @@ public abstract class Expr {
         }
 
         public final Token keyword;
+        public Slot slot;
+        public int upvalue;
     }
     public static class Unary extends Expr {
        public Unary(Token operator, Expr right) {
@@ -200,10 +208,10 @@ public abstract class Expr {
         public final Expr falseVal;
     }
     public static class Variable extends Expr {
-       public Variable(Token name, int idx, int depth) {
+       public Variable(Token name, Slot slot, int upvalue) {
             this.name = name;
-            this.idx = idx;
-            this.depth = depth;
+            this.slot = slot;
+            this.upvalue = upvalue;
         }
 
         @Override
@@ -212,8 +220,8 @@ public abstract class Expr {
         }
 
         public final Token name;
-        public int idx;
-        public int depth;
+        public Slot slot;
+        public int upvalue;
     }
     public static class AnonFunction extends Expr {
        public AnonFunction(Stmt func) {
@@ -227,6 +235,70 @@ public abstract class Expr {
 
         public final Stmt func;
     }
+    public static class ArrayLiteral extends Expr {
+       public ArrayLiteral(Token bracket, List<Expr> elements) {
+            this.bracket = bracket;
+            this.elements = elements;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) throws Exception {
+            return visitor.visitArrayLiteralExpr(this);
+        }
+
+        public final Token bracket;
+        public final List<Expr> elements;
+    }
+    public static class MapLiteral extends Expr {
+       public MapLiteral(Token brace, List<Expr> keys, List<Expr> values) {
+            this.brace = brace;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) throws Exception {
+            return visitor.visitMapLiteralExpr(this);
+        }
+
+        public final Token brace;
+        public final List<Expr> keys;
+        public final List<Expr> values;
+    }
+    public static class Index extends Expr {
+       public Index(Expr object, Token bracket, Expr index) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) throws Exception {
+            return visitor.visitIndexExpr(this);
+        }
+
+        public final Expr object;
+        public final Token bracket;
+        public final Expr index;
+    }
+    public static class SetIndex extends Expr {
+       public SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) throws Exception {
+            return visitor.visitSetIndexExpr(this);
+        }
+
+        public final Expr object;
+        public final Token bracket;
+        public final Expr index;
+        public final Expr value;
+    }
 
     public abstract <R> R accept(Visitor<R> visitor) throws Exception;
 }
@@ -0,0 +1,1142 @@
+// ###################################################
+
+// DO NOT EDIT THIS FILE IT IS GENERATED AUTOMATICALLY
+
+// ###################################################
+
+package com.puritylake.lox.parsing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The same trees as {@link Expr} and {@link Stmt}, packed into one int
+ * array. A node is the index of its kind, and its fields follow it:
+ * children are node indices, lists are the index of a length followed by
+ * the elements, tokens index the token table and other references the
+ * values table. Absent fields are -1. A token is kept as its type, line
+ * and symbol and made again when read; only those whose text varies,
+ * strings and numbers, are kept whole as a value.
+ * <p>
+ * The parser adds nodes bottom up, the passes after it walk them with a
+ * cursor and rewrite fields in place. Only the bytecode compiler and the
+ * JIT rebuild object trees, through {@link #stmt} and {@link #expr}.
+ */
+public final class FlatAst {
+    public static final int ASSIGN_EXPR = 0;
+    public static final int BINARY_EXPR = 1;
+    public static final int CALL_EXPR = 2;
+    public static final int GET_EXPR = 3;
+    public static final int GROUPING_EXPR = 4;
+    public static final int LITERAL_EXPR = 5;
+    public static final int LOGICAL_EXPR = 6;
+    public static final int SET_EXPR = 7;
+    public static final int THIS_EXPR = 8;
+    public static final int UNARY_EXPR = 9;
+    public static final int COMMA_GROUP_EXPR = 10;
+    public static final int TERNARY_EXPR = 11;
+    public static final int VARIABLE_EXPR = 12;
+    public static final int ANON_FUNCTION_EXPR = 13;
+    public static final int ARRAY_LITERAL_EXPR = 14;
+    public static final int MAP_LITERAL_EXPR = 15;
+    public static final int INDEX_EXPR = 16;
+    public static final int SET_INDEX_EXPR = 17;
+    public static final int BLOCK_STMT = 18;
+    public static final int CLASS_STMT = 19;
+    public static final int EXPRESSION_STMT = 20;
+    public static final int FUNCTION_STMT = 21;
+    public static final int IF_STMT = 22;
+    public static final int PRINT_STMT = 23;
+    public static final int RETURN_STMT = 24;
+    public static final int VAR_STMT = 25;
+    public static final int WHILE_STMT = 26;
+    public static final int FOR_STMT = 27;
+    public static final int BREAK_STMT = 28;
+    public static final int CONTINUE_STMT = 29;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    // how far back a token is looked for before it is added again
+    private static final int RECENT_TOKENS = 16;
+
+    private int[] data = new int[1024];
+    private int[] tokens = new int[768];
+    private Object[] values = new Object[64];
+    private int dataCount = 0;
+    private int tokenCount = 0;
+    private int valueCount = 0;
+    // values stored since the last trim, so one shared between nodes, like
+    // a slot or an equal literal, is stored once
+    private Map<Object, Integer> valueIndices = new HashMap<>();
+
+    public FlatAst() {}
+
+    // an arena read back from the tables of another
+    FlatAst(int[] data, int[] tokens, Object[] values) {
+        this.data = data;
+        this.tokens = tokens;
+        this.values = values;
+        this.dataCount = data.length;
+        this.tokenCount = tokens.length / 3;
+        this.valueCount = values.length;
+    }
+
+    int[] data() {
+        return Arrays.copyOf(data, dataCount);
+    }
+
+    int[] tokens() {
+        return Arrays.copyOf(tokens, tokenCount * 3);
+    }
+
+    Object[] values() {
+        return Arrays.copyOf(values, valueCount);
+    }
+
+    // whether a token of this type is kept whole, as a value
+    static boolean whole(TokenType type) {
+        return type.text == null && type != TokenType.IDENTIFIER;
+    }
+
+    public int kind(int node) {
+        return data[node];
+    }
+
+    public int length(int list) {
+        return data[list];
+    }
+
+    public int element(int list, int index) {
+        return data[list + 1 + index];
+    }
+
+    public Token token(int list, int index) {
+        return token(data[list + 1 + index]);
+    }
+
+    private Token token(int index) {
+        if (index < 0) return null;
+        TokenType type = TYPES[tokens[index * 3]];
+        int line = tokens[index * 3 + 1];
+        int extra = tokens[index * 3 + 2];
+        if (whole(type)) return (Token) values[extra];
+        String lexeme = type == TokenType.IDENTIFIER ? Symbols.name(extra) : type.text;
+        return new Token(type, lexeme, null, line, extra);
+    }
+
+    private Object value(int index) {
+        return index < 0 ? null : values[index];
+    }
+
+    public Token assignName(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int assignVar(int node) {
+        return data[node + 2];
+    }
+
+    public int assignValue(int node) {
+        return data[node + 3];
+    }
+
+    public int binaryLeft(int node) {
+        return data[node + 1];
+    }
+
+    public Token binaryOperator(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int binaryRight(int node) {
+        return data[node + 3];
+    }
+
+    public int callCallee(int node) {
+        return data[node + 1];
+    }
+
+    public Token callParen(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int callArguments(int node) {
+        return data[node + 3];
+    }
+
+    public int getObject(int node) {
+        return data[node + 1];
+    }
+
+    public Token getName(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int groupingExpression(int node) {
+        return data[node + 1];
+    }
+
+    public Object literalValue(int node) {
+        return value(data[node + 1]);
+    }
+
+    public int logicalLeft(int node) {
+        return data[node + 1];
+    }
+
+    public Token logicalOperator(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int logicalRight(int node) {
+        return data[node + 3];
+    }
+
+    public int setObject(int node) {
+        return data[node + 1];
+    }
+
+    public Token setName(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int setValue(int node) {
+        return data[node + 3];
+    }
+
+    public Token thisKeyword(int node) {
+        return token(data[node + 1]);
+    }
+
+    public Slot thisSlot(int node) {
+        return (Slot) value(data[node + 2]);
+    }
+
+    public int thisUpvalue(int node) {
+        return data[node + 3];
+    }
+
+    public Token unaryOperator(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int unaryRight(int node) {
+        return data[node + 2];
+    }
+
+    public int commaGroupLeft(int node) {
+        return data[node + 1];
+    }
+
+    public int commaGroupRight(int node) {
+        return data[node + 2];
+    }
+
+    public int ternaryCond(int node) {
+        return data[node + 1];
+    }
+
+    public int ternaryTrueVal(int node) {
+        return data[node + 2];
+    }
+
+    public int ternaryFalseVal(int node) {
+        return data[node + 3];
+    }
+
+    public Token variableName(int node) {
+        return token(data[node + 1]);
+    }
+
+    public Slot variableSlot(int node) {
+        return (Slot) value(data[node + 2]);
+    }
+
+    public int variableUpvalue(int node) {
+        return data[node + 3];
+    }
+
+    public int anonFunctionFunc(int node) {
+        return data[node + 1];
+    }
+
+    public Token arrayLiteralBracket(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int arrayLiteralElements(int node) {
+        return data[node + 2];
+    }
+
+    public Token mapLiteralBrace(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int mapLiteralKeys(int node) {
+        return data[node + 2];
+    }
+
+    public int mapLiteralValues(int node) {
+        return data[node + 3];
+    }
+
+    public int indexObject(int node) {
+        return data[node + 1];
+    }
+
+    public Token indexBracket(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int indexIndex(int node) {
+        return data[node + 3];
+    }
+
+    public int setIndexObject(int node) {
+        return data[node + 1];
+    }
+
+    public Token setIndexBracket(int node) {
+        return token(data[node + 2]);
+    }
+
+    public int setIndexIndex(int node) {
+        return data[node + 3];
+    }
+
+    public int setIndexValue(int node) {
+        return data[node + 4];
+    }
+
+    public int blockStatements(int node) {
+        return data[node + 1];
+    }
+
+    public Token className(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int classMethods(int node) {
+        return data[node + 2];
+    }
+
+    public Slot classSlot(int node) {
+        return (Slot) value(data[node + 3]);
+    }
+
+    public int expressionExpression(int node) {
+        return data[node + 1];
+    }
+
+    public Token functionName(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int functionParams(int node) {
+        return data[node + 2];
+    }
+
+    public int functionBody(int node) {
+        return data[node + 3];
+    }
+
+    public Slot functionSlot(int node) {
+        return (Slot) value(data[node + 4]);
+    }
+
+    public FrameLayout functionLayout(int node) {
+        return (FrameLayout) value(data[node + 5]);
+    }
+
+    public int ifCondition(int node) {
+        return data[node + 1];
+    }
+
+    public int ifThenBranch(int node) {
+        return data[node + 2];
+    }
+
+    public int ifElseBranch(int node) {
+        return data[node + 3];
+    }
+
+    public int printExpression(int node) {
+        return data[node + 1];
+    }
+
+    public Token returnKeyword(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int returnValue(int node) {
+        return data[node + 2];
+    }
+
+    public boolean returnTail(int node) {
+        return data[node + 3] != 0;
+    }
+
+    public Token varName(int node) {
+        return token(data[node + 1]);
+    }
+
+    public int varInitializer(int node) {
+        return data[node + 2];
+    }
+
+    public Slot varSlot(int node) {
+        return (Slot) value(data[node + 3]);
+    }
+
+    public int whileCondition(int node) {
+        return data[node + 1];
+    }
+
+    public int whileBody(int node) {
+        return data[node + 2];
+    }
+
+    public int forInit(int node) {
+        return data[node + 1];
+    }
+
+    public int forCond(int node) {
+        return data[node + 2];
+    }
+
+    public int forPost(int node) {
+        return data[node + 3];
+    }
+
+    public int forBody(int node) {
+        return data[node + 4];
+    }
+
+    public Token breakName(int node) {
+        return token(data[node + 1]);
+    }
+
+    public Token continueName(int node) {
+        return token(data[node + 1]);
+    }
+
+    /**
+     * Walks expressions by node index, reading fields through the accessors
+     * rather than following references.
+     */
+    public interface ExprCursor<R> {
+        R visitAssignExpr(int node) throws Exception;
+        R visitBinaryExpr(int node) throws Exception;
+        R visitCallExpr(int node) throws Exception;
+        R visitGetExpr(int node) throws Exception;
+        R visitGroupingExpr(int node) throws Exception;
+        R visitLiteralExpr(int node) throws Exception;
+        R visitLogicalExpr(int node) throws Exception;
+        R visitSetExpr(int node) throws Exception;
+        R visitThisExpr(int node) throws Exception;
+        R visitUnaryExpr(int node) throws Exception;
+        R visitCommaGroupExpr(int node) throws Exception;
+        R visitTernaryExpr(int node) throws Exception;
+        R visitVariableExpr(int node) throws Exception;
+        R visitAnonFunctionExpr(int node) throws Exception;
+        R visitArrayLiteralExpr(int node) throws Exception;
+        R visitMapLiteralExpr(int node) throws Exception;
+        R visitIndexExpr(int node) throws Exception;
+        R visitSetIndexExpr(int node) throws Exception;
+    }
+
+    public <R> R acceptExpr(int node, ExprCursor<R> cursor) throws Exception {
+        return switch (data[node]) {
+            case ASSIGN_EXPR -> cursor.visitAssignExpr(node);
+            case BINARY_EXPR -> cursor.visitBinaryExpr(node);
+            case CALL_EXPR -> cursor.visitCallExpr(node);
+            case GET_EXPR -> cursor.visitGetExpr(node);
+            case GROUPING_EXPR -> cursor.visitGroupingExpr(node);
+            case LITERAL_EXPR -> cursor.visitLiteralExpr(node);
+            case LOGICAL_EXPR -> cursor.visitLogicalExpr(node);
+            case SET_EXPR -> cursor.visitSetExpr(node);
+            case THIS_EXPR -> cursor.visitThisExpr(node);
+            case UNARY_EXPR -> cursor.visitUnaryExpr(node);
+            case COMMA_GROUP_EXPR -> cursor.visitCommaGroupExpr(node);
+            case TERNARY_EXPR -> cursor.visitTernaryExpr(node);
+            case VARIABLE_EXPR -> cursor.visitVariableExpr(node);
+            case ANON_FUNCTION_EXPR -> cursor.visitAnonFunctionExpr(node);
+            case ARRAY_LITERAL_EXPR -> cursor.visitArrayLiteralExpr(node);
+            case MAP_LITERAL_EXPR -> cursor.visitMapLiteralExpr(node);
+            case INDEX_EXPR -> cursor.visitIndexExpr(node);
+            case SET_INDEX_EXPR -> cursor.visitSetIndexExpr(node);
+            default -> throw new IllegalStateException("Not an expression: " + data[node] + ".");
+        };
+    }
+
+    /**
+     * Walks statements by node index, reading fields through the accessors
+     * rather than following references.
+     */
+    public interface StmtCursor<R> {
+        R visitBlockStmt(int node) throws Exception;
+        R visitClassStmt(int node) throws Exception;
+        R visitExpressionStmt(int node) throws Exception;
+        R visitFunctionStmt(int node) throws Exception;
+        R visitIfStmt(int node) throws Exception;
+        R visitPrintStmt(int node) throws Exception;
+        R visitReturnStmt(int node) throws Exception;
+        R visitVarStmt(int node) throws Exception;
+        R visitWhileStmt(int node) throws Exception;
+        R visitForStmt(int node) throws Exception;
+        R visitBreakStmt(int node) throws Exception;
+        R visitContinueStmt(int node) throws Exception;
+    }
+
+    public <R> R acceptStmt(int node, StmtCursor<R> cursor) throws Exception {
+        return switch (data[node]) {
+            case BLOCK_STMT -> cursor.visitBlockStmt(node);
+            case CLASS_STMT -> cursor.visitClassStmt(node);
+            case EXPRESSION_STMT -> cursor.visitExpressionStmt(node);
+            case FUNCTION_STMT -> cursor.visitFunctionStmt(node);
+            case IF_STMT -> cursor.visitIfStmt(node);
+            case PRINT_STMT -> cursor.visitPrintStmt(node);
+            case RETURN_STMT -> cursor.visitReturnStmt(node);
+            case VAR_STMT -> cursor.visitVarStmt(node);
+            case WHILE_STMT -> cursor.visitWhileStmt(node);
+            case FOR_STMT -> cursor.visitForStmt(node);
+            case BREAK_STMT -> cursor.visitBreakStmt(node);
+            case CONTINUE_STMT -> cursor.visitContinueStmt(node);
+            default -> throw new IllegalStateException("Not a statement: " + data[node] + ".");
+        };
+    }
+
+    private int begin(int kind, int fields) {
+        int node = reserve(fields + 1);
+        data[node] = kind;
+        return node;
+    }
+
+    // drops the room left for growth, once everything has been added
+    public void trim() {
+        data = Arrays.copyOf(data, dataCount);
+        tokens = Arrays.copyOf(tokens, tokenCount * 3);
+        values = Arrays.copyOf(values, valueCount);
+        valueIndices = new HashMap<>();
+    }
+
+    private int reserve(int count) {
+        if (dataCount + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(dataCount + count, data.length * 2 + 16));
+        }
+        int at = dataCount;
+        dataCount += count;
+        return at;
+    }
+
+    private void set(int node, int field, int value) {
+        data[node + 1 + field] = value;
+    }
+
+    private int addToken(Token token) {
+        if (token == null) return -1;
+        int type = token.type().ordinal();
+        int line = token.line();
+        int extra = whole(token.type()) ? addValue(token) : token.symbol();
+        // a token added just before, like a name read twice on one line, is
+        // shared
+        for (int i = tokenCount - 1; i >= 0 && i >= tokenCount - RECENT_TOKENS; --i) {
+            if (tokens[i * 3] == type && tokens[i * 3 + 1] == line && tokens[i * 3 + 2] == extra) {
+                return i;
+            }
+        }
+        if (tokenCount * 3 == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2 + 48);
+        }
+        tokens[tokenCount * 3] = type;
+        tokens[tokenCount * 3 + 1] = line;
+        tokens[tokenCount * 3 + 2] = extra;
+        return tokenCount++;
+    }
+
+    private int addValue(Object value) {
+        if (value == null) return -1;
+        Integer index = valueIndices.get(value);
+        if (index != null) return index;
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2 + 16);
+        }
+        values[valueCount] = value;
+        valueIndices.put(value, valueCount);
+        return valueCount++;
+    }
+
+    // a list of the first count nodes
+    public int addList(int[] nodes, int count) {
+        int list = reserve(count + 1);
+        data[list] = count;
+        System.arraycopy(nodes, 0, data, list + 1, count);
+        return list;
+    }
+
+    public int addTokens(List<Token> list) {
+        int at = reserve(list.size() + 1);
+        data[at] = list.size();
+        for (int i = 0; i < list.size(); ++i) {
+            data[at + 1 + i] = addToken(list.get(i));
+        }
+        return at;
+    }
+
+    public void setElement(int list, int index, int node) {
+        data[list + 1 + index] = node;
+    }
+
+    // shortens a list in place; the elements past its new end are dropped
+    public void truncate(int list, int length) {
+        data[list] = length;
+    }
+
+    public int addAssignExpr(Token name, int var, int value) {
+        int node = begin(ASSIGN_EXPR, 3);
+        set(node, 0, addToken(name));
+        set(node, 1, var);
+        set(node, 2, value);
+        return node;
+    }
+
+    public int addBinaryExpr(int left, Token operator, int right) {
+        int node = begin(BINARY_EXPR, 3);
+        set(node, 0, left);
+        set(node, 1, addToken(operator));
+        set(node, 2, right);
+        return node;
+    }
+
+    public int addCallExpr(int callee, Token paren, int arguments) {
+        int node = begin(CALL_EXPR, 3);
+        set(node, 0, callee);
+        set(node, 1, addToken(paren));
+        set(node, 2, arguments);
+        return node;
+    }
+
+    public int addGetExpr(int object, Token name) {
+        int node = begin(GET_EXPR, 2);
+        set(node, 0, object);
+        set(node, 1, addToken(name));
+        return node;
+    }
+
+    public int addGroupingExpr(int expression) {
+        int node = begin(GROUPING_EXPR, 1);
+        set(node, 0, expression);
+        return node;
+    }
+
+    public int addLiteralExpr(Object value) {
+        int node = begin(LITERAL_EXPR, 1);
+        set(node, 0, addValue(value));
+        return node;
+    }
+
+    public int addLogicalExpr(int left, Token operator, int right) {
+        int node = begin(LOGICAL_EXPR, 3);
+        set(node, 0, left);
+        set(node, 1, addToken(operator));
+        set(node, 2, right);
+        return node;
+    }
+
+    public int addSetExpr(int object, Token name, int value) {
+        int node = begin(SET_EXPR, 3);
+        set(node, 0, object);
+        set(node, 1, addToken(name));
+        set(node, 2, value);
+        return node;
+    }
+
+    public int addThisExpr(Token keyword, Slot slot, int upvalue) {
+        int node = begin(THIS_EXPR, 3);
+        set(node, 0, addToken(keyword));
+        set(node, 1, addValue(slot));
+        set(node, 2, upvalue);
+        return node;
+    }
+
+    public int addUnaryExpr(Token operator, int right) {
+        int node = begin(UNARY_EXPR, 2);
+        set(node, 0, addToken(operator));
+        set(node, 1, right);
+        return node;
+    }
+
+    public int addCommaGroupExpr(int left, int right) {
+        int node = begin(COMMA_GROUP_EXPR, 2);
+        set(node, 0, left);
+        set(node, 1, right);
+        return node;
+    }
+
+    public int addTernaryExpr(int cond, int trueVal, int falseVal) {
+        int node = begin(TERNARY_EXPR, 3);
+        set(node, 0, cond);
+        set(node, 1, trueVal);
+        set(node, 2, falseVal);
+        return node;
+    }
+
+    public int addVariableExpr(Token name, Slot slot, int upvalue) {
+        int node = begin(VARIABLE_EXPR, 3);
+        set(node, 0, addToken(name));
+        set(node, 1, addValue(slot));
+        set(node, 2, upvalue);
+        return node;
+    }
+
+    public int addAnonFunctionExpr(int func) {
+        int node = begin(ANON_FUNCTION_EXPR, 1);
+        set(node, 0, func);
+        return node;
+    }
+
+    public int addArrayLiteralExpr(Token bracket, int elements) {
+        int node = begin(ARRAY_LITERAL_EXPR, 2);
+        set(node, 0, addToken(bracket));
+        set(node, 1, elements);
+        return node;
+    }
+
+    public int addMapLiteralExpr(Token brace, int keys, int values) {
+        int node = begin(MAP_LITERAL_EXPR, 3);
+        set(node, 0, addToken(brace));
+        set(node, 1, keys);
+        set(node, 2, values);
+        return node;
+    }
+
+    public int addIndexExpr(int object, Token bracket, int index) {
+        int node = begin(INDEX_EXPR, 3);
+        set(node, 0, object);
+        set(node, 1, addToken(bracket));
+        set(node, 2, index);
+        return node;
+    }
+
+    public int addSetIndexExpr(int object, Token bracket, int index, int value) {
+        int node = begin(SET_INDEX_EXPR, 4);
+        set(node, 0, object);
+        set(node, 1, addToken(bracket));
+        set(node, 2, index);
+        set(node, 3, value);
+        return node;
+    }
+
+    public int addBlockStmt(int statements) {
+        int node = begin(BLOCK_STMT, 1);
+        set(node, 0, statements);
+        return node;
+    }
+
+    public int addClassStmt(Token name, int methods, Slot slot) {
+        int node = begin(CLASS_STMT, 3);
+        set(node, 0, addToken(name));
+        set(node, 1, methods);
+        set(node, 2, addValue(slot));
+        return node;
+    }
+
+    public int addExpressionStmt(int expression) {
+        int node = begin(EXPRESSION_STMT, 1);
+        set(node, 0, expression);
+        return node;
+    }
+
+    public int addFunctionStmt(Token name, int params, int body, Slot slot, FrameLayout layout) {
+        int node = begin(FUNCTION_STMT, 5);
+        set(node, 0, addToken(name));
+        set(node, 1, params);
+        set(node, 2, body);
+        set(node, 3, addValue(slot));
+        set(node, 4, addValue(layout));
+        return node;
+    }
+
+    public int addIfStmt(int condition, int thenBranch, int elseBranch) {
+        int node = begin(IF_STMT, 3);
+        set(node, 0, condition);
+        set(node, 1, thenBranch);
+        set(node, 2, elseBranch);
+        return node;
+    }
+
+    public int addPrintStmt(int expression) {
+        int node = begin(PRINT_STMT, 1);
+        set(node, 0, expression);
+        return node;
+    }
+
+    public int addReturnStmt(Token keyword, int value, boolean tail) {
+        int node = begin(RETURN_STMT, 3);
+        set(node, 0, addToken(keyword));
+        set(node, 1, value);
+        set(node, 2, tail ? 1 : 0);
+        return node;
+    }
+
+    public int addVarStmt(Token name, int initializer, Slot slot) {
+        int node = begin(VAR_STMT, 3);
+        set(node, 0, addToken(name));
+        set(node, 1, initializer);
+        set(node, 2, addValue(slot));
+        return node;
+    }
+
+    public int addWhileStmt(int condition, int body) {
+        int node = begin(WHILE_STMT, 2);
+        set(node, 0, condition);
+        set(node, 1, body);
+        return node;
+    }
+
+    public int addForStmt(int init, int cond, int post, int body) {
+        int node = begin(FOR_STMT, 4);
+        set(node, 0, init);
+        set(node, 1, cond);
+        set(node, 2, post);
+        set(node, 3, body);
+        return node;
+    }
+
+    public int addBreakStmt(Token name) {
+        int node = begin(BREAK_STMT, 1);
+        set(node, 0, addToken(name));
+        return node;
+    }
+
+    public int addContinueStmt(Token name) {
+        int node = begin(CONTINUE_STMT, 1);
+        set(node, 0, addToken(name));
+        return node;
+    }
+
+    public void setAssignVar(int node, int var) {
+        set(node, 1, var);
+    }
+
+    public void setAssignValue(int node, int value) {
+        set(node, 2, value);
+    }
+
+    public void setBinaryLeft(int node, int left) {
+        set(node, 0, left);
+    }
+
+    public void setBinaryRight(int node, int right) {
+        set(node, 2, right);
+    }
+
+    public void setCallCallee(int node, int callee) {
+        set(node, 0, callee);
+    }
+
+    public void setCallArguments(int node, int arguments) {
+        set(node, 2, arguments);
+    }
+
+    public void setGetObject(int node, int object) {
+        set(node, 0, object);
+    }
+
+    public void setGroupingExpression(int node, int expression) {
+        set(node, 0, expression);
+    }
+
+    public void setLiteralValue(int node, Object value) {
+        set(node, 0, addValue(value));
+    }
+
+    public void setLogicalLeft(int node, int left) {
+        set(node, 0, left);
+    }
+
+    public void setLogicalRight(int node, int right) {
+        set(node, 2, right);
+    }
+
+    public void setSetObject(int node, int object) {
+        set(node, 0, object);
+    }
+
+    public void setSetValue(int node, int value) {
+        set(node, 2, value);
+    }
+
+    public void setThisSlot(int node, Slot slot) {
+        set(node, 1, addValue(slot));
+    }
+
+    public void setThisUpvalue(int node, int upvalue) {
+        set(node, 2, upvalue);
+    }
+
+    public void setUnaryRight(int node, int right) {
+        set(node, 1, right);
+    }
+
+    public void setCommaGroupLeft(int node, int left) {
+        set(node, 0, left);
+    }
+
+    public void setCommaGroupRight(int node, int right) {
+        set(node, 1, right);
+    }
+
+    public void setTernaryCond(int node, int cond) {
+        set(node, 0, cond);
+    }
+
+    public void setTernaryTrueVal(int node, int trueVal) {
+        set(node, 1, trueVal);
+    }
+
+    public void setTernaryFalseVal(int node, int falseVal) {
+        set(node, 2, falseVal);
+    }
+
+    public void setVariableSlot(int node, Slot slot) {
+        set(node, 1, addValue(slot));
+    }
+
+    public void setVariableUpvalue(int node, int upvalue) {
+        set(node, 2, upvalue);
+    }
+
+    public void setAnonFunctionFunc(int node, int func) {
+        set(node, 0, func);
+    }
+
+    public void setArrayLiteralElements(int node, int elements) {
+        set(node, 1, elements);
+    }
+
+    public void setMapLiteralKeys(int node, int keys) {
+        set(node, 1, keys);
+    }
+
+    public void setMapLiteralValues(int node, int values) {
+        set(node, 2, values);
+    }
+
+    public void setIndexObject(int node, int object) {
+        set(node, 0, object);
+    }
+
+    public void setIndexIndex(int node, int index) {
+        set(node, 2, index);
+    }
+
+    public void setSetIndexObject(int node, int object) {
+        set(node, 0, object);
+    }
+
+    public void setSetIndexIndex(int node, int index) {
+        set(node, 2, index);
+    }
+
+    public void setSetIndexValue(int node, int value) {
+        set(node, 3, value);
+    }
+
+    public void setBlockStatements(int node, int statements) {
+        set(node, 0, statements);
+    }
+
+    public void setClassMethods(int node, int methods) {
+        set(node, 1, methods);
+    }
+
+    public void setClassSlot(int node, Slot slot) {
+        set(node, 2, addValue(slot));
+    }
+
+    public void setExpressionExpression(int node, int expression) {
+        set(node, 0, expression);
+    }
+
+    public void setFunctionParams(int node, int params) {
+        set(node, 1, params);
+    }
+
+    public void setFunctionBody(int node, int body) {
+        set(node, 2, body);
+    }
+
+    public void setFunctionSlot(int node, Slot slot) {
+        set(node, 3, addValue(slot));
+    }
+
+    public void setFunctionLayout(int node, FrameLayout layout) {
+        set(node, 4, addValue(layout));
+    }
+
+    public void setIfCondition(int node, int condition) {
+        set(node, 0, condition);
+    }
+
+    public void setIfThenBranch(int node, int thenBranch) {
+        set(node, 1, thenBranch);
+    }
+
+    public void setIfElseBranch(int node, int elseBranch) {
+        set(node, 2, elseBranch);
+    }
+
+    public void setPrintExpression(int node, int expression) {
+        set(node, 0, expression);
+    }
+
+    public void setReturnValue(int node, int value) {
+        set(node, 1, value);
+    }
+
+    public void setReturnTail(int node, boolean tail) {
+        set(node, 2, tail ? 1 : 0);
+    }
+
+    public void setVarInitializer(int node, int initializer) {
+        set(node, 1, initializer);
+    }
+
+    public void setVarSlot(int node, Slot slot) {
+        set(node, 2, addValue(slot));
+    }
+
+    public void setWhileCondition(int node, int condition) {
+        set(node, 0, condition);
+    }
+
+    public void setWhileBody(int node, int body) {
+        set(node, 1, body);
+    }
+
+    public void setForInit(int node, int init) {
+        set(node, 0, init);
+    }
+
+    public void setForCond(int node, int cond) {
+        set(node, 1, cond);
+    }
+
+    public void setForPost(int node, int post) {
+        set(node, 2, post);
+    }
+
+    public void setForBody(int node, int body) {
+        set(node, 3, body);
+    }
+
+    // rebuilds the tree under node, sharing this arena's tokens and values
+    public Stmt stmt(int node) {
+        if (node < 0) return null;
+        return switch (data[node]) {
+            case BLOCK_STMT -> new Stmt.Block(
+                    stmts(blockStatements(node)));
+            case CLASS_STMT -> new Stmt.Class(
+                    className(node), functions(classMethods(node)), classSlot(node));
+            case EXPRESSION_STMT -> new Stmt.Expression(
+                    expr(expressionExpression(node)));
+            case FUNCTION_STMT -> new Stmt.Function(
+                    functionName(node), tokens(functionParams(node)), stmts(functionBody(node)), functionSlot(node), functionLayout(node));
+            case IF_STMT -> new Stmt.If(
+                    expr(ifCondition(node)), stmt(ifThenBranch(node)), stmt(ifElseBranch(node)));
+            case PRINT_STMT -> new Stmt.Print(
+                    expr(printExpression(node)));
+            case RETURN_STMT -> new Stmt.Return(
+                    returnKeyword(node), expr(returnValue(node)), returnTail(node));
+            case VAR_STMT -> new Stmt.Var(
+                    varName(node), expr(varInitializer(node)), varSlot(node));
+            case WHILE_STMT -> new Stmt.While(
+                    expr(whileCondition(node)), stmt(whileBody(node)));
+            case FOR_STMT -> new Stmt.For(
+                    stmt(forInit(node)), expr(forCond(node)), expr(forPost(node)), stmt(forBody(node)));
+            case BREAK_STMT -> new Stmt.Break(
+                    breakName(node));
+            case CONTINUE_STMT -> new Stmt.Continue(
+                    continueName(node));
+            default -> throw new IllegalStateException("Not a statement: " + data[node] + ".");
+        };
+    }
+
+    public Expr expr(int node) {
+        if (node < 0) return null;
+        return switch (data[node]) {
+            case ASSIGN_EXPR -> new Expr.Assign(
+                    assignName(node), expr(assignVar(node)), expr(assignValue(node)));
+            case BINARY_EXPR -> new Expr.Binary(
+                    expr(binaryLeft(node)), binaryOperator(node), expr(binaryRight(node)));
+            case CALL_EXPR -> new Expr.Call(
+                    expr(callCallee(node)), callParen(node), exprs(callArguments(node)));
+            case GET_EXPR -> new Expr.Get(
+                    expr(getObject(node)), getName(node));
+            case GROUPING_EXPR -> new Expr.Grouping(
+                    expr(groupingExpression(node)));
+            case LITERAL_EXPR -> new Expr.Literal(
+                    literalValue(node));
+            case LOGICAL_EXPR -> new Expr.Logical(
+                    expr(logicalLeft(node)), logicalOperator(node), expr(logicalRight(node)));
+            case SET_EXPR -> new Expr.Set(
+                    expr(setObject(node)), setName(node), expr(setValue(node)));
+            case THIS_EXPR -> new Expr.This(
+                    thisKeyword(node), thisSlot(node), thisUpvalue(node));
+            case UNARY_EXPR -> new Expr.Unary(
+                    unaryOperator(node), expr(unaryRight(node)));
+            case COMMA_GROUP_EXPR -> new Expr.CommaGroup(
+                    expr(commaGroupLeft(node)), expr(commaGroupRight(node)));
+            case TERNARY_EXPR -> new Expr.Ternary(
+                    expr(ternaryCond(node)), expr(ternaryTrueVal(node)), expr(ternaryFalseVal(node)));
+            case VARIABLE_EXPR -> new Expr.Variable(
+                    variableName(node), variableSlot(node), variableUpvalue(node));
+            case ANON_FUNCTION_EXPR -> new Expr.AnonFunction(
+                    stmt(anonFunctionFunc(node)));
+            case ARRAY_LITERAL_EXPR -> new Expr.ArrayLiteral(
+                    arrayLiteralBracket(node), exprs(arrayLiteralElements(node)));
+            case MAP_LITERAL_EXPR -> new Expr.MapLiteral(
+                    mapLiteralBrace(node), exprs(mapLiteralKeys(node)), exprs(mapLiteralValues(node)));
+            case INDEX_EXPR -> new Expr.Index(
+                    expr(indexObject(node)), indexBracket(node), expr(indexIndex(node)));
+            case SET_INDEX_EXPR -> new Expr.SetIndex(
+                    expr(setIndexObject(node)), setIndexBracket(node), expr(setIndexIndex(node)), expr(setIndexValue(node)));
+            default -> throw new IllegalStateException("Not an expression: " + data[node] + ".");
+        };
+    }
+
+    private List<Expr> exprs(int list) {
+        List<Expr> exprs = new ArrayList<>(length(list));
+        for (int i = 0; i < length(list); ++i) {
+            exprs.add(expr(element(list, i)));
+        }
+        return exprs;
+    }
+
+    public List<Stmt> stmts(int list) {
+        List<Stmt> stmts = new ArrayList<>(length(list));
+        for (int i = 0; i < length(list); ++i) {
+            stmts.add(stmt(element(list, i)));
+        }
+        return stmts;
+    }
+
+    private List<Stmt.Function> functions(int list) {
+        List<Stmt.Function> functions = new ArrayList<>(length(list));
+        for (int i = 0; i < length(list); ++i) {
+            functions.add((Stmt.Function) stmt(element(list, i)));
+        }
+        return functions;
+    }
+
+    private List<Token> tokens(int list) {
+        List<Token> tokens = new ArrayList<>(length(list));
+        for (int i = 0; i < length(list); ++i) {
+            tokens.add(token(list, i));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,23 @@
+package com.puritylake.lox.parsing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the resolver worked out about a function: how many slots a call needs and which variables of the
+ * enclosing functions it closes over.
+ */
+public final class FrameLayout {
+    /**
+     * Captures either a slot of the enclosing frame or one of the enclosing
+     * function's own upvalues.
+     */
+    public record Upvalue(boolean local, int index) { }
+
+    public int slots = 0;
+    public final List<Slot> params = new ArrayList<>();
+    public final List<Upvalue> upvalues = new ArrayList<>();
+
+    // for methods, the slot "this" is passed in
+    public Slot receiver = null;
+}
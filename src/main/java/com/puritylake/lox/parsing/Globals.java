@@ -0,0 +1,83 @@
+package com.puritylake.lox.parsing;
+
+import java.util.Arrays;
+
+/**
+ * Top level declarations and natives, each kept in a {@link Global} cell
+ * stored at the symbol number of its name. These are the only variables
+ * still looked up by name, which lets the REPL redefine them line after
+ * line.
+ */
+public class Globals {
+    // marks the symbols no global has been defined for
+    public static final Object UNDEFINED = new Object();
+
+    /**
+     * Where one global lives. Code that uses a global finds its cell once
+     * and keeps it, so reading the global is a field load, and defining the
+     * name again later is seen everywhere it is used.
+     */
+    public static final class Global {
+        Object value = UNDEFINED;
+
+        // the value, or UNDEFINED
+        public Object value() {
+            return value;
+        }
+
+        public Object get(Token name) {
+            Object result = value;
+            if (result == UNDEFINED) {
+                throw new RuntimeError(name,
+                        "Undefined variable '" + name.lexeme() + "'.");
+            }
+            return result;
+        }
+
+        public void define(Object value) {
+            this.value = value;
+        }
+
+        public void assign(Token name, Object value) {
+            if (this.value == UNDEFINED) {
+                throw new RuntimeError(name,
+                        "Undefined variable '" + name.lexeme() + "'.");
+            }
+            this.value = value;
+        }
+    }
+
+    // only read and grown under the lock; use sites keep the cell they are
+    // given, so no access to a global goes through here
+    private Global[] cells = new Global[0];
+
+    // the cell for a symbol, made the first time anything asks for it;
+    // the compiler thread asks too
+    public synchronized Global cell(int symbol) {
+        if (symbol >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(symbol + 1, Symbols.count()));
+        }
+        Global cell = cells[symbol];
+        if (cell == null) {
+            cell = new Global();
+            cells[symbol] = cell;
+        }
+        return cell;
+    }
+
+    public Object get(Token name) {
+        return cell(name.symbol()).get(name);
+    }
+
+    public void define(String name, Object value) {
+        define(Symbols.intern(name), value);
+    }
+
+    public void define(int symbol, Object value) {
+        cell(symbol).define(value);
+    }
+
+    public void assign(Token name, Object value) {
+        cell(name.symbol()).assign(name, value);
+    }
+}
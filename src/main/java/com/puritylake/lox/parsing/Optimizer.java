@@ -0,0 +1,417 @@
+package com.puritylake.lox.parsing;
+
+import com.puritylake.lox.types.Values;
+
+import java.util.*;
+
+/**
+ * Simplifies a resolved program before it is run. Operators whose operands
+ * are literals are folded, branches and loops with a constant condition
+ * lose the code that can never run, operands of a comma whose values are
+ * thrown away are dropped when evaluating them does nothing, and locals
+ * that are initialised with a literal and never assigned again are
+ * replaced by that literal where they are read.
+ * <p>
+ * Anything that would fail at runtime, like dividing by zero or adding a
+ * number to nil, is left alone so the error still happens when it runs.
+ * Nodes are rewritten in place in the arena, so functions and classes keep
+ * the layouts the resolver gave them; a folded value is added as a new
+ * literal node.
+ */
+public class Optimizer implements FlatAst.ExprCursor<Integer>, FlatAst.StmtCursor<Integer> {
+    private final FlatAst ast;
+    private final int nil;
+
+    // the literal value of every local that can be read as a constant
+    private final Map<Slot, Object> constants = new HashMap<>();
+
+    public Optimizer(FlatAst ast) {
+        this.ast = ast;
+        this.nil = ast.addLiteralExpr(null);
+    }
+
+    // statements is the list the parser returned
+    public void optimize(int statements) throws Exception {
+        optimizeBlock(statements);
+    }
+
+    private void optimizeBlock(int statements) throws Exception {
+        int kept = 0;
+        for (int i = 0; i < ast.length(statements); ++i) {
+            int statement = optimizeStmt(ast.element(statements, i));
+            if (statement != -1) {
+                ast.setElement(statements, kept++, statement);
+            }
+        }
+        ast.truncate(statements, kept);
+    }
+
+    // returns -1 when nothing of the statement is left to run
+    private int optimizeStmt(int stmt) throws Exception {
+        return ast.acceptStmt(stmt, this);
+    }
+
+    // for places that need a statement even when it does nothing
+    private int optimizeBody(int stmt) throws Exception {
+        int optimized = optimizeStmt(stmt);
+        return optimized == -1 ? ast.addBlockStmt(ast.addList(new int[0], 0)) : optimized;
+    }
+
+    private int optimizeExpr(int expr) throws Exception {
+        return ast.acceptExpr(expr, this);
+    }
+
+    /**
+     * Optimises an expression whose value is discarded, returning only the
+     * parts that have to be evaluated, or -1 if none do.
+     */
+    private int effect(int expr) throws Exception {
+        if (ast.kind(expr) == FlatAst.COMMA_GROUP_EXPR) {
+            int left = effect(ast.commaGroupLeft(expr));
+            int right = effect(ast.commaGroupRight(expr));
+            if (left == -1) return right;
+            if (right == -1) return left;
+            ast.setCommaGroupLeft(expr, left);
+            ast.setCommaGroupRight(expr, right);
+            return expr;
+        }
+        int optimized = optimizeExpr(expr);
+        return isPure(optimized) ? -1 : optimized;
+    }
+
+    // whether evaluating the expression can neither fail nor change anything
+    private boolean isPure(int expr) {
+        return switch (ast.kind(expr)) {
+            case FlatAst.LITERAL_EXPR, FlatAst.ANON_FUNCTION_EXPR -> true;
+            // reading a global fails if it was never defined
+            case FlatAst.VARIABLE_EXPR -> ast.variableSlot(expr) != null || ast.variableUpvalue(expr) != -1;
+            case FlatAst.THIS_EXPR -> ast.thisSlot(expr) != null || ast.thisUpvalue(expr) != -1;
+            case FlatAst.GROUPING_EXPR -> isPure(ast.groupingExpression(expr));
+            case FlatAst.UNARY_EXPR -> ast.unaryOperator(expr).type() == TokenType.BANG
+                    && isPure(ast.unaryRight(expr));
+            case FlatAst.BINARY_EXPR -> {
+                TokenType type = ast.binaryOperator(expr).type();
+                yield (type == TokenType.EQUAL_EQUAL || type == TokenType.BANG_EQUAL)
+                        && isPure(ast.binaryLeft(expr)) && isPure(ast.binaryRight(expr));
+            }
+            case FlatAst.LOGICAL_EXPR -> isPure(ast.logicalLeft(expr)) && isPure(ast.logicalRight(expr));
+            case FlatAst.TERNARY_EXPR -> isPure(ast.ternaryCond(expr)) && isPure(ast.ternaryTrueVal(expr))
+                    && isPure(ast.ternaryFalseVal(expr));
+            case FlatAst.COMMA_GROUP_EXPR -> isPure(ast.commaGroupLeft(expr)) && isPure(ast.commaGroupRight(expr));
+            default -> false;
+        };
+    }
+
+    private boolean isLiteral(int expr) {
+        return expr != -1 && ast.kind(expr) == FlatAst.LITERAL_EXPR;
+    }
+
+    @Override
+    public Integer visitAssignExpr(int expr) throws Exception {
+        ast.setAssignValue(expr, optimizeExpr(ast.assignValue(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitBinaryExpr(int expr) throws Exception {
+        int left = optimizeExpr(ast.binaryLeft(expr));
+        int right = optimizeExpr(ast.binaryRight(expr));
+        if (isLiteral(left) && isLiteral(right)) {
+            Object value = fold(ast.binaryOperator(expr), ast.literalValue(left), ast.literalValue(right));
+            if (value != FAILS) {
+                return ast.addLiteralExpr(value);
+            }
+        }
+        ast.setBinaryLeft(expr, left);
+        ast.setBinaryRight(expr, right);
+        return expr;
+    }
+
+    // stands in for a result that can only be an error at runtime
+    private static final Object FAILS = new Object();
+
+    private static Object fold(Token operator, Object a, Object b) {
+        if (a instanceof Double x && b instanceof Double y) {
+            Object value = switch (operator.type()) {
+                case MINUS -> Values.box(x - y);
+                case STAR -> Values.box(x * y);
+                case SLASH -> y == 0 ? FAILS : Values.box(x / y);
+                case GREATER -> x > y;
+                case GREATER_EQUAL -> x >= y;
+                case LESS -> x < y;
+                case LESS_EQUAL -> x <= y;
+                default -> null;
+            };
+            if (value != null) return value;
+        }
+        return switch (operator.type()) {
+            case PLUS -> {
+                if (a instanceof String || (a instanceof Double && (b instanceof Double || b instanceof String))) {
+                    // literals hold flat strings
+                    Object sum = Values.add(operator, a, b);
+                    yield sum instanceof CharSequence string ? string.toString() : sum;
+                }
+                yield FAILS;
+            }
+            case EQUAL_EQUAL -> Values.isEqual(a, b);
+            case BANG_EQUAL -> !Values.isEqual(a, b);
+            default -> FAILS;
+        };
+    }
+
+    @Override
+    public Integer visitCallExpr(int expr) throws Exception {
+        optimizeAll(ast.callArguments(expr));
+        ast.setCallCallee(expr, optimizeExpr(ast.callCallee(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitGetExpr(int expr) throws Exception {
+        ast.setGetObject(expr, optimizeExpr(ast.getObject(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitGroupingExpr(int expr) throws Exception {
+        int inner = optimizeExpr(ast.groupingExpression(expr));
+        if (isLiteral(inner)) return inner;
+        ast.setGroupingExpression(expr, inner);
+        return expr;
+    }
+
+    @Override
+    public Integer visitLiteralExpr(int expr) {
+        return expr;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(int expr) throws Exception {
+        int left = optimizeExpr(ast.logicalLeft(expr));
+        int right = optimizeExpr(ast.logicalRight(expr));
+        if (isLiteral(left)) {
+            boolean isOr = ast.logicalOperator(expr).type() == TokenType.OR;
+            return Values.isTruthy(ast.literalValue(left)) == isOr ? left : right;
+        }
+        ast.setLogicalLeft(expr, left);
+        ast.setLogicalRight(expr, right);
+        return expr;
+    }
+
+    @Override
+    public Integer visitSetExpr(int expr) throws Exception {
+        ast.setSetObject(expr, optimizeExpr(ast.setObject(expr)));
+        ast.setSetValue(expr, optimizeExpr(ast.setValue(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitThisExpr(int expr) {
+        return expr;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(int expr) throws Exception {
+        int right = optimizeExpr(ast.unaryRight(expr));
+        if (isLiteral(right)) {
+            Object operand = ast.literalValue(right);
+            if (ast.unaryOperator(expr).type() == TokenType.BANG) {
+                return ast.addLiteralExpr(!Values.isTruthy(operand));
+            } else if (operand instanceof Double value) {
+                return ast.addLiteralExpr(Values.box(-value));
+            }
+        }
+        ast.setUnaryRight(expr, right);
+        return expr;
+    }
+
+    @Override
+    public Integer visitCommaGroupExpr(int expr) throws Exception {
+        // a comma evaluates to nil, both operands are only run for effect
+        int left = effect(ast.commaGroupLeft(expr));
+        int right = effect(ast.commaGroupRight(expr));
+        if (left == -1 && right == -1) return nil;
+        ast.setCommaGroupLeft(expr, left == -1 ? nil : left);
+        ast.setCommaGroupRight(expr, right == -1 ? nil : right);
+        return expr;
+    }
+
+    @Override
+    public Integer visitTernaryExpr(int expr) throws Exception {
+        int cond = optimizeExpr(ast.ternaryCond(expr));
+        if (isLiteral(cond)) {
+            return optimizeExpr(Values.isTruthy(ast.literalValue(cond))
+                    ? ast.ternaryTrueVal(expr) : ast.ternaryFalseVal(expr));
+        }
+        ast.setTernaryCond(expr, cond);
+        ast.setTernaryTrueVal(expr, optimizeExpr(ast.ternaryTrueVal(expr)));
+        ast.setTernaryFalseVal(expr, optimizeExpr(ast.ternaryFalseVal(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitVariableExpr(int expr) {
+        Slot slot = ast.variableSlot(expr);
+        if (slot != null && constants.containsKey(slot)) {
+            return ast.addLiteralExpr(constants.get(slot));
+        }
+        return expr;
+    }
+
+    @Override
+    public Integer visitAnonFunctionExpr(int expr) throws Exception {
+        optimizeBlock(ast.functionBody(ast.anonFunctionFunc(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitArrayLiteralExpr(int expr) throws Exception {
+        optimizeAll(ast.arrayLiteralElements(expr));
+        return expr;
+    }
+
+    @Override
+    public Integer visitMapLiteralExpr(int expr) throws Exception {
+        optimizeAll(ast.mapLiteralKeys(expr));
+        optimizeAll(ast.mapLiteralValues(expr));
+        return expr;
+    }
+
+    private void optimizeAll(int exprs) throws Exception {
+        for (int i = 0; i < ast.length(exprs); ++i) {
+            ast.setElement(exprs, i, optimizeExpr(ast.element(exprs, i)));
+        }
+    }
+
+    @Override
+    public Integer visitIndexExpr(int expr) throws Exception {
+        ast.setIndexObject(expr, optimizeExpr(ast.indexObject(expr)));
+        ast.setIndexIndex(expr, optimizeExpr(ast.indexIndex(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitSetIndexExpr(int expr) throws Exception {
+        ast.setSetIndexObject(expr, optimizeExpr(ast.setIndexObject(expr)));
+        ast.setSetIndexIndex(expr, optimizeExpr(ast.setIndexIndex(expr)));
+        ast.setSetIndexValue(expr, optimizeExpr(ast.setIndexValue(expr)));
+        return expr;
+    }
+
+    @Override
+    public Integer visitBlockStmt(int stmt) throws Exception {
+        optimizeBlock(ast.blockStatements(stmt));
+        return stmt;
+    }
+
+    @Override
+    public Integer visitClassStmt(int stmt) throws Exception {
+        int methods = ast.classMethods(stmt);
+        for (int i = 0; i < ast.length(methods); ++i) {
+            optimizeBlock(ast.functionBody(ast.element(methods, i)));
+        }
+        return stmt;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(int stmt) throws Exception {
+        int expression = effect(ast.expressionExpression(stmt));
+        if (expression == -1) return -1;
+        ast.setExpressionExpression(stmt, expression);
+        return stmt;
+    }
+
+    @Override
+    public Integer visitFunctionStmt(int stmt) throws Exception {
+        optimizeBlock(ast.functionBody(stmt));
+        return stmt;
+    }
+
+    @Override
+    public Integer visitIfStmt(int stmt) throws Exception {
+        int condition = optimizeExpr(ast.ifCondition(stmt));
+        int elseBranch = ast.ifElseBranch(stmt);
+        if (isLiteral(condition)) {
+            if (Values.isTruthy(ast.literalValue(condition))) return optimizeStmt(ast.ifThenBranch(stmt));
+            return elseBranch == -1 ? -1 : optimizeStmt(elseBranch);
+        }
+        ast.setIfCondition(stmt, condition);
+        ast.setIfElseBranch(stmt, elseBranch == -1 ? -1 : optimizeStmt(elseBranch));
+        ast.setIfThenBranch(stmt, optimizeBody(ast.ifThenBranch(stmt)));
+        return stmt;
+    }
+
+    @Override
+    public Integer visitPrintStmt(int stmt) throws Exception {
+        ast.setPrintExpression(stmt, optimizeExpr(ast.printExpression(stmt)));
+        return stmt;
+    }
+
+    @Override
+    public Integer visitReturnStmt(int stmt) throws Exception {
+        int value = ast.returnValue(stmt);
+        if (value != -1) {
+            value = optimizeExpr(value);
+            ast.setReturnValue(stmt, value);
+        }
+        ast.setReturnTail(stmt, ast.returnTail(stmt) && value != -1 && ast.kind(value) == FlatAst.CALL_EXPR);
+        return stmt;
+    }
+
+    @Override
+    public Integer visitVarStmt(int stmt) throws Exception {
+        int initializer = ast.varInitializer(stmt);
+        if (initializer != -1) {
+            initializer = optimizeExpr(initializer);
+            ast.setVarInitializer(stmt, initializer);
+        }
+        Slot slot = ast.varSlot(stmt);
+        if (slot != null && !slot.captured && slot.assignments == 0) {
+            if (initializer == -1) {
+                constants.put(slot, null);
+            } else if (isLiteral(initializer)) {
+                constants.put(slot, ast.literalValue(initializer));
+            }
+        }
+        return stmt;
+    }
+
+    @Override
+    public Integer visitWhileStmt(int stmt) throws Exception {
+        int condition = optimizeExpr(ast.whileCondition(stmt));
+        if (isLiteral(condition) && !Values.isTruthy(ast.literalValue(condition))) return -1;
+        ast.setWhileCondition(stmt, condition);
+        ast.setWhileBody(stmt, optimizeBody(ast.whileBody(stmt)));
+        return stmt;
+    }
+
+    @Override
+    public Integer visitForStmt(int stmt) throws Exception {
+        int init = ast.forInit(stmt) == -1 ? -1 : optimizeStmt(ast.forInit(stmt));
+        int cond = ast.forCond(stmt) == -1 ? -1 : optimizeExpr(ast.forCond(stmt));
+        if (isLiteral(cond)) {
+            if (!Values.isTruthy(ast.literalValue(cond))) {
+                // only the initialiser runs, in a block of its own so its
+                // variable stays scoped to the loop
+                if (init == -1) return -1;
+                return ast.addBlockStmt(ast.addList(new int[] { init }, 1));
+            }
+            cond = -1;
+        }
+        ast.setForInit(stmt, init);
+        ast.setForCond(stmt, cond);
+        ast.setForPost(stmt, ast.forPost(stmt) == -1 ? -1 : effect(ast.forPost(stmt)));
+        ast.setForBody(stmt, optimizeBody(ast.forBody(stmt)));
+        return stmt;
+    }
+
+    @Override
+    public Integer visitBreakStmt(int stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Integer visitContinueStmt(int stmt) {
+        return stmt;
+    }
+}
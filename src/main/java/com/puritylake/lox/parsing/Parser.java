@@ -3,6 +3,7 @@ package com.puritylake.lox.parsing;
 import com.puritylake.lox.Lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.puritylake.lox.parsing.TokenType.*;
@@ -10,20 +11,50 @@ import static com.puritylake.lox.parsing.TokenType.*;
 public class Parser {
     private static class ParseError extends RuntimeException { }
 
-    private final List<Token> tokens;
+    // the nodes of a list being parsed, until it is added to the arena
+    private static class Nodes {
+        private int[] nodes = new int[8];
+        private int count = 0;
+
+        void add(int node) {
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count * 2);
+            }
+            nodes[count++] = node;
+        }
+    }
+
+    private final TokenStream scanner;
+    private final TokenBuffer tokens;
+    private final FlatAst ast;
     private int current = 0;
+    // the token advance() last moved past, which may be further back than
+    // current - 1 when scan errors lie between them
+    private int previous = 0;
     private boolean inControlFlow = false;
 
-    public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    public Parser(TokenStream scanner, FlatAst ast) {
+        this.scanner = scanner;
+        this.tokens = scanner.buffer();
+        this.ast = ast;
+        scanner.fill(tokens);
+        skipErrors();
     }
 
-    public List<Stmt> parse() {
-        List<Stmt> statements = new ArrayList<>();
+    /**
+     * Adds the program to the arena and returns the list of its top level
+     * statements. A statement that failed to parse is left as -1.
+     */
+    public int parse() {
+        Nodes statements = new Nodes();
         while (!isAtEnd()) {
             statements.add(declaration());
         }
-        return statements;
+        return list(statements);
+    }
+
+    private int list(Nodes nodes) {
+        return ast.addList(nodes.nodes, nodes.count);
     }
 
     private boolean match(TokenType... types) {
@@ -39,28 +70,57 @@ public class Parser {
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type() == type;
+        return tokens.type(current) == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) ++current;
-        return previous();
+    private void advance() {
+        if (isAtEnd()) return;
+        previous = current++;
+        skipErrors();
+    }
+
+    // reports the scan errors in front of the parser as it reaches them, so
+    // that they come out in order with its own errors
+    private void skipErrors() {
+        while (true) {
+            if (current == tokens.count()) {
+                // only the token last passed is still needed, as previous()
+                tokens.discard(previous);
+                current -= previous;
+                previous = 0;
+                scanner.fill(tokens);
+            } else if (tokens.type(current) == ERROR) {
+                Lox.error(tokens.line(current), tokens.lexeme(current));
+                ++current;
+            } else {
+                return;
+            }
+        }
     }
 
     private boolean isAtEnd() {
-        return peek().type() == EOF;
+        return tokens.type(current) == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(previous);
     }
 
     private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+        expect(type, message);
+        return previous();
+    }
+
+    // like consume, for tokens the tree does not keep
+    private void expect(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
@@ -70,7 +130,7 @@ public class Parser {
         return new ParseError();
     }
 
-    private Stmt declaration() {
+    private int declaration() {
         try {
             if (match(CLASS)) return classDeclaration();
             if (match(FUN)) return function("function");
@@ -78,31 +138,31 @@ public class Parser {
             return statement();
         } catch (ParseError error) {
             synchronize();
-            return null;
+            return -1;
         }
     }
 
-    private Stmt classDeclaration() {
+    private int classDeclaration() {
         Token name = consume(IDENTIFIER, "Expect class name.");
-        consume(LEFT_BRACE, "Expect '{' before class body.");
+        expect(LEFT_BRACE, "Expect '{' before class body.");
 
-        List<Stmt.Function> methods = new ArrayList<>();
+        Nodes methods = new Nodes();
         while (!check(RIGHT_BRACE) && !isAtEnd()) {
             methods.add(function("method"));
         }
 
-        consume(RIGHT_BRACE, "Expect '}' after class body.");
+        expect(RIGHT_BRACE, "Expect '}' after class body.");
 
-        return new Stmt.Class(name, methods);
+        return ast.addClassStmt(name, list(methods), null);
     }
 
-    private Stmt.Function function(String kind) {
+    private int function(String kind) {
         Token name = null;
         if (match(IDENTIFIER)) {
             name = previous();
         }
 
-        consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+        expect(LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
             do {
@@ -113,40 +173,38 @@ public class Parser {
                 parameters.add(consume(IDENTIFIER, "Expect parameter name."));
             } while(match(COMMA));
         }
-        consume(RIGHT_PAREN, "Expect ')' after parameters.");
+        expect(RIGHT_PAREN, "Expect ')' after parameters.");
 
-        consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
-        List<Stmt> body = block();
+        expect(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        int body = block();
 
-        return new Stmt.Function(name, parameters, body);
+        return ast.addFunctionStmt(name, ast.addTokens(parameters), body, null, null);
     }
 
-    private Stmt varDeclaration() {
+    private int varDeclaration() {
         Token name = consume(IDENTIFIER, "Expect variable name.");
 
-        boolean initialized = false;
-        Expr initializer = null;
+        int initializer = -1;
         if (match(EQUAL)) {
             initializer = expression();
-            initialized = true;
         }
 
-        consume(SEMICOLON, "Expect ';' after variable declation.");
-        return new Stmt.Var(name, initializer, initialized);
+        expect(SEMICOLON, "Expect ';' after variable declation.");
+        return ast.addVarStmt(name, initializer, null);
     }
 
-    private Stmt statement() {
+    private int statement() {
         if (match(FOR)) return forStatement();
         if (match(IF)) return ifStatement();
         if (match(PRINT)) return printStatement();
         if (match(RETURN)) return returnStatement();
         if (match(WHILE)) return whileStatement();
-        if (match(LEFT_BRACE)) return new Stmt.Block(block());
+        if (match(LEFT_BRACE)) return ast.addBlockStmt(block());
         if (match(BREAK)) {
             if (inControlFlow) {
                 Token t = previous();
-                consume(SEMICOLON, "Expect ';' after break statement.");
-                return new Stmt.Break(t);
+                expect(SEMICOLON, "Expect ';' after break statement.");
+                return ast.addBreakStmt(t);
             }else {
                 throw error(previous(), "Cannot use break statement outside of 'for' or 'while' loop");
             }
@@ -154,8 +212,8 @@ public class Parser {
         if (match(CONTINUE)) {
             if (inControlFlow) {
                 Token t = previous();
-                consume(SEMICOLON, "Expect ';' after continue statement.");
-                return new Stmt.Continue(t);
+                expect(SEMICOLON, "Expect ';' after continue statement.");
+                return ast.addContinueStmt(t);
             }
             throw error(previous(), "Cannot use continue statement outside of 'for' or 'while' loop");
         }
@@ -163,125 +221,131 @@ public class Parser {
         return expressionStatement();
     }
 
-    private Stmt returnStatement() {
+    private int returnStatement() {
         Token keyword = previous();
-        Expr value = null;
+        int value = -1;
         if (!check(SEMICOLON)) {
             value = expression();
         }
 
-        consume(SEMICOLON, "Expect ';' after return value.");
-        return new Stmt.Return(keyword, value);
+        expect(SEMICOLON, "Expect ';' after return value.");
+        return ast.addReturnStmt(keyword, value, false);
     }
 
-    private Stmt forStatement() {
-        consume(LEFT_PAREN, "Expect '(' after 'for'.");
+    private int forStatement() {
+        expect(LEFT_PAREN, "Expect '(' after 'for'.");
 
-        Stmt initializer;
+        int initializer;
         if (match(SEMICOLON)) {
-            initializer = null;
+            initializer = -1;
         } else if (match(VAR)) {
             initializer = varDeclaration();
         } else {
             initializer = expressionStatement();
         }
 
-        Expr condition = null;
+        int condition = -1;
         if (!check(SEMICOLON)) {
             condition = expression();
         }
-        consume(SEMICOLON, "Expect ';' after loop condition.");
+        expect(SEMICOLON, "Expect ';' after loop condition.");
 
-        Expr increment = null;
+        int increment = -1;
         if (!check(RIGHT_PAREN)) {
             increment = expression();
         }
-        consume(RIGHT_PAREN, "Expect ')' after for clause.");
+        expect(RIGHT_PAREN, "Expect ')' after for clause.");
 
         inControlFlow = true;
-        Stmt body = statement();
+        int body = statement();
         inControlFlow = false;
 
-        return new Stmt.For(initializer, condition, increment, body);
+        return ast.addForStmt(initializer, condition, increment, body);
     }
 
-    private Stmt ifStatement() {
-        consume(LEFT_PAREN, "Expect '(' after 'if'.");
-        Expr condition = expression();
-        consume(RIGHT_PAREN, "Expect ')' after if condition.");
+    private int ifStatement() {
+        expect(LEFT_PAREN, "Expect '(' after 'if'.");
+        int condition = expression();
+        expect(RIGHT_PAREN, "Expect ')' after if condition.");
 
-        Stmt thenBranch = statement();
-        Stmt elseBranch = null;
+        int thenBranch = statement();
+        int elseBranch = -1;
         if (match(ELSE)) {
             elseBranch = statement();
         }
 
-        return new Stmt.If(condition, thenBranch, elseBranch);
+        return ast.addIfStmt(condition, thenBranch, elseBranch);
     }
 
-    private Stmt printStatement() {
-        Expr value = expression();
-        consume(SEMICOLON, "Expect ';' after value.");
-        return new Stmt.Print(value);
+    private int printStatement() {
+        int value = expression();
+        expect(SEMICOLON, "Expect ';' after value.");
+        return ast.addPrintStmt(value);
     }
 
-    private Stmt whileStatement() {
-        consume(LEFT_PAREN, "Expect '(' after a 'while'.");
-        Expr condition = expression();
-        consume(RIGHT_PAREN, "Expect ')' after condition.");
+    private int whileStatement() {
+        expect(LEFT_PAREN, "Expect '(' after a 'while'.");
+        int condition = expression();
+        expect(RIGHT_PAREN, "Expect ')' after condition.");
         inControlFlow = true;
-        Stmt body = statement();
+        int body = statement();
         inControlFlow = false;
 
-        return new Stmt.While(condition, body);
+        return ast.addWhileStmt(condition, body);
     }
 
-    private List<Stmt> block() {
-        List<Stmt> statements = new ArrayList<>();
+    private int block() {
+        Nodes statements = new Nodes();
 
         while (!check(RIGHT_BRACE) && !isAtEnd()) {
             statements.add(declaration());
         }
 
-        consume(RIGHT_BRACE, "Expect '}' aft3er block.");
+        expect(RIGHT_BRACE, "Expect '}' aft3er block.");
 
-        return statements;
+        return list(statements);
     }
 
-    private Stmt expressionStatement() {
-        Expr expr = expression();
-        consume(SEMICOLON, "Expect ';' after expression.");
-        return new Stmt.Expression(expr);
+    private int expressionStatement() {
+        int expr = expression();
+        expect(SEMICOLON, "Expect ';' after expression.");
+        return ast.addExpressionStmt(expr);
     }
 
 
-    private Expr expression() {
+    private int expression() {
         return comma();
     }
 
-    private Expr expressionNoComma() {
+    private int expressionNoComma() {
         return assignment();
     }
 
-    private Expr comma() {
-        Expr expr = assignment();
+    private int comma() {
+        int expr = assignment();
         while (match(COMMA)) {
-            expr = new Expr.CommaGroup(expr, assignment());
+            expr = ast.addCommaGroupExpr(expr, assignment());
         }
         return expr;
     }
 
-    private Expr assignment() {
-        Expr expr = or();
+    private int assignment() {
+        int expr = or();
 
         if (match(EQUAL)) {
-            Token equals = previous();
-            Expr value = ternary();
-
-            if (expr instanceof Expr.Variable var) {
-                return new Expr.Assign(var.name, var, value);
-            } else if (expr instanceof Expr.Get get) {
-                return new Expr.Set(get.object, get.name, value);
+            int target = ast.kind(expr);
+            // the '=' is only kept to report a target that cannot be assigned
+            Token equals = target == FlatAst.VARIABLE_EXPR || target == FlatAst.GET_EXPR
+                    || target == FlatAst.INDEX_EXPR ? null : previous();
+            int value = ternary();
+
+            if (target == FlatAst.VARIABLE_EXPR) {
+                return ast.addAssignExpr(ast.variableName(expr), expr, value);
+            } else if (target == FlatAst.GET_EXPR) {
+                return ast.addSetExpr(ast.getObject(expr), ast.getName(expr), value);
+            } else if (target == FlatAst.INDEX_EXPR) {
+                return ast.addSetIndexExpr(ast.indexObject(expr), ast.indexBracket(expr),
+                        ast.indexIndex(expr), value);
             }
 
             error(equals, "Invalid assignment target.");
@@ -290,115 +354,119 @@ public class Parser {
         return expr;
     }
 
-    private Expr or() {
-        Expr expr = and();
+    private int or() {
+        int expr = and();
 
         while (match(OR)) {
             Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
+            int right = and();
+            expr = ast.addLogicalExpr(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr and() {
-        Expr expr = ternary();
+    private int and() {
+        int expr = ternary();
 
         if (match(AND)) {
             Token operator = previous();
-            Expr right = ternary();
-            expr = new Expr.Logical(expr, operator, right);
+            int right = ternary();
+            expr = ast.addLogicalExpr(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr ternary() {
-        Expr expr = equality();
+    private int ternary() {
+        int expr = equality();
         if (match(QUESTION)) {
-            Expr trueVal = equality();
-            consume(COLON, "Expected ': in ternary");
-            Expr falseVal = equality();
-            return new Expr.Ternary(expr, trueVal, falseVal);
+            int trueVal = equality();
+            expect(COLON, "Expected ': in ternary");
+            int falseVal = equality();
+            return ast.addTernaryExpr(expr, trueVal, falseVal);
         }
         return expr;
     }
 
-    private Expr equality() {
-        Expr expr = comparison();
+    private int equality() {
+        int expr = comparison();
 
         while (match(BANG_EQUAL, EQUAL_EQUAL)) {
             Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+            int right = comparison();
+            expr = ast.addBinaryExpr(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr comparison() {
-        Expr expr = term();
+    private int comparison() {
+        int expr = term();
 
         while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
             Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+            int right = term();
+            expr = ast.addBinaryExpr(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr term() {
-        Expr expr = factor();
+    private int term() {
+        int expr = factor();
 
         while (match(MINUS, PLUS)) {
             Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+            int right = factor();
+            expr = ast.addBinaryExpr(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr factor() {
-        Expr expr = unary();
+    private int factor() {
+        int expr = unary();
 
         while (match(SLASH, STAR)) {
             Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+            int right = unary();
+            expr = ast.addBinaryExpr(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr unary() {
+    private int unary() {
         if (match(BANG, MINUS)) {
             Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+            int right = unary();
+            return ast.addUnaryExpr(operator, right);
         }
 
         return fun();
     }
 
-    private Expr fun() {
+    private int fun() {
         if (match(FUN)) {
-            return new Expr.AnonFunction(function("function"));
+            return ast.addAnonFunctionExpr(function("function"));
         }
 
         return call();
     }
 
-    private Expr call() {
-        Expr expr = primary();
+    private int call() {
+        int expr = primary();
         while (true) {
             if (match(LEFT_PAREN)) {
                 expr = finishCall(expr);
             } else if (match(DOT)) {
                 Token name = consume(IDENTIFIER, "Expect property name after '.'.");
-                expr = new Expr.Get(expr, name);
+                expr = ast.addGetExpr(expr, name);
+            } else if (match(LEFT_BRACKET)) {
+                int index = expression();
+                Token bracket = consume(RIGHT_BRACKET, "Expect ']' after index.");
+                expr = ast.addIndexExpr(expr, bracket, index);
             } else {
                 break;
             }
@@ -407,51 +475,78 @@ public class Parser {
         return expr;
     }
 
-    private Expr finishCall(Expr callee) {
-        List<Expr> arguments = new ArrayList<>();
+    private int finishCall(int callee) {
+        Nodes arguments = new Nodes();
         if (!check(RIGHT_PAREN)) {
             do {
-                if (arguments.size() >= 255) {
+                if (arguments.count >= 255) {
                     error(peek(), "Can't have more than 255 arguments.");
                 }
                 if (match(FUN)) {
-                    arguments.add(new Expr.AnonFunction(function("function")));
+                    arguments.add(ast.addAnonFunctionExpr(function("function")));
                     continue;
                 }
-                Expr arg = expressionNoComma();
+                int arg = expressionNoComma();
                 arguments.add(arg);
             } while(match(COMMA));
         }
 
         Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
 
-        return new Expr.Call(callee, paren, arguments);
+        return ast.addCallExpr(callee, paren, list(arguments));
     }
 
-    private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NIL)) return new Expr.Literal(null);
+    private int primary() {
+        if (match(FALSE)) return ast.addLiteralExpr(false);
+        if (match(TRUE)) return ast.addLiteralExpr(true);
+        if (match(NIL)) return ast.addLiteralExpr(null);
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal());
+            return ast.addLiteralExpr(tokens.literal(previous));
         }
 
         if (match(THIS)) {
-            return new Expr.This(previous());
+            return ast.addThisExpr(previous(), null, -1);
         }
 
         if (match(IDENTIFIER)) {
-            return new Expr.Variable(previous(), -1, -1);
+            return ast.addVariableExpr(previous(), null, -1);
         }
 
         if (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+            int expr = expression();
+            expect(RIGHT_PAREN, "Expect ')' after expression.");
+            return ast.addGroupingExpr(expr);
+        }
+
+        if (match(LEFT_BRACKET)) {
+            Nodes elements = new Nodes();
+            if (!check(RIGHT_BRACKET)) {
+                do {
+                    elements.add(expressionNoComma());
+                } while (match(COMMA));
+            }
+            Token bracket = consume(RIGHT_BRACKET, "Expect ']' after array elements.");
+            return ast.addArrayLiteralExpr(bracket, list(elements));
+        }
+
+        // only reached where a statement cannot start, so never a block
+        if (match(LEFT_BRACE)) {
+            Nodes keys = new Nodes();
+            Nodes values = new Nodes();
+            if (!check(RIGHT_BRACE)) {
+                do {
+                    keys.add(expressionNoComma());
+                    expect(COLON, "Expect ':' after map key.");
+                    values.add(expressionNoComma());
+                } while (match(COMMA));
+            }
+            Token brace = consume(RIGHT_BRACE, "Expect '}' after map entries.");
+            return ast.addMapLiteralExpr(brace, list(keys), list(values));
         }
 
-        Token tok = advance();
+        advance();
+        Token tok = previous();
         if (tok.isBinaryOp() && !tok.isUnaryOp()) {
             advance();
             throw error(peek(), "Binary operator expects left operand");
@@ -465,9 +560,9 @@ public class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type() == SEMICOLON) return;
+            if (tokens.type(previous) == SEMICOLON) return;
 
-            switch (peek().type()) {
+            switch (tokens.type(current)) {
                 case CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN -> {
                     return;
                 }
@@ -4,7 +4,11 @@ import com.puritylake.lox.Lox;
 
 import java.util.*;
 
-public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+/**
+ * Works out where every variable of a parsed program lives, writing the
+ * slots, upvalues and frame layouts into the arena's nodes.
+ */
+public class Resolver implements FlatAst.ExprCursor<Void>, FlatAst.StmtCursor<Void> {
     private enum FunctionType {
         NONE, FUNCTION, METHOD
     }
@@ -22,57 +26,109 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private static class StackEntry {
-        public String name;
+        public int symbol;
         public ResolverEntry entry;
+        public Slot slot = null;
 
-        StackEntry(String name, ResolverEntry entry) {
-            this.name = name;
+        StackEntry(int symbol, ResolverEntry entry) {
+            this.symbol = symbol;
             this.entry = entry;
         }
     }
 
+    // the function whose frame the scopes from depth onwards live in
+    private static class FrameScope {
+        public final FrameScope enclosing;
+        public final int depth;
+        public final FrameLayout layout;
+        public int locals = 0;
+
+        FrameScope(FrameScope enclosing, int depth, FrameLayout layout) {
+            this.enclosing = enclosing;
+            this.depth = depth;
+            this.layout = layout;
+        }
+
+        Slot allocate() {
+            Slot slot = new Slot(locals++);
+            layout.slots = Math.max(layout.slots, locals);
+            return slot;
+        }
+    }
+
+    private final FlatAst ast;
     private List<StackEntry> lastPoppedScope = null;
 
     private final Stack<List<StackEntry>> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
+    private FrameScope frame = null;
+    private int slots = 0;
+    private final List<String> warnings = new ArrayList<>();
+
+    public Resolver(FlatAst ast) {
+        this.ast = ast;
+    }
 
     private void beginScope() {
         scopes.push(new ArrayList<>());
     }
 
-    public void resolve(List<Stmt> statements) throws Exception {
+    // statements is the list the parser returned
+    public void resolve(int statements) throws Exception {
+        // the outermost scope holds the globals, blocks around it get a
+        // frame of their own
         beginScope();
-        for (Stmt statement : statements) {
-            resolve(statement);
-        }
-        endScope(null);
+        frame = new FrameScope(null, 1, new FrameLayout());
+        resolveBlock(statements);
+        endScope();
+        slots = frame.layout.slots;
+        frame = null;
+    }
+
+    /**
+     * The size of the frame the top level code of the last resolved
+     * program runs in.
+     */
+    public int slots() {
+        return slots;
+    }
+
+    // the warnings reported so far, as they were printed
+    public List<String> warnings() {
+        return warnings;
     }
 
-    private void resolveBlock(List<Stmt> statements) throws Exception {
-        for (Stmt statement : statements) {
-            resolve(statement);
+    private void resolveBlock(int statements) throws Exception {
+        for (int i = 0; i < ast.length(statements); ++i) {
+            resolveStmt(ast.element(statements, i));
         }
     }
 
-    private void resolve(Stmt statement) throws Exception {
-        statement.accept(this);
+    private void resolveStmt(int statement) throws Exception {
+        ast.acceptStmt(statement, this);
     }
 
-    private void resolve(Expr expr) throws Exception {
-        expr.accept(this);
+    private void resolveExpr(int expr) throws Exception {
+        ast.acceptExpr(expr, this);
     }
 
-    private void endScope(Token ignore) {
+    private void endScope() {
         lastPoppedScope = scopes.pop();
-        checkUnusedLocals(ignore);
+        for (StackEntry se : lastPoppedScope) {
+            if (se.slot != null) --frame.locals;
+        }
+        checkUnusedLocals();
     }
 
-    private void checkUnusedLocals(Token ignore) {
+    private void checkUnusedLocals() {
         if (lastPoppedScope != null) {
             List<StackEntry> scope = lastPoppedScope;
             for (StackEntry se : scope) {
-                if (se.entry.token != ignore && !se.entry.used) {
-                    System.err.printf("[line %d] local variable '%s' is unused.\n", se.entry.token.line(), se.entry.token.lexeme());
+                if (!se.entry.used) {
+                    String warning = String.format("[line %d] local variable '%s' is unused.",
+                            se.entry.token.line(), se.entry.token.lexeme());
+                    System.err.println(warning);
+                    warnings.add(warning);
                 }
             }
         }
@@ -80,42 +136,67 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        StackEntry entry = getByName(name.lexeme());
+        StackEntry entry = getBySymbol(name.symbol());
         if (entry != null) {
             entry.entry.defined = true;
         }
     }
 
-    private StackEntry getByName(String name) {
+    private StackEntry getBySymbol(int symbol) {
         List<StackEntry> top = scopes.peek();
         for (StackEntry se : top) {
-            if (se.entry.token.lexeme().equals(name)) {
+            if (se.symbol == symbol) {
                 return se;
             }
         }
         return null;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
+    // returns the declaration's slot in its frame, or null for a global
+    private Slot declare(Token name) {
+        if (scopes.isEmpty()) return null;
 
-        if (getByName(name.lexeme()) != null) {
+        if (getBySymbol(name.symbol()) != null) {
             Lox.error(name, "Already a variable with this name in this scope.");
         }
-        List<StackEntry> scope = scopes.peek();
-        scope.add(new StackEntry(name.lexeme(), new ResolverEntry(name, false, false)));
+        StackEntry entry = new StackEntry(name.symbol(), new ResolverEntry(name, false, false));
+        if (scopes.size() > 1) {
+            entry.slot = frame.allocate();
+        }
+        scopes.peek().add(entry);
+        return entry.slot;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    // expr is the variable or this expression reading name
+    private void resolveLocal(int expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; --i) {
             List<StackEntry> scope = scopes.get(i);
             for (int idx = 0; idx < scope.size(); ++idx) {
                 StackEntry se = scope.get(idx);
-                if (se.name.equals(name.lexeme())) {
+                if (se.symbol == name.symbol()) {
                     se.entry.used = true;
-                    if (expr instanceof Expr.Variable var) {
-                        var.idx = idx;
-                        var.depth = scopes.size() - 1 - i;
+                    // the outermost scope only exists for the diagnostics,
+                    // its names live in the globals
+                    if (i == 0) return;
+
+                    FrameScope owner = frame;
+                    while (owner.depth > i) {
+                        owner = owner.enclosing;
+                    }
+                    Slot slot = null;
+                    int upvalue = -1;
+                    if (owner == frame) {
+                        slot = se.slot;
+                    } else {
+                        se.slot.captured = true;
+                        upvalue = upvalue(frame, owner, se.slot);
+                    }
+                    if (ast.kind(expr) == FlatAst.VARIABLE_EXPR) {
+                        ast.setVariableSlot(expr, slot);
+                        ast.setVariableUpvalue(expr, upvalue);
+                    } else {
+                        ast.setThisSlot(expr, slot);
+                        ast.setThisUpvalue(expr, upvalue);
                     }
                     return;
                 }
@@ -123,230 +204,298 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
     }
 
-    private void resolveFunction(Stmt.Function function, FunctionType type) throws Exception {
+    // the index of fn's upvalue for a slot of owner's frame, threading it
+    // through every function in between
+    private int upvalue(FrameScope fn, FrameScope owner, Slot slot) {
+        FrameLayout.Upvalue upvalue = fn.enclosing == owner
+                ? new FrameLayout.Upvalue(true, slot.index)
+                : new FrameLayout.Upvalue(false, upvalue(fn.enclosing, owner, slot));
+        List<FrameLayout.Upvalue> upvalues = fn.layout.upvalues;
+        int index = upvalues.indexOf(upvalue);
+        if (index == -1) {
+            index = upvalues.size();
+            upvalues.add(upvalue);
+        }
+        return index;
+    }
+
+    private void resolveFunction(int function, FunctionType type) throws Exception {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
 
         beginScope();
-        for (Token param : function.params) {
-            declare(param);
+        FrameLayout layout = new FrameLayout();
+        ast.setFunctionLayout(function, layout);
+        frame = new FrameScope(frame, scopes.size() - 1, layout);
+        int params = ast.functionParams(function);
+        for (int i = 0; i < ast.length(params); ++i) {
+            Token param = ast.token(params, i);
+            layout.params.add(declare(param));
             define(param);
         }
-        resolveBlock(function.body);
-        endScope(function.name);
-        currentFunction = enclosingFunction;
-    }
-
-    private void resolveClass(Stmt.Class klass) throws Exception {
-        beginScope();
-        scopes.peek().add(new StackEntry("this",
-                new ResolverEntry(
-                        new Token(TokenType.THIS, "this", null, klass.name.line()),
-                        true,
-                        true
-                )));
-        for (Stmt.Function func :  klass.methods) {
-            resolveFunction(func, FunctionType.METHOD);
+        if (type == FunctionType.METHOD) {
+            // the receiver comes in the slot after the parameters
+            Token token = new Token(TokenType.THIS, "this", null, ast.functionName(function).line());
+            StackEntry self = new StackEntry(token.symbol(),
+                    new ResolverEntry(token, true, true));
+            self.slot = frame.allocate();
+            scopes.peek().add(self);
+            layout.receiver = self.slot;
         }
-        endScope(klass.name);
+        resolveBlock(ast.functionBody(function));
+        endScope();
+        frame = frame.enclosing;
+        currentFunction = enclosingFunction;
     }
 
     @Override
-    public Void visitAssignExpr(Expr.Assign expr) throws Exception {
-        resolve(expr.value);
-        resolveLocal(expr, expr.name);
+    public Void visitAssignExpr(int expr) throws Exception {
+        resolveExpr(ast.assignValue(expr));
+        int var = ast.assignVar(expr);
+        resolveLocal(var, ast.assignName(expr));
+        Slot slot = ast.variableSlot(var);
+        if (slot != null) {
+            ++slot.assignments;
+        }
         return null;
     }
 
     @Override
-    public Void visitBinaryExpr(Expr.Binary expr) throws Exception {
-        resolve(expr.left);
-        resolve(expr.right);
+    public Void visitBinaryExpr(int expr) throws Exception {
+        resolveExpr(ast.binaryLeft(expr));
+        resolveExpr(ast.binaryRight(expr));
         return null;
     }
 
     @Override
-    public Void visitCallExpr(Expr.Call expr) throws Exception {
-        resolve(expr.callee);
+    public Void visitCallExpr(int expr) throws Exception {
+        resolveExpr(ast.callCallee(expr));
 
-        for (Expr argument : expr.arguments) {
-            resolve(argument);
-        }
+        resolveExprs(ast.callArguments(expr));
 
         return null;
     }
 
+    private void resolveExprs(int exprs) throws Exception {
+        for (int i = 0; i < ast.length(exprs); ++i) {
+            resolveExpr(ast.element(exprs, i));
+        }
+    }
+
     @Override
-    public Void visitGetExpr(Expr.Get expr) throws Exception {
-        resolve(expr.object);
+    public Void visitGetExpr(int expr) throws Exception {
+        resolveExpr(ast.getObject(expr));
         return null;
     }
 
     @Override
-    public Void visitGroupingExpr(Expr.Grouping expr) throws Exception {
-        resolve(expr.expression);
+    public Void visitGroupingExpr(int expr) throws Exception {
+        resolveExpr(ast.groupingExpression(expr));
         return null;
     }
 
     @Override
-    public Void visitLiteralExpr(Expr.Literal expr)  {
+    public Void visitLiteralExpr(int expr)  {
         return null;
     }
 
     @Override
-    public Void visitLogicalExpr(Expr.Logical expr) throws Exception {
-        resolve(expr.left);
-        resolve(expr.right);
+    public Void visitLogicalExpr(int expr) throws Exception {
+        resolveExpr(ast.logicalLeft(expr));
+        resolveExpr(ast.logicalRight(expr));
         return null;
     }
 
     @Override
-    public Void visitSetExpr(Expr.Set expr) throws Exception {
-        resolve(expr.value);
-        resolve(expr.object);
+    public Void visitSetExpr(int expr) throws Exception {
+        resolveExpr(ast.setValue(expr));
+        resolveExpr(ast.setObject(expr));
         return null;
     }
 
     @Override
-    public Void visitThisExpr(Expr.This expr) throws Exception {
-        resolveLocal(expr, expr.keyword);
+    public Void visitThisExpr(int expr) throws Exception {
+        resolveLocal(expr, ast.thisKeyword(expr));
         return null;
     }
 
     @Override
-    public Void visitUnaryExpr(Expr.Unary expr) throws Exception {
-        resolve(expr.right);
+    public Void visitUnaryExpr(int expr) throws Exception {
+        resolveExpr(ast.unaryRight(expr));
         return null;
     }
 
     @Override
-    public Void visitCommaGroupExpr(Expr.CommaGroup expr) throws Exception {
-        resolve(expr.left);
-        resolve(expr.right);
+    public Void visitCommaGroupExpr(int expr) throws Exception {
+        resolveExpr(ast.commaGroupLeft(expr));
+        resolveExpr(ast.commaGroupRight(expr));
         return null;
     }
 
     @Override
-    public Void visitTernaryExpr(Expr.Ternary expr) throws Exception {
-        resolve(expr.cond);
-        resolve(expr.trueVal);
-        resolve(expr.falseVal);
+    public Void visitTernaryExpr(int expr) throws Exception {
+        resolveExpr(ast.ternaryCond(expr));
+        resolveExpr(ast.ternaryTrueVal(expr));
+        resolveExpr(ast.ternaryFalseVal(expr));
         return null;
     }
 
     @Override
-    public Void visitVariableExpr(Expr.Variable expr) {
+    public Void visitVariableExpr(int expr) {
+        Token name = ast.variableName(expr);
         if (!scopes.isEmpty()) {
-            StackEntry se = getByName(expr.name.lexeme());
+            StackEntry se = getBySymbol(name.symbol());
             if (se != null) {
                 if (se.entry != null && se.entry.defined == Boolean.FALSE) {
-                    Lox.error(expr.name, "Can't read local variable in its own initializer.");
+                    Lox.error(name, "Can't read local variable in its own initializer.");
                 }
             }
         }
 
-        resolveLocal(expr, expr.name);
+        resolveLocal(expr, name);
         return null;
     }
 
     @Override
-    public Void visitAnonFunctionExpr(Expr.AnonFunction expr) throws Exception {
-        resolveFunction((Stmt.Function)expr.func, FunctionType.FUNCTION);
+    public Void visitAnonFunctionExpr(int expr) throws Exception {
+        resolveFunction(ast.anonFunctionFunc(expr), FunctionType.FUNCTION);
         return null;
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) throws Exception {
-        beginScope();
-        resolveBlock(stmt.statements);
-        endScope(null);
+    public Void visitArrayLiteralExpr(int expr) throws Exception {
+        resolveExprs(ast.arrayLiteralElements(expr));
         return null;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) throws Exception {
-        declare(stmt.name);
-        define(stmt.name);
+    public Void visitMapLiteralExpr(int expr) throws Exception {
+        int keys = ast.mapLiteralKeys(expr);
+        int values = ast.mapLiteralValues(expr);
+        for (int i = 0; i < ast.length(keys); ++i) {
+            resolveExpr(ast.element(keys, i));
+            resolveExpr(ast.element(values, i));
+        }
+        return null;
+    }
 
-        resolveClass(stmt);
+    @Override
+    public Void visitIndexExpr(int expr) throws Exception {
+        resolveExpr(ast.indexObject(expr));
+        resolveExpr(ast.indexIndex(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(int expr) throws Exception {
+        resolveExpr(ast.setIndexObject(expr));
+        resolveExpr(ast.setIndexIndex(expr));
+        resolveExpr(ast.setIndexValue(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(int stmt) throws Exception {
+        beginScope();
+        resolveBlock(ast.blockStatements(stmt));
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(int stmt) throws Exception {
+        Token name = ast.className(stmt);
+        ast.setClassSlot(stmt, declare(name));
+        define(name);
+
+        int methods = ast.classMethods(stmt);
+        for (int i = 0; i < ast.length(methods); ++i) {
+            resolveFunction(ast.element(methods, i), FunctionType.METHOD);
+        }
 
         return null;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) throws Exception {
-        resolve(stmt.expression);
+    public Void visitExpressionStmt(int stmt) throws Exception {
+        resolveExpr(ast.expressionExpression(stmt));
         return null;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) throws Exception {
-        declare(stmt.name);
-        define(stmt.name);
+    public Void visitFunctionStmt(int stmt) throws Exception {
+        Token name = ast.functionName(stmt);
+        ast.setFunctionSlot(stmt, declare(name));
+        define(name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
         return null;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) throws Exception {
-        resolve(stmt.condition);
-        resolve(stmt.thenBranch);
-        if (stmt.elseBranch != null) {
-            resolve(stmt.elseBranch);
+    public Void visitIfStmt(int stmt) throws Exception {
+        resolveExpr(ast.ifCondition(stmt));
+        resolveStmt(ast.ifThenBranch(stmt));
+        if (ast.ifElseBranch(stmt) != -1) {
+            resolveStmt(ast.ifElseBranch(stmt));
         }
         return null;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) throws Exception {
-        resolve(stmt.expression);
+    public Void visitPrintStmt(int stmt) throws Exception {
+        resolveExpr(ast.printExpression(stmt));
         return null;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) throws Exception {
-        if (stmt.value != null)  {
-            resolve(stmt.value);
+    public Void visitReturnStmt(int stmt) throws Exception {
+        int value = ast.returnValue(stmt);
+        if (value != -1)  {
+            resolveExpr(value);
         }
+        // nothing is left to do in the frame once the call returns
+        ast.setReturnTail(stmt, value != -1 && ast.kind(value) == FlatAst.CALL_EXPR
+                && currentFunction != FunctionType.NONE);
         return null;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) throws Exception {
-        declare(stmt.name);
-        if (stmt.initializer != null) {
-            resolve(stmt.initializer);
+    public Void visitVarStmt(int stmt) throws Exception {
+        Token name = ast.varName(stmt);
+        ast.setVarSlot(stmt, declare(name));
+        if (ast.varInitializer(stmt) != -1) {
+            resolveExpr(ast.varInitializer(stmt));
         }
-        define(stmt.name);
+        define(name);
         return null;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) throws Exception {
-        resolve(stmt.condition);
-        resolve(stmt.body);
+    public Void visitWhileStmt(int stmt) throws Exception {
+        resolveExpr(ast.whileCondition(stmt));
+        resolveStmt(ast.whileBody(stmt));
         return null;
     }
 
     @Override
-    public Void visitForStmt(Stmt.For stmt) throws Exception {
+    public Void visitForStmt(int stmt) throws Exception {
         beginScope();
-        resolve(stmt.init);
-        resolve(stmt.cond);
-        resolve(stmt.post);
-        resolve(stmt.body);
-        endScope(null);
+        if (ast.forInit(stmt) != -1) resolveStmt(ast.forInit(stmt));
+        if (ast.forCond(stmt) != -1) resolveExpr(ast.forCond(stmt));
+        if (ast.forPost(stmt) != -1) resolveExpr(ast.forPost(stmt));
+        resolveStmt(ast.forBody(stmt));
+        endScope();
         return null;
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
+    public Void visitBreakStmt(int stmt) {
         return null;
     }
 
     @Override
-    public Void visitContinueStmt(Stmt.Continue stmt) {
+    public Void visitContinueStmt(int stmt) {
         return null;
     }
 }
@@ -2,9 +2,17 @@ package com.puritylake.lox.parsing;
 
 public class RuntimeError extends RuntimeException {
     public final Token token;
+    public final int line;
 
     public RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line();
+    }
+
+    public RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
@@ -1,70 +1,134 @@
 package com.puritylake.lox.parsing;
 
-import com.puritylake.lox.Lox;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 import static com.puritylake.lox.parsing.TokenType.*;
 
-public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+/**
+ * Scans UTF-8 source straight out of a byte buffer, usually the script
+ * file mapped into memory, without decoding it first. Tokens are written
+ * to a {@link TokenBuffer} as their position in the source, so nothing is
+ * copied out while scanning except the first occurrence of each
+ * identifier. Outside of string literals and comments Lox is ASCII, so
+ * everything else is compared byte by byte.
+ * <p>
+ * A file is mapped a window at a time. When scanning runs off the end of
+ * one, the next is mapped from the start of the token being scanned, and
+ * offsets start again from there, so a file of any size can be scanned as
+ * long as no single token is longer than a window.
+ */
+public class Scanner implements TokenStream {
+    private static final int BATCH_SIZE = 1024;
+    private static final int WINDOW = 1 << 30;
+
+    private static final TokenType[] KEYWORDS = {
+            AND, CLASS, ELSE, FALSE, FOR, FUN, IF, NIL, OR,
+            PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE, BREAK, CONTINUE
+    };
+
+    // the file being mapped, or null when the whole source is in memory
+    private final FileChannel file;
+    private final long size;
+    private final int window;
+    // where in the file the mapped window starts
+    private long base = 0;
+    private ByteBuffer source;
+    private int length;
+    private TokenBuffer tokens = null;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",     AND);
-        keywords.put("class",   CLASS);
-        keywords.put("else",    ELSE);
-        keywords.put("false",   FALSE);
-        keywords.put("for",     FOR);
-        keywords.put("fun",     FUN);
-        keywords.put("if",      IF);
-        keywords.put("nil",     NIL);
-        keywords.put("or",      OR);
-        keywords.put("print",   PRINT);
-        keywords.put("return",  RETURN);
-        keywords.put("super",   SUPER);
-        keywords.put("this",    THIS);
-        keywords.put("true",    TRUE);
-        keywords.put("var",     VAR);
-        keywords.put("while",   WHILE);
-        keywords.put("break",   BREAK);
-        keywords.put("continue", CONTINUE);
+    // every identifier seen so far with its symbol, so a name is made into
+    // a string and interned only once
+    private String[] names = new String[1024];
+    private int[] symbols = new int[1024];
+    private int nameCount = 0;
+
+    public Scanner(ByteBuffer source) {
+        this.file = null;
+        this.size = source.limit();
+        this.window = source.limit();
+        this.source = source;
+        this.length = source.limit();
     }
 
     public Scanner(String source) {
-        this.source = source;
+        this(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
     }
 
-    public List<Token> scanTokens() {
-        while (!isAtEnd()) {
-            start =  current;
-            scanToken();
+    /**
+     * Scans the file a window at a time; the channel must stay open until
+     * the last batch has been scanned.
+     */
+    public Scanner(FileChannel file) throws IOException {
+        this(file, WINDOW);
+    }
+
+    Scanner(FileChannel file, int window) throws IOException {
+        this.file = file;
+        this.size = file.size();
+        this.window = window;
+        map(0);
+    }
+
+    private void map(long offset) throws IOException {
+        base = offset;
+        source = file.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+        length = source.limit();
+    }
+
+    // maps the next window once the scan reaches the end of this one,
+    // keeping the current token; false at the end of the source
+    private boolean slide() {
+        if (base + length >= size || start == 0) return false;
+        try {
+            map(base + start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        current -= start;
+        start = 0;
+        return true;
+    }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+    @Override
+    public TokenBuffer buffer() {
+        return new TokenBuffer();
+    }
+
+    @Override
+    public void fill(TokenBuffer tokens) {
+        this.tokens = tokens;
+        int end = tokens.count() + BATCH_SIZE;
+        while (tokens.count() < end) {
+            start = current;
+            if (isAtEnd()) {
+                tokens.add(EOF, source, current, 0, line, -1);
+                break;
+            }
+            scanToken();
+        }
+        this.tokens = null;
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= length && !slide();
     }
 
     private void scanToken() {
-        char c = advance();
+        byte c = advance();
         switch (c) {
             case '(': addToken(LEFT_PAREN); break;
             case ')': addToken(RIGHT_PAREN); break;
             case '{': addToken(LEFT_BRACE); break;
             case '}': addToken(RIGHT_BRACE); break;
+            case '[': addToken(LEFT_BRACKET); break;
+            case ']': addToken(RIGHT_BRACKET); break;
             case ',': addToken(COMMA); break;
             case '.': addToken(DOT); break;
             case '-': addToken(MINUS); break;
@@ -72,7 +136,7 @@ public class Scanner {
             case ';': addToken(SEMICOLON); break;
             case '*': addToken(STAR); break;
             case '?': addToken(QUESTION); break;
-            case ':': addToken(COLON);  break;
+            case ':': addToken(COLON); break;
             case '!':
                 addToken(match('=') ? BANG_EQUAL : BANG);
                 break;
@@ -87,26 +151,17 @@ public class Scanner {
                 break;
             case '/':
                 if (match('/')) {
-                    while (peek() != '\n' && !isAtEnd()) advance();
-                } else if (match('*')) {
-                    int depth = 1;
-                    while (!isAtEnd() && depth != 0) {
-                        char ch = advance();
-                        if (ch == '/') {
-                            if (match('*')) { // new brace
-                                ++depth;
-                            }
-                        } else if (ch == '*') {
-                            if (match('/')) { //  end of brace
-                                --depth;
-                            }
-                        } else if (ch == '\n') {
-                            line++;
-                        }
+                    while (peek() != '\n' && !isAtEnd()) {
+                        // nothing in a comment is kept, so a window may end in it
+                        start = current;
+                        advance();
                     }
-                }   else {
+                } else if (match('*')) {
+                    blockComment();
+                } else {
                     addToken(SLASH);
                 }
+                break;
             case ' ':
             case '\r':
             case '\t':
@@ -121,77 +176,91 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    // one error per character, not per byte of it
+                    while (!isAtEnd() && (peek() & 0xc0) == 0x80) advance();
+                    tokens.addError("Unexpected character.", line);
                 }
         }
     }
 
-    private char advance() {
-        return source.charAt(current++);
+    private void blockComment() {
+        int depth = 1;
+        while (!isAtEnd() && depth != 0) {
+            start = current;
+            byte ch = advance();
+            if (ch == '/') {
+                if (match('*')) ++depth;
+            } else if (ch == '*') {
+                if (match('/')) --depth;
+            } else if (ch == '\n') {
+                line++;
+            }
+        }
+    }
+
+    private byte advance() {
+        return source.get(current++);
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
+        addToken(type, -1);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void addToken(TokenType type, int symbol) {
+        tokens.add(type, source, start, current - start, line, symbol);
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source .charAt(current) != expected) return false;
+        if (source.get(current) != expected) return false;
 
         current++;
         return true;
     }
 
-    private char peek() {
+    private byte peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return source.get(current);
     }
 
-    private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+    private byte peekNext() {
+        if (current + 1 >= length && (!slide() || current + 1 >= length)) return '\0';
+        return source.get(current + 1);
     }
 
-    private boolean isDigit(char c) {
+    private boolean isDigit(byte c) {
         return c >= '0' && c <= '9';
     }
 
-    private boolean isAlpha(char c) {
-        return (c >= 'a' & c <= 'z') ||
+    private boolean isAlpha(byte c) {
+        return (c >= 'a' && c <= 'z') ||
                (c >= 'A' && c <= 'Z') ||
                 c == '_';
     }
 
-    private boolean isAlphanumeric(char c) {
+    private boolean isAlphanumeric(byte c) {
         return isAlpha(c) || isDigit(c);
     }
 
     private void string() {
+        // strings may span lines; the token is reported on its last one
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n') line++;
             advance();
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            tokens.addError("Unterminated string.", line);
             return;
         }
 
         // the closing "
         advance();
-
-        // Trim surrounding quotes
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        addToken(STRING);
     }
 
     private void number() {
-        while(isDigit(peek())) advance();
+        while (isDigit(peek())) advance();
 
         if (peek() == '.' && isDigit(peekNext())) {
             advance();
@@ -199,15 +268,67 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER);
     }
 
     private void identifier() {
-        while(isAlphanumeric(peek())) advance();
+        while (isAlphanumeric(peek())) advance();
+
+        for (TokenType keyword : KEYWORDS) {
+            if (matches(keyword.text, start, current - start)) {
+                addToken(keyword);
+                return;
+            }
+        }
+        addToken(IDENTIFIER, symbol());
+    }
+
+    private int symbol() {
+        int length = current - start;
+        int hash = 0;
+        for (int i = start; i < current; ++i) {
+            hash = 31 * hash + source.get(i);
+        }
+        int mask = names.length - 1;
+        int i = hash & mask;
+        while (names[i] != null) {
+            String name = names[i];
+            if (name.hashCode() == hash && matches(name, start, length)) {
+                return symbols[i];
+            }
+            i = (i + 1) & mask;
+        }
+        byte[] bytes = new byte[length];
+        source.get(start, bytes);
+        String name = new String(bytes, StandardCharsets.ISO_8859_1);
+        int symbol = Symbols.intern(name);
+        names[i] = name;
+        symbols[i] = symbol;
+        if (++nameCount * 2 > names.length) growNames();
+        return symbol;
+    }
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+    private void growNames() {
+        String[] oldNames = names;
+        int[] oldSymbols = symbols;
+        names = new String[oldNames.length * 2];
+        symbols = new int[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int j = 0; j < oldNames.length; ++j) {
+            if (oldNames[j] == null) continue;
+            int i = oldNames[j].hashCode() & mask;
+            while (names[i] != null) i = (i + 1) & mask;
+            names[i] = oldNames[j];
+            symbols[i] = oldSymbols[j];
+        }
+    }
+
+    // whether the ASCII text is exactly the length bytes at offset
+    private boolean matches(String text, int offset, int length) {
+        if (text.length() != length) return false;
+        for (int i = 0; i < length; ++i) {
+            if (source.get(offset + i) != text.charAt(i)) return false;
+        }
+        return true;
     }
 }
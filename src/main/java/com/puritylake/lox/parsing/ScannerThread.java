@@ -0,0 +1,78 @@
+package com.puritylake.lox.parsing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Scans on a thread of its own, so the parser works through a large
+ * script while the rest of it is still being scanned. A fixed set of
+ * token buffers circulates between the two threads: the scanner fills
+ * empty ones and the parser copies the full ones out and hands them back,
+ * so the scanner is never more than a few batches ahead.
+ */
+public final class ScannerThread implements TokenStream {
+    private static final int BATCHES = 16;
+
+    private final TokenStream scanner;
+    private final BlockingQueue<TokenBuffer> full = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<TokenBuffer> empty = new ArrayBlockingQueue<>(BATCHES);
+    // what stopped the scanner, announced by an empty batch
+    private volatile Throwable failure = null;
+
+    public ScannerThread(TokenStream scanner) {
+        this.scanner = scanner;
+        for (int i = 0; i < BATCHES; ++i) {
+            empty.add(scanner.buffer());
+        }
+        Thread thread = new Thread(this::scan, "lox-scanner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public TokenBuffer buffer() {
+        return scanner.buffer();
+    }
+
+    @Override
+    public void fill(TokenBuffer tokens) {
+        TokenBuffer batch;
+        try {
+            batch = full.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the scanner.", e);
+        }
+        if (batch.count() == 0) {
+            if (failure instanceof Error error) throw error;
+            throw (RuntimeException) failure;
+        }
+        tokens.append(batch);
+        batch.clear();
+        empty.add(batch);
+    }
+
+    private void scan() {
+        TokenBuffer batch = null;
+        try {
+            boolean done;
+            do {
+                batch = empty.take();
+                scanner.fill(batch);
+                // the parser may clear the batch as soon as it is handed over
+                done = batch.type(batch.count() - 1) == TokenType.EOF;
+                full.put(batch);
+            } while (!done);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            try {
+                batch.clear();
+                full.put(batch);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.puritylake.lox.parsing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Resolved and optimized programs saved between runs, so a script that
+ * has not changed skips scanning, parsing and resolving. A program's
+ * {@link FlatAst} is written as it is to a .loxc file named after a hash
+ * of the interpreter's classes and the script's bytes. Files are
+ * mapped back in and checked before use; anything that does not check out
+ * is treated as missing.
+ */
+public final class ScriptCache {
+    /**
+     * A program as the front end left it: its arena and the list of top
+     * level statements in it, the size of its top level frame and the
+     * warnings the resolver printed.
+     */
+    public record Entry(FlatAst ast, int statements, int slots, List<String> warnings) { }
+
+    // bump whenever the layout of a .loxc file changes
+    private static final int FORMAT = 2;
+    private static final int MAGIC = 0x4C4F5843;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private static final byte DOUBLE = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte STRING = 2;
+    private static final byte TOKEN = 3;
+    private static final byte SLOT = 4;
+    private static final byte LAYOUT = 5;
+    private static final byte NIL = 6;
+
+    private final Path directory;
+    private final long version;
+
+    /**
+     * Fails if the interpreter's own classes cannot be found, since entries
+     * would then outlive the build that wrote them.
+     */
+    public ScriptCache(Path directory) throws IOException {
+        this.directory = directory;
+        this.version = interpreterVersion();
+    }
+
+    // the name a script's entry is stored under
+    public String key(FileChannel script) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(12).putInt(FORMAT).putLong(version).flip());
+        long size = script.size();
+        for (long offset = 0; offset < size; offset += Integer.MAX_VALUE) {
+            digest.update(script.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(Integer.MAX_VALUE, size - offset)));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // a checksum over the size and modification time of the jar the
+    // interpreter was loaded from, or of every class file under its classes
+    // directory, so any rebuild changes every key without the classes being
+    // read on each run
+    private static long interpreterVersion() throws IOException {
+        CodeSource code = ScriptCache.class.getProtectionDomain().getCodeSource();
+        if (code == null || code.getLocation() == null) {
+            throw new IOException("cannot find the interpreter's classes");
+        }
+        File location;
+        try {
+            location = new File(code.getLocation().toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("cannot read the interpreter's classes from " + code.getLocation());
+        }
+
+        CRC32 crc = new CRC32();
+        int files = location.isDirectory() ? stamp(location, crc) : stamp(location, location.length(), crc);
+        if (files == 0) {
+            throw new IOException("cannot read the interpreter's classes from " + location);
+        }
+        return (long) files << 32 | crc.getValue();
+    }
+
+    // java.io.File rather than a file tree walk, which costs several times
+    // as much to start up as it does to list the classes
+    private static int stamp(File directory, CRC32 crc) {
+        File[] children = directory.listFiles();
+        if (children == null) return 0;
+        Arrays.sort(children);
+        int files = 0;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                files += stamp(child, crc);
+            } else if (child.getName().endsWith(".class")) {
+                files += stamp(child, child.length(), crc);
+            }
+        }
+        return files;
+    }
+
+    private static int stamp(File file, long size, CRC32 crc) {
+        long modified = file.lastModified();
+        if (modified == 0) return 0;
+        crc.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+        crc.update(ByteBuffer.allocate(16).putLong(size).putLong(modified).flip());
+        return 1;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the entry stored under key, or null if there is none usable
+    public Entry load(String key) {
+        Path path = directory.resolve(key + ".loxc");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            return read(buffer, key);
+        } catch (RuntimeException e) {
+            // truncated, corrupt or written by something else
+            return null;
+        }
+    }
+
+    public void store(String key, Entry entry) throws Exception {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), crc))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.write(HexFormat.of().parseHex(key));
+                out.writeInt(entry.slots());
+                out.writeInt(entry.statements());
+                out.writeInt(entry.warnings().size());
+                for (String warning : entry.warnings()) {
+                    writeString(out, warning);
+                }
+                write(out, entry.ast());
+                out.flush();
+                // the checksum covers everything before it
+                out.writeLong(crc.getValue());
+            }
+            try {
+                Files.move(temp, directory.resolve(key + ".loxc"), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, directory.resolve(key + ".loxc"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void write(DataOutputStream out, FlatAst ast) throws IOException {
+        // symbols are numbered per run, so they are stored by name
+        Map<Integer, Integer> symbols = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] tokens = ast.tokens();
+        List<Object> values = new ArrayList<>(Arrays.asList(ast.values()));
+        for (int i = 0; i < tokens.length; i += 3) {
+            if (!FlatAst.whole(TYPES[tokens[i]]) && tokens[i + 2] >= 0) {
+                tokens[i + 2] = symbol(tokens[i + 2], symbols, names);
+            }
+        }
+        for (Object value : values) {
+            if (value instanceof Token token && token.symbol() >= 0) {
+                symbol(token.symbol(), symbols, names);
+            }
+        }
+
+        // slots only a frame layout refers to are added on the end
+        Map<Object, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < values.size(); ++i) {
+            indices.put(values.get(i), i);
+        }
+        for (int i = 0; i < values.size(); ++i) {
+            if (values.get(i) instanceof FrameLayout layout) {
+                for (Slot slot : layout.params) {
+                    reference(slot, values, indices);
+                }
+                reference(layout.receiver, values, indices);
+            }
+        }
+
+        out.writeInt(names.size());
+        for (String name : names) {
+            writeString(out, name);
+        }
+        out.writeInt(values.size());
+        for (Object value : values) {
+            writeValue(out, value, symbols, indices);
+        }
+        writeInts(out, ast.data());
+        writeInts(out, tokens);
+    }
+
+    private static int symbol(int symbol, Map<Integer, Integer> symbols, List<String> names) {
+        return symbols.computeIfAbsent(symbol, s -> {
+            names.add(Symbols.name(s));
+            return names.size() - 1;
+        });
+    }
+
+    private static void reference(Slot slot, List<Object> values, Map<Object, Integer> indices) {
+        if (slot != null && !indices.containsKey(slot)) {
+            indices.put(slot, values.size());
+            values.add(slot);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, Map<Integer, Integer> symbols,
+                                   Map<Object, Integer> indices) throws IOException {
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value instanceof Double number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(bool);
+        } else if (value instanceof CharSequence string) {
+            out.writeByte(STRING);
+            writeString(out, string.toString());
+        } else if (value instanceof Token token) {
+            out.writeByte(TOKEN);
+            out.writeByte(token.type().ordinal());
+            writeString(out, token.lexeme());
+            writeValue(out, token.literal(), symbols, indices);
+            out.writeInt(token.line());
+            out.writeInt(token.symbol() >= 0 ? symbols.get(token.symbol()) : -1);
+        } else if (value instanceof Slot slot) {
+            out.writeByte(SLOT);
+            out.writeInt(slot.index);
+            out.writeBoolean(slot.captured);
+            out.writeInt(slot.assignments);
+        } else if (value instanceof FrameLayout layout) {
+            out.writeByte(LAYOUT);
+            out.writeInt(layout.slots);
+            out.writeInt(layout.params.size());
+            for (Slot slot : layout.params) {
+                out.writeInt(indices.get(slot));
+            }
+            out.writeInt(layout.upvalues.size());
+            for (FrameLayout.Upvalue upvalue : layout.upvalues) {
+                out.writeBoolean(upvalue.local());
+                out.writeInt(upvalue.index());
+            }
+            out.writeInt(layout.receiver != null ? indices.get(layout.receiver) : -1);
+        } else {
+            throw new IllegalArgumentException("Can't cache a " + value.getClass().getSimpleName() + ".");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        out.writeInt(ints.length);
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < ints.length; ) {
+            int count = Math.min(ints.length - i, bytes.capacity() / 4);
+            bytes.clear();
+            bytes.asIntBuffer().put(ints, i, count);
+            out.write(bytes.array(), 0, count * 4);
+            i += count;
+        }
+    }
+
+    private static Entry read(MappedByteBuffer buffer, String key) {
+        int end = buffer.limit() - 8;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(end));
+        if (crc.getValue() != buffer.getLong(end)) return null;
+        buffer.limit(end);
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) return null;
+        byte[] hash = new byte[32];
+        buffer.get(hash);
+        if (!HexFormat.of().formatHex(hash).equals(key)) return null;
+        int slots = buffer.getInt();
+        int statements = buffer.getInt();
+        List<String> warnings = new ArrayList<>();
+        for (int i = buffer.getInt(); i > 0; --i) {
+            warnings.add(readString(buffer));
+        }
+
+        int[] symbols = new int[buffer.getInt()];
+        for (int i = 0; i < symbols.length; ++i) {
+            symbols[i] = Symbols.intern(readString(buffer));
+        }
+        Object[] values = new Object[buffer.getInt()];
+        List<int[]> layouts = new ArrayList<>();
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = readValue(buffer, symbols, i, layouts);
+        }
+        // layouts refer to slots that may come after them
+        for (int[] refs : layouts) {
+            FrameLayout layout = (FrameLayout) values[refs[0]];
+            for (int i = 1; i < refs.length - 1; ++i) {
+                layout.params.add((Slot) values[refs[i]]);
+            }
+            int receiver = refs[refs.length - 1];
+            layout.receiver = receiver >= 0 ? (Slot) values[receiver] : null;
+        }
+        int[] data = readInts(buffer);
+        int[] tokens = readInts(buffer);
+        for (int i = 0; i < tokens.length; i += 3) {
+            if (!FlatAst.whole(TYPES[tokens[i]]) && tokens[i + 2] >= 0) {
+                tokens[i + 2] = symbols[tokens[i + 2]];
+            }
+        }
+        if (buffer.hasRemaining()) return null;
+
+        return new Entry(new FlatAst(data, tokens, values), statements, slots, warnings);
+    }
+
+    private static Object readValue(ByteBuffer buffer, int[] symbols, int index, List<int[]> layouts) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case NIL -> null;
+            case DOUBLE -> buffer.getDouble();
+            case BOOLEAN -> buffer.get() != 0;
+            case STRING -> readString(buffer);
+            case TOKEN -> {
+                TokenType type = TYPES[buffer.get()];
+                String lexeme = readString(buffer);
+                Object literal = readValue(buffer, symbols, index, layouts);
+                int line = buffer.getInt();
+                int symbol = buffer.getInt();
+                yield new Token(type, lexeme, literal, line, symbol >= 0 ? symbols[symbol] : -1);
+            }
+            case SLOT -> {
+                Slot slot = new Slot(buffer.getInt());
+                slot.captured = buffer.get() != 0;
+                slot.assignments = buffer.getInt();
+                yield slot;
+            }
+            case LAYOUT -> {
+                FrameLayout layout = new FrameLayout();
+                layout.slots = buffer.getInt();
+                // the layout's index, its parameters' and its receiver's
+                int[] refs = new int[buffer.getInt() + 2];
+                refs[0] = index;
+                for (int i = 1; i < refs.length - 1; ++i) {
+                    refs[i] = buffer.getInt();
+                }
+                for (int i = buffer.getInt(); i > 0; --i) {
+                    boolean local = buffer.get() != 0;
+                    layout.upvalues.add(new FrameLayout.Upvalue(local, buffer.getInt()));
+                }
+                refs[refs.length - 1] = buffer.getInt();
+                layouts.add(refs);
+                yield layout;
+            }
+            default -> throw new IllegalStateException("Unknown value tag " + tag + ".");
+        };
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] ints = new int[buffer.getInt()];
+        IntBuffer view = buffer.slice().limit(ints.length * 4).asIntBuffer();
+        view.get(ints);
+        buffer.position(buffer.position() + ints.length * 4);
+        return ints;
+    }
+}
@@ -0,0 +1,17 @@
+package com.puritylake.lox.parsing;
+
+/**
+ * A local variable's place in its function's frame. Slots are reused once
+ * the block declaring them ends. A variable some closure refers to is
+ * captured: its slot holds a {@link Cell} shared with those closures.
+ * Assignments counts the places that write it after its declaration.
+ */
+public final class Slot {
+    public final int index;
+    public boolean captured = false;
+    public int assignments = 0;
+
+    Slot(int index) {
+        this.index = index;
+    }
+}
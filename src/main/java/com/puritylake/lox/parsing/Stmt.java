@@ -6,8 +6,6 @@
 
 package com.puritylake.lox.parsing;
 
-import com.puritylake.lox.exceptions.*;
-
 import java.util.List;
 
 public abstract class Stmt {
@@ -22,8 +20,8 @@ public abstract class Stmt {
         R visitVarStmt(Var stmt) throws Exception;
         R visitWhileStmt(While stmt) throws Exception;
         R visitForStmt(For stmt) throws Exception;
-        R visitBreakStmt(Break stmt) throws ControlFlowChange;
-        R visitContinueStmt(Continue stmt) throws ControlFlowChange;
+        R visitBreakStmt(Break stmt) throws Exception;
+        R visitContinueStmt(Continue stmt) throws Exception;
     }
     public static class Block extends Stmt {
        public Block(List<Stmt> statements) {
@@ -38,9 +36,10 @@ public abstract class Stmt {
         public final List<Stmt> statements;
     }
     public static class Class extends Stmt {
-       public Class(Token name, List<Stmt.Function> methods) {
+       public Class(Token name, List<Stmt.Function> methods, Slot slot) {
             this.name = name;
             this.methods = methods;
+            this.slot = slot;
         }
 
         @Override
@@ -50,6 +49,7 @@ public abstract class Stmt {
 
         public final Token name;
         public final List<Stmt.Function> methods;
+        public Slot slot;
     }
     public static class Expression extends Stmt {
        public Expression(Expr expression) {
@@ -64,10 +64,12 @@ public abstract class Stmt {
         public final Expr expression;
     }
     public static class Function extends Stmt {
-       public Function(Token name, List<Token> params, List<Stmt> body) {
+       public Function(Token name, List<Token> params, List<Stmt> body, Slot slot, FrameLayout layout) {
             this.name = name;
             this.params = params;
             this.body = body;
+            this.slot = slot;
+            this.layout = layout;
         }
 
         @Override
@@ -78,6 +80,8 @@ public abstract class Stmt {
         public final Token name;
         public final List<Token> params;
         public final List<Stmt> body;
+        public Slot slot;
+        public FrameLayout layout;
     }
     public static class If extends Stmt {
        public If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -108,9 +112,10 @@ public abstract class Stmt {
         public final Expr expression;
     }
     public static class Return extends Stmt {
-       public Return(Token keyword, Expr value) {
+       public Return(Token keyword, Expr value, boolean tail) {
             this.keyword = keyword;
             this.value = value;
+            this.tail = tail;
         }
 
         @Override
@@ -120,12 +125,13 @@ public abstract class Stmt {
 
         public final Token keyword;
         public final Expr value;
+        public boolean tail;
     }
     public static class Var extends Stmt {
-       public Var(Token name, Expr initializer, boolean initialized) {
+       public Var(Token name, Expr initializer, Slot slot) {
             this.name = name;
             this.initializer = initializer;
-            this.initialized = initialized;
+            this.slot = slot;
         }
 
         @Override
@@ -135,7 +141,7 @@ public abstract class Stmt {
 
         public final Token name;
         public final Expr initializer;
-        public final boolean initialized;
+        public Slot slot;
     }
     public static class While extends Stmt {
        public While(Expr condition, Stmt body) {
@@ -175,7 +181,7 @@ public abstract class Stmt {
         }
 
         @Override
-        public <R> R accept(Visitor<R> visitor) throws ControlFlowChange {
+        public <R> R accept(Visitor<R> visitor) throws Exception {
             return visitor.visitBreakStmt(this);
         }
 
@@ -187,7 +193,7 @@ public abstract class Stmt {
         }
 
         @Override
-        public <R> R accept(Visitor<R> visitor) throws ControlFlowChange {
+        public <R> R accept(Visitor<R> visitor) throws Exception {
             return visitor.visitContinueStmt(this);
         }
 
@@ -0,0 +1,62 @@
+package com.puritylake.lox.parsing;
+
+/**
+ * A map from symbol numbers to values, kept in two arrays probed linearly
+ * from the symbol's hash. Classes, instances and shapes hold few names,
+ * so lookups almost always hit the first slot they try.
+ */
+public final class SymbolMap<V> {
+    // keys hold symbol + 1 so a zero marks a free slot
+    private int[] keys = new int[8];
+    private Object[] values = new Object[8];
+    private int size = 0;
+
+    private int find(int symbol) {
+        int mask = keys.length - 1;
+        int i = (symbol * 0x9E3779B9 >>> 16) & mask;
+        while (keys[i] != 0 && keys[i] != symbol + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int symbol) {
+        return (V) values[find(symbol)];
+    }
+
+    public boolean containsKey(int symbol) {
+        return keys[find(symbol)] != 0;
+    }
+
+    public void put(int symbol, V value) {
+        int i = find(symbol);
+        if (keys[i] == 0) {
+            // stay at most half full so probes stay short
+            if (++size * 2 > keys.length) {
+                grow();
+                i = find(symbol);
+            }
+            keys[i] = symbol + 1;
+        }
+        values[i] = value;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != 0) {
+                int at = find(oldKeys[i] - 1);
+                keys[at] = oldKeys[i];
+                values[at] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,38 @@
+package com.puritylake.lox.parsing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every name the scanner has seen, numbered densely from zero in the order
+ * they first appeared. Identifier tokens carry their number, so globals,
+ * fields and methods are found by an int rather than by hashing a string.
+ * Numbers are never reused, which lets the REPL keep the table across
+ * lines.
+ */
+public final class Symbols {
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
+    private Symbols() {}
+
+    public static synchronized int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    public static synchronized String name(int symbol) {
+        return names.get(symbol);
+    }
+
+    public static synchronized int count() {
+        return names.size();
+    }
+}
@@ -1,6 +1,15 @@
 package com.puritylake.lox.parsing;
 
-public record Token(TokenType type, String lexeme, Object literal, int line) {
+/**
+ * A scanned token. Identifiers, and {@code this}, carry the number
+ * {@link Symbols} gave their name; every other token has -1.
+ */
+public record Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
+    public Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line,
+                type == TokenType.IDENTIFIER || type == TokenType.THIS ? Symbols.intern(lexeme) : -1);
+    }
+
     @Override
     public String toString() {
         return type + " " + lexeme + "  " + literal;
@@ -0,0 +1,150 @@
+package com.puritylake.lox.parsing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Scanned tokens packed into parallel arrays: each is its type, where its
+ * text lies in the source, its line, and for identifiers its symbol. The
+ * source is kept per token, since a large file is scanned a window at a
+ * time and the parser can still hold tokens from the previous one.
+ * Lexemes and literals are read back out of the source only when asked
+ * for, and a {@link Token} is made only for the few tokens that end up in
+ * the tree or in an error message. A scan error is kept in line with the
+ * tokens as an {@code ERROR} token whose source is its message.
+ */
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private ByteBuffer[] sources = new ByteBuffer[256];
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int[] symbols = new int[256];
+    private int count = 0;
+    private byte[] scratch = new byte[64];
+
+    public int count() {
+        return count;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public void add(TokenType type, ByteBuffer source, int start, int length, int line, int symbol) {
+        if (count == types.length) {
+            grow(count * 2);
+        }
+        sources[count] = source;
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        symbols[count] = symbol;
+        ++count;
+    }
+
+    public void addError(String message, int line) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        add(TokenType.ERROR, ByteBuffer.wrap(text), 0, text.length, line, -1);
+    }
+
+    public void append(TokenBuffer other) {
+        if (count + other.count > types.length) {
+            grow(Math.max(count + other.count, count * 2));
+        }
+        System.arraycopy(other.sources, 0, sources, count, other.count);
+        System.arraycopy(other.types, 0, types, count, other.count);
+        System.arraycopy(other.starts, 0, starts, count, other.count);
+        System.arraycopy(other.lengths, 0, lengths, count, other.count);
+        System.arraycopy(other.lines, 0, lines, count, other.count);
+        System.arraycopy(other.symbols, 0, symbols, count, other.count);
+        count += other.count;
+    }
+
+    // drops the tokens before index, so the one at index becomes the first
+    public void discard(int index) {
+        int kept = count - index;
+        System.arraycopy(sources, index, sources, 0, kept);
+        // a window no token is left in can be unmapped
+        Arrays.fill(sources, kept, count, null);
+        System.arraycopy(types, index, types, 0, kept);
+        System.arraycopy(starts, index, starts, 0, kept);
+        System.arraycopy(lengths, index, lengths, 0, kept);
+        System.arraycopy(lines, index, lines, 0, kept);
+        System.arraycopy(symbols, index, symbols, 0, kept);
+        count = kept;
+    }
+
+    public void clear() {
+        Arrays.fill(sources, 0, count, null);
+        count = 0;
+    }
+
+    public String lexeme(int index) {
+        TokenType type = type(index);
+        if (type.text != null) return type.text;
+        if (type == TokenType.IDENTIFIER) return Symbols.name(symbols[index]);
+        return text(index, 0, lengths[index], StandardCharsets.UTF_8);
+    }
+
+    public Object literal(int index) {
+        return switch (type(index)) {
+            case STRING -> text(index, 1, lengths[index] - 2, StandardCharsets.UTF_8);
+            case NUMBER -> number(index);
+            default -> null;
+        };
+    }
+
+    public Token token(int index) {
+        TokenType type = type(index);
+        if (type == TokenType.IDENTIFIER) {
+            return new Token(type, Symbols.name(symbols[index]), null, lines[index], symbols[index]);
+        }
+        return new Token(type, lexeme(index), literal(index), lines[index]);
+    }
+
+    private double number(int index) {
+        ByteBuffer source = sources[index];
+        int start = starts[index];
+        int length = lengths[index];
+        // whole numbers short enough to be exact are added up directly
+        if (length <= 15) {
+            long value = 0;
+            int i = 0;
+            for (; i < length; ++i) {
+                byte digit = source.get(start + i);
+                if (digit == '.') break;
+                value = value * 10 + (digit - '0');
+            }
+            if (i == length) return value;
+        }
+        return Double.parseDouble(text(index, 0, length, StandardCharsets.ISO_8859_1));
+    }
+
+    // length bytes of the token's text from offset, decoded
+    private String text(int index, int offset, int length, Charset charset) {
+        if (scratch.length < length) {
+            scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+        }
+        sources[index].get(starts[index] + offset, scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
+
+    private void grow(int capacity) {
+        sources = Arrays.copyOf(sources, capacity);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+    }
+}
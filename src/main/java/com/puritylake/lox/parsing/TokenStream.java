@@ -0,0 +1,13 @@
+package com.puritylake.lox.parsing;
+
+/**
+ * Where the {@link Parser} gets its tokens, a batch at a time as it needs
+ * them. The last batch ends with an {@code EOF} token.
+ */
+public interface TokenStream {
+    // an empty buffer that can hold this stream's tokens
+    TokenBuffer buffer();
+
+    // scans the next batch of tokens onto the end of the buffer
+    void fill(TokenBuffer tokens);
+}
@@ -2,23 +2,35 @@ package com.puritylake.lox.parsing;
 
 public enum TokenType {
     // Single-character tokens.
-    LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
-    COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
-    QUESTION, COLON,
+    LEFT_PAREN("("), RIGHT_PAREN(")"), LEFT_BRACE("{"), RIGHT_BRACE("}"),
+    LEFT_BRACKET("["), RIGHT_BRACKET("]"),
+    COMMA(","), DOT("."), MINUS("-"), PLUS("+"), SEMICOLON(";"), SLASH("/"), STAR("*"),
+    QUESTION("?"), COLON(":"),
 
     // One or two character tokens.
-    BANG, BANG_EQUAL,
-    EQUAL, EQUAL_EQUAL,
-    GREATER, GREATER_EQUAL,
-    LESS, LESS_EQUAL,
+    BANG("!"), BANG_EQUAL("!="),
+    EQUAL("="), EQUAL_EQUAL("=="),
+    GREATER(">"), GREATER_EQUAL(">="),
+    LESS("<"), LESS_EQUAL("<="),
 
     // Literals.
-    IDENTIFIER, STRING, NUMBER,
+    IDENTIFIER(null), STRING(null), NUMBER(null),
 
     // Keywords.
-    AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
-    PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
-    BREAK, CONTINUE,
+    AND("and"), CLASS("class"), ELSE("else"), FALSE("false"), FUN("fun"), FOR("for"),
+    IF("if"), NIL("nil"), OR("or"), PRINT("print"), RETURN("return"), SUPER("super"),
+    THIS("this"), TRUE("true"), VAR("var"), WHILE("while"),
+    BREAK("break"), CONTINUE("continue"),
 
-    EOF
+    EOF(""),
+
+    // A scan error, reported when the parser reaches it; its lexeme is the message.
+    ERROR(null);
+
+    // the lexeme of every token of this type, or null when it varies
+    public final String text;
+
+    TokenType(String text) {
+        this.text = text;
+    }
 }
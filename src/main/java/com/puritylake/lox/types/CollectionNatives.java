@@ -0,0 +1,43 @@
+package com.puritylake.lox.types;
+
+/**
+ * Functions over strings, arrays and maps that are not indexing.
+ */
+public final class CollectionNatives {
+    private CollectionNatives() { }
+
+    @Native
+    public static int len(Object value) {
+        if (value instanceof CharSequence string) return string.length();
+        if (value instanceof LoxArray array) return array.size();
+        if (value instanceof LoxMap map) return map.size();
+        throw new NativeError("Argument must be a string, array or map.");
+    }
+
+    @Native
+    public static void push(LoxArray array, Object value) {
+        array.add(value);
+    }
+
+    @Native
+    public static Object pop(LoxArray array) {
+        return array.pop();
+    }
+
+    // the keys of a map, in the order they were added
+    @Native
+    public static LoxArray keys(LoxMap map) {
+        return map.keys();
+    }
+
+    @Native
+    public static boolean has(LoxMap map, Object key) {
+        return map.has(key);
+    }
+
+    // returns the value removed, or nil
+    @Native
+    public static Object remove(LoxMap map, Object key) {
+        return map.remove(key);
+    }
+}
@@ -0,0 +1,29 @@
+package com.puritylake.lox.types;
+
+/**
+ * The clock, and number functions too slow to write in Lox itself.
+ */
+public final class CoreNatives {
+    private CoreNatives() { }
+
+    // seconds since the epoch
+    @Native
+    public static double clock() {
+        return System.currentTimeMillis() / 1000.0;
+    }
+
+    @Native
+    public static double sqrt(double x) {
+        return Math.sqrt(x);
+    }
+
+    @Native
+    public static double floor(double x) {
+        return Math.floor(x);
+    }
+
+    @Native
+    public static double abs(double x) {
+        return Math.abs(x);
+    }
+}
@@ -0,0 +1,132 @@
+package com.puritylake.lox.types;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A Lox array. While every element is a number the elements are kept
+ * unboxed in a {@code double[]}; the first store of anything else moves
+ * them, once, into an {@code Object[]}. Either grows by doubling.
+ */
+public final class LoxArray {
+    private double[] numbers;
+    // null while the elements are all numbers
+    private Object[] objects = null;
+    private int size = 0;
+
+    public LoxArray(int capacity) {
+        numbers = new double[capacity];
+    }
+
+    public static LoxArray of(Object[] elements) {
+        LoxArray array = new LoxArray(elements.length);
+        for (Object element : elements) {
+            array.add(element);
+        }
+        return array;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // whether getDouble can be used
+    public boolean isNumeric() {
+        return objects == null;
+    }
+
+    public Object get(int index) {
+        check(index);
+        return objects == null ? Values.box(numbers[index]) : objects[index];
+    }
+
+    // only for numeric arrays
+    public double getDouble(int index) {
+        check(index);
+        return numbers[index];
+    }
+
+    public void set(int index, Object value) {
+        check(index);
+        if (objects == null) {
+            if (value instanceof Double number) {
+                numbers[index] = number;
+                return;
+            }
+            generalize();
+        }
+        objects[index] = value;
+    }
+
+    public void add(Object value) {
+        if (objects == null) {
+            if (value instanceof Double number) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, Math.max(4, size * 2));
+                }
+                numbers[size++] = number;
+                return;
+            }
+            generalize();
+        }
+        if (size == objects.length) {
+            objects = Arrays.copyOf(objects, Math.max(4, size * 2));
+        }
+        objects[size++] = value;
+    }
+
+    public Object pop() {
+        if (size == 0) {
+            throw new NativeError("Cannot pop from an empty array.");
+        }
+        Object last = get(size - 1);
+        if (objects != null) {
+            objects[size - 1] = null;
+        }
+        --size;
+        return last;
+    }
+
+    private void generalize() {
+        objects = new Object[Math.max(4, numbers.length)];
+        for (int i = 0; i < size; ++i) {
+            objects[i] = Values.box(numbers[i]);
+        }
+        numbers = null;
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= size) {
+            throw new NativeError("Index " + index + " is out of range for an array of length " + size + ".");
+        }
+    }
+
+    // an index as Lox code gives it
+    public static int index(Object value) {
+        if (!(value instanceof Double number)) {
+            throw new NativeError("Array index must be a number.");
+        }
+        return index((double) number);
+    }
+
+    public static int index(double number) {
+        if (number != Math.floor(number) || Math.abs(number) > Integer.MAX_VALUE) {
+            throw new NativeError("Array index must be an integer.");
+        }
+        return (int) number;
+    }
+
+    @Override
+    public String toString() {
+        return Values.stringify(this);
+    }
+
+    String toString(Set<Object> printing) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) text.append(", ");
+            text.append(Values.stringify(get(i), printing));
+        }
+        return text.append(']').toString();
+    }
+}
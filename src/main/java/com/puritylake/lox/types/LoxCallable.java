@@ -2,9 +2,29 @@ package com.puritylake.lox.types;
 
 import com.puritylake.lox.parsing.Interpreter;
 
-import java.util.List;
-
+/**
+ * Anything Lox code can call. Calls with up to three arguments go through
+ * the entry point for their count, which lets a callee take them without
+ * an array being made; longer calls pass one. Callers check the count
+ * against {@link #arity} first.
+ */
 public interface LoxCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments) throws Exception;
+    Object call(Interpreter interpreter, Object[] arguments) throws Exception;
+
+    default Object call0(Interpreter interpreter) throws Exception {
+        return call(interpreter, new Object[0]);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) throws Exception {
+        return call(interpreter, new Object[] {a});
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) throws Exception {
+        return call(interpreter, new Object[] {a, b});
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) throws Exception {
+        return call(interpreter, new Object[] {a, b, c});
+    }
 }
@@ -1,25 +1,21 @@
 package com.puritylake.lox.types;
 
 import com.puritylake.lox.parsing.Interpreter;
-
-import java.util.List;
-import java.util.Map;
+import com.puritylake.lox.parsing.SymbolMap;
 
 public class LoxClass implements LoxCallable {
     public final String name;
-    private final Map<String, LoxFunction> methods;
+    // keyed by the symbol of each method's name
+    private final SymbolMap<LoxFunction> methods;
+    final Shape rootShape = Shape.root();
 
-    public LoxClass(String name, Map<String, LoxFunction> methods) {
+    public LoxClass(String name, SymbolMap<LoxFunction> methods) {
         this.name = name;
         this.methods = methods;
     }
 
-    public LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
-
-        return null;
+    public LoxFunction findMethod(int symbol) {
+        return methods.get(symbol);
     }
 
     @Override
@@ -33,7 +29,12 @@ public class LoxClass implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) throws Exception {
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return new LoxInstance(this);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
         return new LoxInstance(this);
     }
 }
@@ -1,54 +1,150 @@
 package com.puritylake.lox.types;
 
+import com.puritylake.lox.jit.JitCode;
+import com.puritylake.lox.nodes.Completion;
+import com.puritylake.lox.nodes.FunctionDefinition;
+import com.puritylake.lox.parsing.Cell;
 import com.puritylake.lox.parsing.Environment;
-import com.puritylake.lox.exceptions.ControlFlowChange;
 import com.puritylake.lox.parsing.Interpreter;
-import com.puritylake.lox.parsing.Return;
-import com.puritylake.lox.parsing.Stmt;
-
-import java.util.List;
 
 public class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;
+    private final FunctionDefinition definition;
+    private final Cell[] upvalues;
+    // the instance a bound method runs on, null for anything else
+    final LoxInstance receiver;
+
+    public LoxFunction(FunctionDefinition definition, Cell[] upvalues) {
+        this(definition, upvalues, null);
+    }
 
-    public LoxFunction(Stmt.Function declaration, Environment closure) {
-        this.declaration = declaration;
-        this.closure = closure;
+    private LoxFunction(FunctionDefinition definition, Cell[] upvalues, LoxInstance receiver) {
+        this.definition = definition;
+        this.upvalues = upvalues;
+        this.receiver = receiver;
     }
 
     public LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance, true);
-        return new LoxFunction(declaration, environment);
+        return new LoxFunction(definition, upvalues, instance);
     }
 
     @Override
     public int arity() {
-        return declaration.params.size();
+        return definition.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) throws Exception {
+        return call(interpreter, receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) throws Exception {
+        return call0(interpreter, receiver);
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) throws Exception {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); ++i) {
-            environment.define(declaration.params.get(i).lexeme(), arguments.get(i), true);
+    public Object call1(Interpreter interpreter, Object a) throws Exception {
+        return call1(interpreter, receiver, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) throws Exception {
+        return call2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) throws Exception {
+        return call3(interpreter, receiver, a, b, c);
+    }
+
+    /*
+     * The calls below take the instance a method found on it runs on, so it
+     * need not be bound first. Anything else, a method already bound
+     * included, ignores the instance. The arguments are staged where the
+     * frame will start, so pushing it turns them into the parameters.
+     */
+
+    public Object call(Interpreter interpreter, LoxInstance instance, Object[] arguments)
+            throws Exception {
+        Environment environment = interpreter.environment();
+        for (int i = 0; i < arguments.length; ++i) {
+            environment.stage(i, arguments[i]);
         }
+        return callStaged(interpreter, instance);
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (ControlFlowChange ignored) {
+    public Object call0(Interpreter interpreter, LoxInstance instance) throws Exception {
+        return callStaged(interpreter, instance);
+    }
 
-        } catch (Return returnValue) {
-            return returnValue.value;
+    public Object call1(Interpreter interpreter, LoxInstance instance, Object a) throws Exception {
+        interpreter.environment().stage(0, a);
+        return callStaged(interpreter, instance);
+    }
+
+    public Object call2(Interpreter interpreter, LoxInstance instance, Object a, Object b)
+            throws Exception {
+        Environment environment = interpreter.environment();
+        environment.stage(0, a);
+        environment.stage(1, b);
+        return callStaged(interpreter, instance);
+    }
+
+    public Object call3(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c)
+            throws Exception {
+        Environment environment = interpreter.environment();
+        environment.stage(0, a);
+        environment.stage(1, b);
+        environment.stage(2, c);
+        return callStaged(interpreter, instance);
+    }
+
+    Object callStaged(Interpreter interpreter, LoxInstance instance) throws Exception {
+        // tail calls come back as a TailCall and run here, once the frame
+        // that made them is gone, so tail recursion takes no stack
+        Object result = invoke(interpreter, instance);
+        while (result instanceof TailCall tailCall) {
+            tailCall.stage(interpreter.environment());
+            result = tailCall.function.invoke(interpreter, tailCall.receiver);
+        }
+        return result;
+    }
+
+    // runs the function on its staged arguments
+    private Object invoke(Interpreter interpreter, LoxInstance instance) throws Exception {
+        if (receiver != null) {
+            instance = receiver;
+        }
+        Environment environment = interpreter.environment();
+        JitCode compiled = definition.compiled();
+        if (compiled != null) {
+            // compiled code takes its arguments from where they were staged
+            return compiled.invoke(upvalues, this, instance);
+        }
+
+        Cell[] callerUpvalues = environment.upvalues();
+        int callerBase = environment.push(definition.slots, upvalues);
+        try {
+            if (definition.receiver != -1) {
+                environment.set(definition.receiver, instance);
+            }
+            for (int param : definition.capturedParams) {
+                environment.set(param, new Cell(environment.get(param)));
+            }
+            // a break or continue outside any loop just ends the call
+            if (definition.execute(environment) == Completion.RETURN) {
+                return environment.takeResult();
+            }
+        } finally {
+            environment.pop(callerBase, callerUpvalues);
         }
         return null;
     }
 
     @Override
     public String toString() {
-        if (declaration.name != null) {
-            return "<fn " + declaration.name.lexeme() + ">";
+        if (definition.name != null) {
+            return "<fn " + definition.name + ">";
         } else {
             return "<anonymous fn>";
         }
@@ -1,34 +1,32 @@
 package com.puritylake.lox.types;
 
-import com.puritylake.lox.parsing.RuntimeError;
-import com.puritylake.lox.parsing.Token;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    private final LoxClass klass;
+    Shape shape;
+    Object[] slots;
 
     public LoxInstance(LoxClass  klass) {
         this.klass = klass;
+        this.shape = klass.rootShape;
+        int expected = shape.expectedSize();
+        this.slots = expected == 0 ? NO_SLOTS : new Object[expected];
     }
 
-    public Object get(Token name) {
-        if (fields.containsKey(name.lexeme())) {
-            return fields.get(name.lexeme());
-        }
-
-        LoxFunction method = klass.findMethod(name.lexeme());
-        if (method != null) {
-            return method.bind(this);
-        }
-
-        throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+    LoxClass klass() {
+        return klass;
     }
 
-    public void set(Token name, Object value) {
-        fields.put(name.lexeme(), value);
+    // moves the instance to a shape one field larger, the new field at offset
+    void addField(Shape next, int offset, Object value) {
+        if (offset >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(next.expectedSize(), offset + 1));
+        }
+        slots[offset] = value;
+        shape = next;
     }
 
     @Override
@@ -0,0 +1,176 @@
+package com.puritylake.lox.types;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A Lox map, keyed by any value but nil and matching keys the way
+ * {@code ==} does. Entries are kept in the order they were added, in
+ * parallel arrays, and an open addressing table of entry positions is
+ * probed linearly to find them. Strings and numbers, the usual keys, are
+ * compared without a call to {@code equals} on another kind of key, and a
+ * number can be looked up without boxing it.
+ */
+public final class LoxMap {
+    // the key of an entry that was removed, until the table is rebuilt
+    private static final Object REMOVED = new Object();
+
+    private Object[] keys = new Object[4];
+    private Object[] values = new Object[4];
+    private int[] hashes = new int[4];
+    // entries in use, removed ones included
+    private int count = 0;
+    private int size = 0;
+    // entry index + 1 for each slot, 0 for a free one
+    private int[] table = new int[8];
+
+    public int size() {
+        return size;
+    }
+
+    public Object get(Object key) {
+        key = key(key);
+        int entry = table[find(key, hash(key))] - 1;
+        return entry < 0 ? null : values[entry];
+    }
+
+    public Object getNumber(double key) {
+        long bits = Double.doubleToLongBits(key);
+        int mask = table.length - 1;
+        int hash = spread(Long.hashCode(bits));
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = table[i] - 1;
+            if (entry < 0) return null;
+            if (hashes[entry] == hash && keys[entry] instanceof Double number
+                    && Double.doubleToLongBits(number) == bits) {
+                return values[entry];
+            }
+        }
+    }
+
+    public boolean has(Object key) {
+        key = key(key);
+        return table[find(key, hash(key))] != 0;
+    }
+
+    public void put(Object key, Object value) {
+        key = key(key);
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (table[slot] != 0) {
+            values[table[slot] - 1] = value;
+            return;
+        }
+        if ((count + 1) * 2 > table.length) {
+            rebuild();
+            slot = find(key, hash);
+        }
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        keys[count] = key;
+        values[count] = value;
+        hashes[count] = hash;
+        table[slot] = ++count;
+        ++size;
+    }
+
+    public Object remove(Object key) {
+        key = key(key);
+        int entry = table[find(key, hash(key))] - 1;
+        if (entry < 0) return null;
+        Object value = values[entry];
+        // the slot keeps pointing at the entry so later probes go past it
+        keys[entry] = REMOVED;
+        values[entry] = null;
+        --size;
+        return value;
+    }
+
+    public LoxArray keys() {
+        LoxArray array = new LoxArray(size);
+        for (int i = 0; i < count; ++i) {
+            if (keys[i] != REMOVED) array.add(keys[i]);
+        }
+        return array;
+    }
+
+    // the slot holding the key's entry, or the free slot it would go in
+    private int find(Object key, int hash) {
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = table[i] - 1;
+            if (entry < 0 || hashes[entry] == hash && same(keys[entry], key)) {
+                return i;
+            }
+        }
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a == b) return true;
+        if (a instanceof String s) return b instanceof String && s.equals(b);
+        if (a instanceof Double d) return b instanceof Double && d.equals(b);
+        return a != REMOVED && a.equals(b);
+    }
+
+    // drops removed entries and sizes the table for what is left
+    private void rebuild() {
+        int live = 0;
+        for (int i = 0; i < count; ++i) {
+            if (keys[i] != REMOVED) {
+                keys[live] = keys[i];
+                values[live] = values[i];
+                hashes[live] = hashes[i];
+                ++live;
+            }
+        }
+        Arrays.fill(keys, live, count, null);
+        Arrays.fill(values, live, count, null);
+        count = live;
+
+        int capacity = table.length;
+        while ((live + 1) * 2 > capacity / 2) capacity *= 2;
+        table = new int[Math.max(capacity, 8)];
+        int mask = table.length - 1;
+        for (int entry = 0; entry < live; ++entry) {
+            int i = hashes[entry] & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = entry + 1;
+        }
+    }
+
+    // strings are keyed by their characters, however they were built
+    private static Object key(Object key) {
+        if (key == null) {
+            throw new NativeError("Map keys cannot be nil.");
+        }
+        return key instanceof LoxString ? key.toString() : key;
+    }
+
+    private static int hash(Object key) {
+        return spread(key.hashCode());
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return Values.stringify(this);
+    }
+
+    String toString(Set<Object> printing) {
+        StringBuilder text = new StringBuilder("{");
+        boolean first = true;
+        for (int i = 0; i < count; ++i) {
+            if (keys[i] == REMOVED) continue;
+            if (!first) text.append(", ");
+            first = false;
+            text.append(Values.stringify(keys[i], printing)).append(": ").append(Values.stringify(values[i], printing));
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,175 @@
+package com.puritylake.lox.types;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The strings concatenation and slicing make. A Lox string is any
+ * {@link CharSequence}: literals stay plain Java strings, while joining
+ * long strings builds a {@link Rope} and slicing one makes a {@link Slice}
+ * over the original characters. Either is copied into a flat string only
+ * when something needs its characters, and only once.
+ */
+public abstract class LoxString implements CharSequence {
+    // anything shorter is cheaper to copy than to link or share
+    static final int MIN_LENGTH = 64;
+
+    public static CharSequence concat(CharSequence left, CharSequence right) {
+        if (right.length() == 0) return left;
+        if (left.length() == 0) return right;
+        int length = left.length() + right.length();
+        if (length < MIN_LENGTH) {
+            return left.toString().concat(right.toString());
+        }
+        // appending a little at a time keeps merging into the last leaf
+        // instead of growing the rope by one node per piece
+        if (left instanceof Rope rope && rope.flat == null
+                && rope.right instanceof String tail && tail.length() + right.length() < MIN_LENGTH) {
+            return new Rope(rope.left, tail.concat(right.toString()));
+        }
+        return new Rope(left, right, length);
+    }
+
+    public static CharSequence slice(CharSequence string, int start, int end) {
+        if (start == 0 && end == string.length()) return string;
+        String base;
+        if (string instanceof Slice slice) {
+            // a slice of a slice shares the same characters
+            base = slice.base;
+            start += slice.offset;
+            end += slice.offset;
+        } else {
+            base = string.toString();
+        }
+        if (end - start < MIN_LENGTH) {
+            return base.substring(start, end);
+        }
+        return new Slice(base, start, end - start);
+    }
+
+    // the flat string, built on first use
+    @Override
+    public abstract String toString();
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return slice(this, start, end);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof LoxString string && toString().equals(string.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    // copies its characters into chars from at onwards
+    abstract void copy(char[] chars, int at);
+
+    static final class Rope extends LoxString {
+        private CharSequence left;
+        private CharSequence right;
+        private final int length;
+        private String flat = null;
+
+        private Rope(CharSequence left, CharSequence right) {
+            this(left, right, left.length() + right.length());
+        }
+
+        private Rope(CharSequence left, CharSequence right, int length) {
+            this.left = left;
+            this.right = right;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            if (flat == null) {
+                char[] chars = new char[length];
+                copy(chars, 0);
+                flat = new String(chars);
+                left = null;
+                right = null;
+            }
+            return flat;
+        }
+
+        @Override
+        void copy(char[] chars, int at) {
+            if (flat != null) {
+                flat.getChars(0, length, chars, at);
+                return;
+            }
+            // ropes built by appending are as deep as they are long, so
+            // walk them with a stack of our own rather than recursing
+            Deque<CharSequence> pending = new ArrayDeque<>();
+            pending.push(right);
+            pending.push(left);
+            while (!pending.isEmpty()) {
+                CharSequence part = pending.pop();
+                if (part instanceof Rope rope && rope.flat == null) {
+                    pending.push(rope.right);
+                    pending.push(rope.left);
+                } else if (part instanceof LoxString string) {
+                    string.copy(chars, at);
+                    at += part.length();
+                } else {
+                    part.toString().getChars(0, part.length(), chars, at);
+                    at += part.length();
+                }
+            }
+        }
+    }
+
+    static final class Slice extends LoxString {
+        private final String base;
+        private final int offset;
+        private final int length;
+        private String flat = null;
+
+        private Slice(String base, int offset, int length) {
+            this.base = base;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return base.charAt(offset + index);
+        }
+
+        @Override
+        public String toString() {
+            if (flat == null) {
+                flat = base.substring(offset, offset + length);
+            }
+            return flat;
+        }
+
+        @Override
+        void copy(char[] chars, int at) {
+            base.getChars(offset, offset + length, chars, at);
+        }
+    }
+}
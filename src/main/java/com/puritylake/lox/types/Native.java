@@ -0,0 +1,17 @@
+package com.puritylake.lox.types;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public static method as a function Lox can call, under the
+ * method's own name unless one is given. {@link Natives} lists the
+ * parameter and return types it knows how to convert.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Native {
+    String value() default "";
+}
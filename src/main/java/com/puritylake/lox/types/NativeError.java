@@ -0,0 +1,12 @@
+package com.puritylake.lox.types;
+
+/**
+ * Thrown by a native function over bad arguments, or by an array or map
+ * over a bad index. The call or index that reached it reports it as a
+ * runtime error on its own line.
+ */
+public class NativeError extends RuntimeException {
+    public NativeError(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,90 @@
+package com.puritylake.lox.types;
+
+import com.puritylake.lox.parsing.Interpreter;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A Java method linked by {@link Natives}. Its handle takes and returns
+ * Objects, so the entry point for each argument count invokes it exactly,
+ * with no array in between.
+ */
+public final class NativeFunction implements LoxCallable {
+    final String name;
+    private final int arity;
+    private final MethodHandle handle;
+    // the same, taking its arguments in an array
+    private final MethodHandle spread;
+
+    NativeFunction(String name, MethodHandle handle) {
+        this.name = name;
+        this.arity = handle.type().parameterCount();
+        this.handle = handle;
+        this.spread = handle.asSpreader(Object[].class, arity);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        try {
+            return (Object) spread.invokeExact(arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        try {
+            return (Object) handle.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        try {
+            return (Object) handle.invokeExact(a);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        try {
+            return (Object) handle.invokeExact(a, b);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        try {
+            return (Object) handle.invokeExact(a, b, c);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,179 @@
+package com.puritylake.lox.types;
+
+import com.puritylake.lox.parsing.Globals;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Links the {@link Native} methods of a class into {@link NativeFunction}s.
+ * Each method becomes a method handle once, with its parameters converted
+ * from Lox values and its result back into one, so calling it needs no
+ * reflection and no argument list.
+ * <p>
+ * Parameters may be {@code double}, {@code int} (a number with no fraction),
+ * {@code boolean}, {@code CharSequence}, {@code String}, {@link LoxArray},
+ * {@link LoxMap} or {@code Object}; a value of the wrong kind is a
+ * {@link NativeError}. Results may be any of those, or {@code void} for nil.
+ */
+public final class Natives {
+    private Natives() { }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle NUMBER = find("number", double.class);
+    private static final MethodHandle INTEGER = find("integer", int.class);
+    private static final MethodHandle BOOLEAN = find("bool", boolean.class);
+    private static final MethodHandle STRING = find("string", CharSequence.class);
+    private static final MethodHandle FLAT = find("flat", String.class);
+    private static final MethodHandle ARRAY = find("array", LoxArray.class);
+    private static final MethodHandle MAP = find("map", LoxMap.class);
+    private static final MethodHandle BOX_NUMBER = find("box", Object.class, double.class);
+    private static final MethodHandle BOX_INTEGER = find("box", Object.class, int.class);
+
+    // every class is linked once, however many runtimes define its functions
+    private static final ClassValue<List<NativeFunction>> linked = new ClassValue<>() {
+        @Override
+        protected List<NativeFunction> computeValue(Class<?> holder) {
+            return link(holder);
+        }
+    };
+
+    public static void define(Globals globals, Class<?>... holders) {
+        for (Class<?> holder : holders) {
+            for (NativeFunction function : linked.get(holder)) {
+                globals.define(function.name, function);
+            }
+        }
+    }
+
+    private static List<NativeFunction> link(Class<?> holder) {
+        List<NativeFunction> functions = new ArrayList<>();
+        for (Method method : holder.getDeclaredMethods()) {
+            Native annotation = method.getAnnotation(Native.class);
+            if (annotation == null) continue;
+            if (!Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers())) {
+                throw new IllegalArgumentException("Native " + method + " must be public and static.");
+            }
+            String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+            try {
+                functions.add(new NativeFunction(name, adapt(LOOKUP.unreflect(method))));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Native " + method + " cannot be accessed.", e);
+            }
+        }
+        // declared methods come in no particular order
+        functions.sort(Comparator.comparing(function -> function.name));
+        return functions;
+    }
+
+    // the method taking and returning Objects, converting on the way in and out
+    private static MethodHandle adapt(MethodHandle handle) {
+        MethodType type = handle.type();
+        MethodHandle[] filters = new MethodHandle[type.parameterCount()];
+        for (int i = 0; i < filters.length; ++i) {
+            filters[i] = argument(type.parameterType(i));
+        }
+        handle = MethodHandles.filterArguments(handle, 0, filters);
+        if (type.returnType() == double.class) {
+            handle = MethodHandles.filterReturnValue(handle, BOX_NUMBER);
+        } else if (type.returnType() == int.class) {
+            handle = MethodHandles.filterReturnValue(handle, BOX_INTEGER);
+        } else if (type.returnType() != void.class && type.returnType() != boolean.class
+                && !isValue(type.returnType())) {
+            throw new IllegalArgumentException("Natives cannot return " + type.returnType() + ".");
+        }
+        // asType boxes a boolean and turns void into nil
+        return handle.asType(MethodType.genericMethodType(filters.length));
+    }
+
+    private static MethodHandle argument(Class<?> type) {
+        if (type == double.class) return NUMBER;
+        if (type == int.class) return INTEGER;
+        if (type == boolean.class) return BOOLEAN;
+        if (type == CharSequence.class) return STRING;
+        if (type == String.class) return FLAT;
+        if (type == LoxArray.class) return ARRAY;
+        if (type == LoxMap.class) return MAP;
+        if (type == Object.class) return null;
+        throw new IllegalArgumentException("Natives cannot take " + type + ".");
+    }
+
+    private static boolean isValue(Class<?> type) {
+        return type == Object.class || type == CharSequence.class || type == String.class
+                || type == Double.class || type == Boolean.class
+                || type == LoxArray.class || type == LoxMap.class;
+    }
+
+    private static MethodHandle find(String name, Class<?> result) {
+        return find(name, result, Object.class);
+    }
+
+    private static MethodHandle find(String name, Class<?> result, Class<?> parameter) {
+        try {
+            return LOOKUP.findStatic(Natives.class, name, MethodType.methodType(result, parameter));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static double number(Object value) {
+        if (!(value instanceof Double number)) {
+            throw new NativeError("Argument must be a number.");
+        }
+        return number;
+    }
+
+    private static int integer(Object value) {
+        if (!(value instanceof Double number) || number != Math.floor(number)
+                || Math.abs(number) > Integer.MAX_VALUE) {
+            throw new NativeError("Argument must be an integer.");
+        }
+        return (int) (double) number;
+    }
+
+    private static boolean bool(Object value) {
+        if (!(value instanceof Boolean bool)) {
+            throw new NativeError("Argument must be a boolean.");
+        }
+        return bool;
+    }
+
+    private static CharSequence string(Object value) {
+        if (!(value instanceof CharSequence chars)) {
+            throw new NativeError("Argument must be a string.");
+        }
+        return chars;
+    }
+
+    private static String flat(Object value) {
+        return string(value).toString();
+    }
+
+    private static LoxArray array(Object value) {
+        if (!(value instanceof LoxArray array)) {
+            throw new NativeError("Argument must be an array.");
+        }
+        return array;
+    }
+
+    private static LoxMap map(Object value) {
+        if (!(value instanceof LoxMap map)) {
+            throw new NativeError("Argument must be a map.");
+        }
+        return map;
+    }
+
+    private static Object box(double value) {
+        return Values.box(value);
+    }
+
+    private static Object box(int value) {
+        return Values.box(value);
+    }
+}
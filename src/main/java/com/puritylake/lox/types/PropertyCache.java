@@ -0,0 +1,134 @@
+package com.puritylake.lox.types;
+
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+
+/**
+ * Polymorphic inline cache for one property access site. Entries are keyed
+ * on the receiver's shape: a read remembers the field offset or, when the
+ * shape has no such field, the method the name resolves to; a write
+ * remembers the offset and the shape the instance ends up with. Sites that
+ * see more than {@link #MAX_ENTRIES} shapes go megamorphic and stop caching.
+ */
+public final class PropertyCache {
+    public static final int MAX_ENTRIES = 4;
+    // sites only count when --ic-stats will read the counts
+    private static boolean stats = false;
+
+    private static long hits = 0;
+    private static long misses = 0;
+    private static int megamorphicSites = 0;
+
+    private final Token name;
+    private final Shape[] shapes = new Shape[MAX_ENTRIES];
+    private final int[] offsets = new int[MAX_ENTRIES];
+    // the resolved method for reads, the shape after the write for writes
+    private final Object[] targets = new Object[MAX_ENTRIES];
+    private int size = 0;
+    private boolean megamorphic = false;
+
+    public PropertyCache(Token name) {
+        this.name = name;
+    }
+
+    public static void enableStats() {
+        stats = true;
+    }
+
+    public static long hits() {
+        return hits;
+    }
+
+    public static long misses() {
+        return misses;
+    }
+
+    public static int megamorphicSites() {
+        return megamorphicSites;
+    }
+
+    public Object get(Object object) {
+        return find(object, true);
+    }
+
+    /**
+     * Reads a property that is about to be called. A method comes back
+     * unbound, to be called on the instance with
+     * {@link LoxFunction#call1(com.puritylake.lox.parsing.Interpreter, LoxInstance, Object)}
+     * and its siblings.
+     */
+    public Object getForCall(Object object) {
+        return find(object, false);
+    }
+
+    private Object find(Object object, boolean bind) {
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+
+        Shape shape = instance.shape;
+        for (int i = 0; i < size; ++i) {
+            if (shapes[i] == shape) {
+                if (stats) ++hits;
+                return read(instance, offsets[i], (LoxFunction) targets[i], bind);
+            }
+        }
+
+        if (stats) ++misses;
+        int offset = shape.offset(name.symbol());
+        LoxFunction method = offset < 0 ? instance.klass().findMethod(name.symbol()) : null;
+        remember(shape, offset, method);
+        return read(instance, offset, method, bind);
+    }
+
+    private Object read(LoxInstance instance, int offset, LoxFunction method, boolean bind) {
+        if (offset >= 0) {
+            return instance.slots[offset];
+        }
+        if (method != null) {
+            return bind ? method.bind(instance) : method;
+        }
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+    }
+
+    public void set(LoxInstance instance, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < size; ++i) {
+            if (shapes[i] == shape) {
+                if (stats) ++hits;
+                write(instance, offsets[i], (Shape) targets[i], value);
+                return;
+            }
+        }
+
+        if (stats) ++misses;
+        int offset = shape.offset(name.symbol());
+        Shape next = shape;
+        if (offset < 0) {
+            offset = shape.size();
+            next = shape.with(name.symbol());
+        }
+        remember(shape, offset, next);
+        write(instance, offset, next, value);
+    }
+
+    private static void write(LoxInstance instance, int offset, Shape next, Object value) {
+        if (next == instance.shape) {
+            instance.slots[offset] = value;
+        } else {
+            instance.addField(next, offset, value);
+        }
+    }
+
+    private void remember(Shape shape, int offset, Object target) {
+        if (size < MAX_ENTRIES) {
+            shapes[size] = shape;
+            offsets[size] = offset;
+            targets[size] = target;
+            ++size;
+        } else if (!megamorphic) {
+            megamorphic = true;
+            ++megamorphicSites;
+        }
+    }
+}
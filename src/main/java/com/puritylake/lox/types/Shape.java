@@ -0,0 +1,58 @@
+package com.puritylake.lox.types;
+
+import com.puritylake.lox.parsing.SymbolMap;
+
+import java.util.Arrays;
+
+/**
+ * The layout of an instance: which field lives at which offset of its
+ * slot array. Every class owns the root of a transition tree, and adding
+ * a field moves an instance to the child shape for that name's symbol, so objects
+ * that get the same fields in the same order share one shape.
+ */
+public final class Shape {
+    private final Shape root;
+    private final int[] symbols;
+    private final SymbolMap<Shape> transitions = new SymbolMap<>();
+
+    // the largest shape reached from this root, used to presize new instances
+    private int expectedSize = 0;
+
+    private Shape(Shape root, int[] symbols) {
+        this.root = root == null ? this : root;
+        this.symbols = symbols;
+    }
+
+    static Shape root() {
+        return new Shape(null, new int[0]);
+    }
+
+    int size() {
+        return symbols.length;
+    }
+
+    int expectedSize() {
+        return root.expectedSize;
+    }
+
+    int offset(int symbol) {
+        for (int i = 0; i < symbols.length; ++i) {
+            if (symbols[i] == symbol) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    Shape with(int symbol) {
+        Shape next = transitions.get(symbol);
+        if (next == null) {
+            int[] extended = Arrays.copyOf(symbols, symbols.length + 1);
+            extended[symbols.length] = symbol;
+            next = new Shape(root, extended);
+            transitions.put(symbol, next);
+            root.expectedSize = Math.max(root.expectedSize, extended.length);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,44 @@
+package com.puritylake.lox.types;
+
+/**
+ * The string functions both runtimes define as globals. Substrings share
+ * the characters of the string they are cut from. Indices are taken as
+ * Objects so a bad one gets an error naming it as an index.
+ */
+public final class StringNatives {
+    private StringNatives() { }
+
+    // indices must lie within the string
+    @Native
+    public static CharSequence substring(CharSequence chars, Object start, Object end) {
+        int from = index(start);
+        int to = index(end);
+        if (from < 0 || to > chars.length() || from > to) {
+            throw new NativeError("Substring " + from + ".." + to +
+                    " is out of range for a string of length " + chars.length() + ".");
+        }
+        return LoxString.slice(chars, from, to);
+    }
+
+    // negative indices count from the end and anything out of range is clamped
+    @Native
+    public static CharSequence slice(CharSequence chars, Object start, Object end) {
+        int length = chars.length();
+        int from = clamp(index(start), length);
+        int to = clamp(index(end), length);
+        return from >= to ? "" : LoxString.slice(chars, from, to);
+    }
+
+    private static int index(Object value) {
+        if (!(value instanceof Double number) || number != Math.floor(number)
+                || Math.abs(number) > Integer.MAX_VALUE) {
+            throw new NativeError("Index must be an integer.");
+        }
+        return (int) (double) number;
+    }
+
+    private static int clamp(int index, int length) {
+        if (index < 0) index += length;
+        return Math.max(0, Math.min(index, length));
+    }
+}
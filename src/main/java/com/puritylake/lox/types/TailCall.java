@@ -0,0 +1,52 @@
+package com.puritylake.lox.types;
+
+import com.puritylake.lox.parsing.Environment;
+import com.puritylake.lox.parsing.Interpreter;
+
+import java.util.Arrays;
+
+/**
+ * A call made by {@code return f(...)}, handed back to the trampoline in
+ * {@link LoxFunction#callStaged} so it runs after the returning frame is gone.
+ * The environment keeps a single instance and refills it for every tail
+ * call, so it must be read before anything else runs.
+ */
+public final class TailCall {
+    LoxFunction function;
+    LoxInstance receiver;
+    // only the first function.arity() are this call's
+    private Object[] arguments = new Object[3];
+
+    public TailCall set(LoxFunction function, LoxInstance receiver, Object a, Object b, Object c) {
+        this.function = function;
+        this.receiver = receiver;
+        arguments[0] = a;
+        arguments[1] = b;
+        arguments[2] = c;
+        return this;
+    }
+
+    public TailCall set(LoxFunction function, LoxInstance receiver, Object[] arguments) {
+        this.function = function;
+        this.receiver = receiver;
+        if (arguments.length > this.arguments.length) {
+            this.arguments = Arrays.copyOf(this.arguments, arguments.length);
+        }
+        System.arraycopy(arguments, 0, this.arguments, 0, arguments.length);
+        return this;
+    }
+
+    // moves the arguments to where the callee's frame will start
+    void stage(Environment environment) {
+        for (int i = 0; i < function.arity(); ++i) {
+            environment.stage(i, arguments[i]);
+            arguments[i] = null;
+        }
+    }
+
+    // runs the call where a tail call cannot be taken, as an ordinary call
+    public Object run(Interpreter interpreter) throws Exception {
+        stage(interpreter.environment());
+        return function.callStaged(interpreter, receiver);
+    }
+}
@@ -0,0 +1,119 @@
+package com.puritylake.lox.types;
+
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Token;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public final class Values {
+    // boxes for the small integral doubles loops and counters keep producing
+    private static final int BOX_MIN = -128;
+    private static final int BOX_MAX = 1023;
+    private static final Double[] BOXES = new Double[BOX_MAX - BOX_MIN + 1];
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    static {
+        for (int i = 0; i < BOXES.length; ++i) {
+            BOXES[i] = (double) (i + BOX_MIN);
+        }
+    }
+
+    private Values() { }
+
+    public static Double box(double value) {
+        int integral = (int) value;
+        if (integral == value && integral >= BOX_MIN && integral <= BOX_MAX
+                && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO) {
+            return BOXES[integral - BOX_MIN];
+        }
+        return value;
+    }
+
+    public static String stringify(Object object) {
+        return stringify(object, null);
+    }
+
+    // printing holds the arrays and maps already being printed further out,
+    // so that one which contains itself prints a placeholder instead
+    static String stringify(Object object, Set<Object> printing) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        if (object instanceof LoxArray || object instanceof LoxMap) {
+            if (printing == null) {
+                printing = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            if (!printing.add(object)) {
+                return object instanceof LoxArray ? "[...]" : "{...}";
+            }
+            String text = object instanceof LoxArray array
+                    ? array.toString(printing)
+                    : ((LoxMap) object).toString(printing);
+            printing.remove(object);
+            return text;
+        }
+
+        return object.toString();
+    }
+
+    public static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean)object;
+        return true;
+    }
+
+    public static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+
+        // strings compare by their characters whatever they are made of
+        if (a instanceof LoxString) a = a.toString();
+        if (b instanceof LoxString) b = b.toString();
+
+        return a.equals(b);
+    }
+
+    public static Object add(Token operator, Object left, Object right) {
+        if (left instanceof Double) {
+            if (right instanceof Double) {
+                return box((double) left + (double) right);
+            } else if (right instanceof CharSequence string) {
+                return LoxString.concat(stringify(left), string);
+            }
+        }
+        if (left instanceof CharSequence string) {
+            return LoxString.concat(string,
+                    right instanceof CharSequence other ? other : stringify(right));
+        }
+        throw new RuntimeError(operator, "Operands must be convertible.");
+    }
+
+    // target[key]; a bad target or index is a NativeError for the caller to place
+    public static Object index(Object target, Object key) {
+        if (target instanceof LoxArray array) {
+            return array.get(LoxArray.index(key));
+        } else if (target instanceof LoxMap map) {
+            return map.get(key);
+        }
+        throw new NativeError("Only arrays and maps can be indexed.");
+    }
+
+    public static void setIndex(Object target, Object key, Object value) {
+        if (target instanceof LoxArray array) {
+            array.set(LoxArray.index(key), value);
+        } else if (target instanceof LoxMap map) {
+            map.put(key, value);
+        } else {
+            throw new NativeError("Only arrays and maps can be indexed.");
+        }
+    }
+}
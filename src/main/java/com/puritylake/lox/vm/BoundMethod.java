@@ -0,0 +1,16 @@
+package com.puritylake.lox.vm;
+
+class BoundMethod {
+    final VmInstance receiver;
+    final Closure method;
+
+    BoundMethod(VmInstance receiver, Closure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
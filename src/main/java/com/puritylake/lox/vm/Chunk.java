@@ -0,0 +1,91 @@
+package com.puritylake.lox.vm;
+
+import com.puritylake.lox.parsing.Globals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A block of bytecode together with its constant pool and a run-length
+ * encoded line table.
+ */
+public class Chunk {
+    byte[] code = new byte[32];
+    int count = 0;
+    Object[] constants;
+    // the symbols of the globals the code uses, and their cells once the
+    // VM has linked the chunk
+    int[] globals;
+    Globals.Global[] cells;
+
+    private final List<Object> constantList = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+    private final Map<Integer, Integer> globalIndices = new HashMap<>();
+
+    // lineStarts[i] is the first offset emitted for lineNumbers[i]
+    private int[] lineStarts = new int[8];
+    private int[] lineNumbers = new int[8];
+    private int lineCount = 0;
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        if (lineCount == 0 || lineNumbers[lineCount - 1] != line) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+            }
+            lineStarts[lineCount] = count;
+            lineNumbers[lineCount] = line;
+            ++lineCount;
+        }
+        code[count++] = (byte) b;
+    }
+
+    int addConstant(Object value) {
+        // functions are never shared between call sites, everything else is a value
+        if (value instanceof CompiledFunction) {
+            constantList.add(value);
+            return constantList.size() - 1;
+        }
+        Integer existing = constantIndices.get(value);
+        if (existing != null) return existing;
+
+        constantList.add(value);
+        constantIndices.put(value, constantList.size() - 1);
+        return constantList.size() - 1;
+    }
+
+    int addGlobal(int symbol) {
+        Integer existing = globalIndices.get(symbol);
+        if (existing != null) return existing;
+
+        globalIndices.put(symbol, globalIndices.size());
+        return globalIndices.size() - 1;
+    }
+
+    void finish() {
+        code = Arrays.copyOf(code, count);
+        constants = constantList.toArray();
+        globals = new int[globalIndices.size()];
+        globalIndices.forEach((symbol, index) -> globals[index] = symbol);
+    }
+
+    public int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return lineCount == 0 ? 0 : lineNumbers[low];
+    }
+}
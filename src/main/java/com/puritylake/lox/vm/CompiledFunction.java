@@ -0,0 +1,21 @@
+package com.puritylake.lox.vm;
+
+public class CompiledFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+
+    CompiledFunction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        if (name != null) {
+            return "<fn " + name + ">";
+        } else {
+            return "<anonymous fn>";
+        }
+    }
+}
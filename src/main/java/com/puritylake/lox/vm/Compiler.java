@@ -0,0 +1,710 @@
+package com.puritylake.lox.vm;
+
+import com.puritylake.lox.Lox;
+import com.puritylake.lox.parsing.Expr;
+import com.puritylake.lox.parsing.Stmt;
+import com.puritylake.lox.parsing.Symbols;
+import com.puritylake.lox.parsing.Token;
+import com.puritylake.lox.parsing.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.puritylake.lox.vm.OpCode.*;
+
+/**
+ * Single pass compiler from the resolved AST to {@link VM} bytecode.
+ * Top level declarations become globals, everything else lives in stack
+ * slots with captured variables reached through upvalues.
+ */
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static class CompileError extends RuntimeException { }
+
+    private enum FunctionType {
+        SCRIPT, FUNCTION, METHOD
+    }
+
+    private static class Local {
+        final String name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class UpvalueRef {
+        final int index;
+        final boolean isLocal;
+
+        UpvalueRef(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class Loop {
+        final Loop enclosing;
+        final int scopeDepth;
+        int continueTarget = -1;
+        final List<Integer> continueJumps = new ArrayList<>();
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final CompiledFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<UpvalueRef> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        Loop loop = null;
+
+        FunctionState(FunctionState enclosing, String name, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = new CompiledFunction(name);
+            this.type = type;
+            locals.add(new Local(type == FunctionType.METHOD ? "this" : "", 0));
+        }
+    }
+
+    private FunctionState current = null;
+    private int line = 1;
+
+    public CompiledFunction compile(List<Stmt> statements) throws Exception {
+        current = new FunctionState(null, "script", FunctionType.SCRIPT);
+        try {
+            for (Stmt statement : statements) {
+                compile(statement);
+            }
+            emitReturn();
+        } catch (CompileError error) {
+            return null;
+        }
+        current.function.chunk.finish();
+        return current.function;
+    }
+
+    private void compile(Stmt stmt) throws Exception {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) throws Exception {
+        expr.accept(this);
+    }
+
+    private CompileError error(String message) {
+        Lox.error(line, message);
+        return new CompileError();
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    private void emit(int b) {
+        chunk().write(b, line);
+    }
+
+    private void emit(int op, int operand) {
+        emit(op);
+        emit(operand);
+    }
+
+    private void emitShort(int op, int operand) {
+        emit(op);
+        emit((operand >> 8) & 0xff);
+        emit(operand & 0xff);
+    }
+
+    private void emitReturn() {
+        emit(NIL);
+        emit(RETURN);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = chunk().addConstant(value);
+        if (constant > 0xffff) {
+            throw error("Too many constants in one chunk.");
+        }
+        return constant;
+    }
+
+    // names are emitted as their symbol rather than as a string constant
+    private int symbol(String name) {
+        int symbol = Symbols.intern(name);
+        if (symbol > 0xffff) {
+            throw error("Too many names in one program.");
+        }
+        return symbol;
+    }
+
+    // globals are emitted as an index into the chunk's own table of them
+    private int global(String name) {
+        int global = chunk().addGlobal(symbol(name));
+        if (global > 0xffff) {
+            throw error("Too many globals in one chunk.");
+        }
+        return global;
+    }
+
+    private int count(int count) {
+        if (count > 0xffff) {
+            throw error("Too many elements in a literal.");
+        }
+        return count;
+    }
+
+    private void emitConstant(Object value) {
+        emitShort(CONSTANT, makeConstant(value));
+    }
+
+    private int emitJump(int op) {
+        emitShort(op, 0xffff);
+        return chunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        patchJump(offset, chunk().count);
+    }
+
+    private void patchJump(int offset, int target) {
+        int jump = target - offset - 2;
+        if (jump > 0xffff) {
+            throw error("Too much code to jump over.");
+        }
+        chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(LOOP);
+        int offset = chunk().count - loopStart + 2;
+        if (offset > 0xffff) {
+            throw error("Loop body too large.");
+        }
+        emit((offset >> 8) & 0xff);
+        emit(offset & 0xff);
+    }
+
+    private void beginScope() {
+        ++current.scopeDepth;
+    }
+
+    private void endScope() {
+        --current.scopeDepth;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emitPopLocal(locals.remove(locals.size() - 1));
+        }
+    }
+
+    private void emitPopLocal(Local local) {
+        emit(local.isCaptured ? CLOSE_UPVALUE : POP);
+    }
+
+    // pops everything declared inside the loop without forgetting it, used by break and continue
+    private void discardLocals(int depth) {
+        List<Local> locals = current.locals;
+        for (int i = locals.size() - 1; i >= 0 && locals.get(i).depth > depth; --i) {
+            emitPopLocal(locals.get(i));
+        }
+    }
+
+    private void addLocal(String name) {
+        if (current.locals.size() > 0xff) {
+            throw error("Too many local variables in function.");
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    private int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; --i) {
+            if (state.locals.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); ++i) {
+            UpvalueRef upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+        if (state.upvalues.size() > 0xff) {
+            throw error("Too many closure variables in function.");
+        }
+        state.upvalues.add(new UpvalueRef(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false);
+        }
+
+        return -1;
+    }
+
+    private void namedVariable(String name, boolean assign) {
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emit(assign ? SET_LOCAL : GET_LOCAL, arg);
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            emit(assign ? SET_UPVALUE : GET_UPVALUE, arg);
+        } else {
+            emitShort(assign ? SET_GLOBAL : GET_GLOBAL, global(name));
+        }
+    }
+
+    // the value to bind is on top of the stack
+    private void defineVariable(String name) {
+        if (current.scopeDepth > 0) {
+            addLocal(name);
+        } else {
+            emitShort(DEFINE_GLOBAL, global(name));
+        }
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) throws Exception {
+        String name = stmt.name != null ? stmt.name.lexeme() : null;
+        FunctionState state = new FunctionState(current, name, type);
+        current = state;
+        beginScope();
+        for (Token param : stmt.params) {
+            ++state.function.arity;
+            addLocal(param.lexeme());
+        }
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emitReturn();
+        state.function.upvalueCount = state.upvalues.size();
+        state.function.chunk.finish();
+        current = state.enclosing;
+
+        emitShort(CLOSURE, makeConstant(state.function));
+        for (UpvalueRef upvalue : state.upvalues) {
+            emit(upvalue.isLocal ? 1 : 0);
+            emit(upvalue.index);
+        }
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) throws Exception {
+        compile(expr.value);
+        line = expr.name.line();
+        namedVariable(expr.name.lexeme(), true);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) throws Exception {
+        compile(expr.left);
+        compile(expr.right);
+
+        line = expr.operator.line();
+        switch (expr.operator.type()) {
+            case MINUS -> emit(SUBTRACT);
+            case SLASH -> emit(DIVIDE);
+            case STAR -> emit(MULTIPLY);
+            case PLUS -> emit(ADD);
+            case GREATER -> emit(GREATER);
+            case GREATER_EQUAL -> emit(GREATER_EQUAL);
+            case LESS -> emit(LESS);
+            case LESS_EQUAL -> emit(LESS_EQUAL);
+            case BANG_EQUAL -> emit(NOT_EQUAL);
+            case EQUAL_EQUAL -> emit(EQUAL);
+            default -> {
+                emit(POP);
+                emit(POP);
+                emit(NIL);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) throws Exception {
+        call(expr, CALL);
+        return null;
+    }
+
+    private void call(Expr.Call expr, int op) throws Exception {
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        line = expr.paren.line();
+        emit(op, expr.arguments.size());
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) throws Exception {
+        compile(expr.object);
+        line = expr.name.line();
+        emitShort(GET_PROPERTY, symbol(expr.name.lexeme()));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) throws Exception {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(NIL);
+        } else if (expr.value instanceof Boolean bool) {
+            emit(bool ? TRUE : FALSE);
+        } else {
+            emitConstant(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) throws Exception {
+        compile(expr.left);
+        line = expr.operator.line();
+
+        if (expr.operator.type() == TokenType.OR) {
+            int elseJump = emitJump(JUMP_IF_FALSE);
+            int endJump = emitJump(JUMP);
+            patchJump(elseJump);
+            emit(POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(JUMP_IF_FALSE);
+            emit(POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) throws Exception {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line();
+        emitShort(SET_PROPERTY, symbol(expr.name.lexeme()));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        line = expr.keyword.line();
+        namedVariable("this", false);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) throws Exception {
+        compile(expr.right);
+        line = expr.operator.line();
+        switch (expr.operator.type()) {
+            case MINUS -> emit(NEGATE);
+            case BANG -> emit(NOT);
+            default -> {
+                emit(POP);
+                emit(NIL);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCommaGroupExpr(Expr.CommaGroup expr) throws Exception {
+        compile(expr.left);
+        emit(POP);
+        compile(expr.right);
+        emit(POP);
+        emit(NIL);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) throws Exception {
+        compile(expr.cond);
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        compile(expr.trueVal);
+        int endJump = emitJump(JUMP);
+        patchJump(elseJump);
+        emit(POP);
+        compile(expr.falseVal);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line();
+        namedVariable(expr.name.lexeme(), false);
+        return null;
+    }
+
+    @Override
+    public Void visitAnonFunctionExpr(Expr.AnonFunction expr) throws Exception {
+        function((Stmt.Function) expr.func, FunctionType.FUNCTION);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr) throws Exception {
+        for (Expr element : expr.elements) {
+            compile(element);
+        }
+        line = expr.bracket.line();
+        emitShort(ARRAY, count(expr.elements.size()));
+        return null;
+    }
+
+    @Override
+    public Void visitMapLiteralExpr(Expr.MapLiteral expr) throws Exception {
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            compile(expr.keys.get(i));
+            compile(expr.values.get(i));
+        }
+        line = expr.brace.line();
+        emitShort(MAP, count(expr.keys.size()));
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) throws Exception {
+        compile(expr.object);
+        compile(expr.index);
+        line = expr.bracket.line();
+        emit(GET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) throws Exception {
+        compile(expr.object);
+        compile(expr.index);
+        compile(expr.value);
+        line = expr.bracket.line();
+        emit(SET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) throws Exception {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) throws Exception {
+        line = stmt.name.line();
+        String name = stmt.name.lexeme();
+        emitShort(CLASS, makeConstant(name));
+        defineVariable(name);
+
+        namedVariable(name, false);
+        for (Stmt.Function method : stmt.methods) {
+            function(method, FunctionType.METHOD);
+            emitShort(METHOD, symbol(method.name.lexeme()));
+        }
+        emit(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) throws Exception {
+        compile(stmt.expression);
+        emit(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) throws Exception {
+        line = stmt.name.line();
+        String name = stmt.name.lexeme();
+        if (current.scopeDepth > 0) {
+            // declared before the body so the function can refer to itself
+            addLocal(name);
+            function(stmt, FunctionType.FUNCTION);
+        } else {
+            function(stmt, FunctionType.FUNCTION);
+            defineVariable(name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) throws Exception {
+        compile(stmt.condition);
+        int thenJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        compile(stmt.thenBranch);
+        int elseJump = emitJump(JUMP);
+        patchJump(thenJump);
+        emit(POP);
+        if (stmt.elseBranch != null) {
+            compile(stmt.elseBranch);
+        }
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) throws Exception {
+        compile(stmt.expression);
+        emit(PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) throws Exception {
+        line = stmt.keyword.line();
+        if (stmt.tail && current.type != FunctionType.SCRIPT && stmt.value instanceof Expr.Call call) {
+            call(call, TAIL_CALL);
+            emit(RETURN);
+        } else if (stmt.value != null) {
+            compile(stmt.value);
+            emit(RETURN);
+        } else {
+            emitReturn();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) throws Exception {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(NIL);
+        }
+        line = stmt.name.line();
+        defineVariable(stmt.name.lexeme());
+        return null;
+    }
+
+    private Loop beginLoop() {
+        current.loop = new Loop(current.loop, current.scopeDepth);
+        return current.loop;
+    }
+
+    private void endLoop(Loop loop) {
+        for (int jump : loop.breakJumps) {
+            patchJump(jump);
+        }
+        current.loop = loop.enclosing;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) throws Exception {
+        Loop loop = beginLoop();
+        int loopStart = chunk().count;
+        loop.continueTarget = loopStart;
+
+        compile(stmt.condition);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(POP);
+        endLoop(loop);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) throws Exception {
+        beginScope();
+        if (stmt.init != null) {
+            compile(stmt.init);
+        }
+
+        Loop loop = beginLoop();
+        int loopStart = chunk().count;
+        int exitJump = -1;
+        if (stmt.cond != null) {
+            compile(stmt.cond);
+            exitJump = emitJump(JUMP_IF_FALSE);
+            emit(POP);
+        }
+
+        compile(stmt.body);
+
+        for (int jump : loop.continueJumps) {
+            patchJump(jump);
+        }
+        if (stmt.post != null) {
+            compile(stmt.post);
+            emit(POP);
+        }
+        emitLoop(loopStart);
+
+        if (exitJump != -1) {
+            patchJump(exitJump);
+            emit(POP);
+        }
+        endLoop(loop);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        line = stmt.name.line();
+        Loop loop = current.loop;
+        if (loop == null) {
+            // a break that escapes its function ends the call, like the tree-walker
+            emitReturn();
+            return null;
+        }
+        discardLocals(loop.scopeDepth);
+        loop.breakJumps.add(emitJump(JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        line = stmt.name.line();
+        Loop loop = current.loop;
+        if (loop == null) {
+            emitReturn();
+            return null;
+        }
+        discardLocals(loop.scopeDepth);
+        if (loop.continueTarget != -1) {
+            emitLoop(loop.continueTarget);
+        } else {
+            loop.continueJumps.add(emitJump(JUMP));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,20 @@
+package com.puritylake.lox.vm;
+
+/**
+ * A captured variable. While open it points at a stack slot, once the
+ * slot goes out of scope the value is moved into {@code closed}.
+ */
+class Upvalue {
+    int slot;
+    Object closed;
+    Upvalue next;
+
+    Upvalue(int slot, Upvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+
+    boolean isOpen() {
+        return slot >= 0;
+    }
+}
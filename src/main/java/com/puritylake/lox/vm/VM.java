@@ -0,0 +1,497 @@
+package com.puritylake.lox.vm;
+
+import com.puritylake.lox.Lox;
+import com.puritylake.lox.parsing.Globals;
+import com.puritylake.lox.parsing.RuntimeError;
+import com.puritylake.lox.parsing.Symbols;
+import com.puritylake.lox.types.LoxArray;
+import com.puritylake.lox.types.LoxMap;
+import com.puritylake.lox.types.LoxString;
+import com.puritylake.lox.types.CollectionNatives;
+import com.puritylake.lox.types.CoreNatives;
+import com.puritylake.lox.types.NativeError;
+import com.puritylake.lox.types.NativeFunction;
+import com.puritylake.lox.types.Natives;
+import com.puritylake.lox.types.StringNatives;
+
+import java.util.Arrays;
+
+import static com.puritylake.lox.types.Values.*;
+
+/**
+ * Stack based virtual machine running code produced by {@link Compiler}.
+ */
+public class VM {
+    private static final int FRAMES_MAX = 4096;
+
+    private static class CallFrame {
+        Closure closure;
+        int ip;
+        int base;
+    }
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private final CallFrame[] frames = new CallFrame[FRAMES_MAX];
+    private int frameCount = 0;
+    private Upvalue openUpvalues = null;
+    private final Globals globals = new Globals();
+
+    public VM() {
+        Natives.define(globals, CoreNatives.class, StringNatives.class, CollectionNatives.class);
+    }
+
+    public void interpret(CompiledFunction script) {
+        link(script);
+        Closure closure = new Closure(script);
+        push(closure);
+        try {
+            callClosure(closure, 0);
+            run();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            Arrays.fill(stack, 0, sp, null);
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    // gives every chunk in the script the cells of the globals it uses
+    private void link(CompiledFunction function) {
+        Chunk chunk = function.chunk;
+        chunk.cells = new Globals.Global[chunk.globals.length];
+        for (int i = 0; i < chunk.globals.length; ++i) {
+            chunk.cells[i] = globals.cell(chunk.globals[i]);
+        }
+        for (Object constant : chunk.constants) {
+            if (constant instanceof CompiledFunction nested) link(nested);
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        return stack[--sp];
+    }
+
+    private Object peek(int distance) {
+        return stack[sp - 1 - distance];
+    }
+
+    private RuntimeError error(String message) {
+        CallFrame frame = frames[frameCount - 1];
+        int line = frame.closure.function.chunk.getLine(frame.ip - 1);
+        return new RuntimeError(line, message);
+    }
+
+    private RuntimeError undefined(int global) {
+        int symbol = frames[frameCount - 1].closure.function.chunk.globals[global];
+        return error("Undefined variable '" + Symbols.name(symbol) + "'.");
+    }
+
+    private void checkNumberOperands(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw error("Operands must be numbers");
+    }
+
+    private void checkArity(Closure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw error("Expected " + closure.function.arity +
+                    " arguments but got " + argCount + ".");
+        }
+    }
+
+    private void callClosure(Closure closure, int argCount) {
+        checkArity(closure, argCount);
+        if (frameCount == FRAMES_MAX) {
+            throw error("Stack overflow.");
+        }
+
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = frames[frameCount] = new CallFrame();
+        }
+        ++frameCount;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof Closure closure) {
+            callClosure(closure, argCount);
+        } else if (callee instanceof BoundMethod bound) {
+            stack[sp - argCount - 1] = bound.receiver;
+            callClosure(bound.method, argCount);
+        } else if (callee instanceof VmClass klass) {
+            if (argCount != 0) {
+                throw error("Expected 0 arguments but got " + argCount + ".");
+            }
+            stack[sp - 1] = new VmInstance(klass);
+        } else if (callee instanceof NativeFunction function) {
+            if (argCount != function.arity()) {
+                throw error("Expected " + function.arity() +
+                        " arguments but got " + argCount + ".");
+            }
+            // natives never look at the interpreter
+            Object result;
+            try {
+                result = switch (argCount) {
+                    case 0 -> function.call0(null);
+                    case 1 -> function.call1(null, stack[sp - 1]);
+                    case 2 -> function.call2(null, stack[sp - 2], stack[sp - 1]);
+                    case 3 -> function.call3(null, stack[sp - 3], stack[sp - 2], stack[sp - 1]);
+                    default -> function.call(null, Arrays.copyOfRange(stack, sp - argCount, sp));
+                };
+            } catch (NativeError e) {
+                throw error(e.getMessage());
+            }
+            sp -= argCount + 1;
+            push(result);
+        } else {
+            throw error("Can only call functions and classes.");
+        }
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) {
+            return upvalue;
+        }
+
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        Globals.Global[] cells = frame.closure.function.chunk.cells;
+        int ip = frame.ip;
+        int base = frame.base;
+
+        for (;;) {
+            byte instruction = code[ip++];
+            // keep the frame in sync so errors can find their line
+            frame.ip = ip;
+            switch (instruction) {
+                case OpCode.CONSTANT -> {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    push(constants[index]);
+                }
+                case OpCode.NIL -> push(null);
+                case OpCode.TRUE -> push(true);
+                case OpCode.FALSE -> push(false);
+                case OpCode.POP -> --sp;
+                case OpCode.GET_LOCAL -> push(stack[base + (code[ip++] & 0xff)]);
+                case OpCode.SET_LOCAL -> stack[base + (code[ip++] & 0xff)] = peek(0);
+                case OpCode.GET_GLOBAL -> {
+                    int global = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object value = cells[global].value();
+                    if (value == Globals.UNDEFINED) {
+                        throw undefined(global);
+                    }
+                    push(value);
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    int global = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    cells[global].define(pop());
+                }
+                case OpCode.SET_GLOBAL -> {
+                    int global = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Globals.Global cell = cells[global];
+                    if (cell.value() == Globals.UNDEFINED) {
+                        throw undefined(global);
+                    }
+                    cell.define(peek(0));
+                }
+                case OpCode.GET_UPVALUE -> {
+                    Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    push(upvalue.isOpen() ? stack[upvalue.slot] : upvalue.closed);
+                }
+                case OpCode.SET_UPVALUE -> {
+                    Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.isOpen()) {
+                        stack[upvalue.slot] = peek(0);
+                    } else {
+                        upvalue.closed = peek(0);
+                    }
+                }
+                case OpCode.GET_PROPERTY -> {
+                    int symbol = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!(peek(0) instanceof VmInstance instance)) {
+                        throw error("Only instances have properties.");
+                    }
+                    Object value = instance.fields.get(symbol);
+                    if (value != null || instance.fields.containsKey(symbol)) {
+                        stack[sp - 1] = value;
+                    } else {
+                        Closure method = instance.klass.methods.get(symbol);
+                        if (method == null) {
+                            throw error("Undefined property '" + Symbols.name(symbol) + "'.");
+                        }
+                        stack[sp - 1] = new BoundMethod(instance, method);
+                    }
+                }
+                case OpCode.SET_PROPERTY -> {
+                    int symbol = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object value = pop();
+                    if (!(pop() instanceof VmInstance instance)) {
+                        throw error("Only instances have fields.");
+                    }
+                    instance.fields.put(symbol, value);
+                    push(null);
+                }
+                case OpCode.EQUAL -> {
+                    Object b = pop();
+                    stack[sp - 1] = isEqual(stack[sp - 1], b);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object b = pop();
+                    stack[sp - 1] = !isEqual(stack[sp - 1], b);
+                }
+                case OpCode.GREATER -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    stack[sp - 1] = (double) a > (double) b;
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    stack[sp - 1] = (double) a >= (double) b;
+                }
+                case OpCode.LESS -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    stack[sp - 1] = (double) a < (double) b;
+                }
+                case OpCode.LESS_EQUAL -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    stack[sp - 1] = (double) a <= (double) b;
+                }
+                case OpCode.ADD -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    if (a instanceof Double left) {
+                        if (b instanceof Double right) {
+                            stack[sp - 1] = left + right;
+                            continue;
+                        } else if (b instanceof CharSequence string) {
+                            stack[sp - 1] = LoxString.concat(stringify(a), string);
+                            continue;
+                        }
+                    }
+                    if (a instanceof CharSequence string) {
+                        stack[sp - 1] = LoxString.concat(string,
+                                b instanceof CharSequence other ? other : stringify(b));
+                        continue;
+                    }
+                    throw error("Operands must be convertible.");
+                }
+                case OpCode.SUBTRACT -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    stack[sp - 1] = (double) a - (double) b;
+                }
+                case OpCode.MULTIPLY -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    stack[sp - 1] = (double) a * (double) b;
+                }
+                case OpCode.DIVIDE -> {
+                    Object b = pop();
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(a, b);
+                    if ((double) b == 0) {
+                        throw error("Cannot divide by zero.");
+                    }
+                    stack[sp - 1] = (double) a / (double) b;
+                }
+                case OpCode.NOT -> stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                case OpCode.NEGATE -> {
+                    if (!(stack[sp - 1] instanceof Double value)) {
+                        throw error("Operand must be a number.");
+                    }
+                    stack[sp - 1] = -value;
+                }
+                case OpCode.PRINT -> System.out.println(stringify(pop()));
+                case OpCode.JUMP -> {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                }
+                case OpCode.JUMP_IF_FALSE -> {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!isTruthy(stack[sp - 1])) ip += offset;
+                }
+                case OpCode.LOOP -> {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                }
+                case OpCode.CALL -> {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    callValue(peek(argCount), argCount);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    cells = frame.closure.function.chunk.cells;
+                    ip = frame.ip;
+                    base = frame.base;
+                }
+                case OpCode.TAIL_CALL -> {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    Object callee = peek(argCount);
+                    Closure closure = callee instanceof Closure target ? target
+                            : callee instanceof BoundMethod bound ? bound.method : null;
+                    if (closure == null) {
+                        callValue(callee, argCount);
+                        continue;
+                    }
+                    checkArity(closure, argCount);
+                    if (callee instanceof BoundMethod bound) {
+                        stack[sp - argCount - 1] = bound.receiver;
+                    }
+                    // the callee and its arguments replace this call's frame
+                    closeUpvalues(base);
+                    System.arraycopy(stack, sp - argCount - 1, stack, base, argCount + 1);
+                    sp = base + argCount + 1;
+                    frame.closure = closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    cells = closure.function.chunk.cells;
+                    ip = 0;
+                }
+                case OpCode.CLOSURE -> {
+                    CompiledFunction function = (CompiledFunction) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Closure closure = new Closure(function);
+                    for (int i = 0; i < closure.upvalues.length; ++i) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        closure.upvalues[i] = isLocal
+                                ? captureUpvalue(base + index)
+                                : frame.closure.upvalues[index];
+                    }
+                    push(closure);
+                }
+                case OpCode.CLOSE_UPVALUE -> {
+                    closeUpvalues(sp - 1);
+                    --sp;
+                }
+                case OpCode.RETURN -> {
+                    Object result = pop();
+                    closeUpvalues(base);
+                    --frameCount;
+                    if (frameCount == 0) {
+                        --sp;
+                        return;
+                    }
+
+                    sp = base;
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    cells = frame.closure.function.chunk.cells;
+                    ip = frame.ip;
+                    base = frame.base;
+                }
+                case OpCode.CLASS -> {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    push(new VmClass(name));
+                }
+                case OpCode.METHOD -> {
+                    int symbol = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Closure method = (Closure) pop();
+                    ((VmClass) peek(0)).methods.put(symbol, method);
+                }
+                case OpCode.ARRAY -> {
+                    int count = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    LoxArray array = LoxArray.of(Arrays.copyOfRange(stack, sp - count, sp));
+                    sp -= count;
+                    push(array);
+                }
+                case OpCode.MAP -> {
+                    int count = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    LoxMap map = new LoxMap();
+                    int first = sp - 2 * count;
+                    try {
+                        for (int i = first; i < sp; i += 2) {
+                            map.put(stack[i], stack[i + 1]);
+                        }
+                    } catch (NativeError e) {
+                        throw error(e.getMessage());
+                    }
+                    sp = first;
+                    push(map);
+                }
+                case OpCode.GET_INDEX -> {
+                    Object key = pop();
+                    try {
+                        stack[sp - 1] = index(stack[sp - 1], key);
+                    } catch (NativeError e) {
+                        throw error(e.getMessage());
+                    }
+                }
+                case OpCode.SET_INDEX -> {
+                    Object value = pop();
+                    Object key = pop();
+                    try {
+                        setIndex(stack[sp - 1], key, value);
+                    } catch (NativeError e) {
+                        throw error(e.getMessage());
+                    }
+                    stack[sp - 1] = null;
+                }
+                default -> throw error("Unknown opcode " + instruction + ".");
+            }
+        }
+    }
+}
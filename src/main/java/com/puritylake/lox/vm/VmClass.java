@@ -0,0 +1,17 @@
+package com.puritylake.lox.vm;
+
+import com.puritylake.lox.parsing.SymbolMap;
+
+class VmClass {
+    final String name;
+    final SymbolMap<Closure> methods = new SymbolMap<>();
+
+    VmClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
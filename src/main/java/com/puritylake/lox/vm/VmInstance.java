@@ -0,0 +1,17 @@
+package com.puritylake.lox.vm;
+
+import com.puritylake.lox.parsing.SymbolMap;
+
+class VmInstance {
+    final VmClass klass;
+    final SymbolMap<Object> fields = new SymbolMap<>();
+
+    VmInstance(VmClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}